@@ -0,0 +1,34 @@
+package zyklone.LEDCloud.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, always with JMH's gc-profiler, so every benchmark reports its allocation rate
+ * (gc.alloc.rate in MB/sec and gc.alloc.rate.norm in bytes per invocation) next to its time.
+ * All command line arguments are passed on to JMH, e.g. the name of a benchmark (a regular expression)
+ * or -p mesh=39x15 to only measure one mesh size.
+ *
+ * @author Zyklone
+ */
+public class Benchmarks {
+	
+	/**
+	 * @param args JMH's command line options
+	 * @throws CommandLineOptionException if the options are malformed
+	 * @throws RunnerException if a benchmark failed
+	 */
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
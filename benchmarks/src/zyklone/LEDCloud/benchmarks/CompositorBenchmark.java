@@ -0,0 +1,97 @@
+package zyklone.LEDCloud.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import zyklone.LEDCloud.patterns.Pattern;
+import zyklone.LEDCloud.patterns.PatternCompositor;
+import zyklone.LEDCloud.patterns.PatternPool;
+import zyklone.LEDCloud.rendering.BlendOp;
+import zyklone.LEDCloud.rendering.FrameBuffer;
+
+/**
+ * Measures one frame of the cloud's patterns mode (see LEDCloud.processPatterns()) with a fixed number of live patterns:
+ * the picture is cleared and the compositor advances and adds up all patterns.
+ * Patterns that reach their lifetime are handed back to the pool and replaced by the next dot, wall or wave,
+ * so the number of live patterns stays the same. The frame time is advanced by one frame (at 20 fps) per invocation.
+ * The compositor uses the cloud's default tiling, so the biggest mesh is drawn in tiles on a fork-join pool.
+ *
+ * @author Zyklone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CompositorBenchmark {
+	
+	@Param({"1", "10", "25", "50", "100"})
+	public int patterns;
+	
+	@Param({"39x15", "78x30", "156x60", "312x120"})
+	public String mesh;
+	
+	private PatternPool pool;
+	private PatternCompositor compositor;
+	private ArrayList<Pattern> live;
+	private FrameBuffer comPic;
+	private long frameTime;
+	private int added;
+	
+	@Setup
+	public void setup() {
+		MeshSize size = MeshSize.parse(mesh);
+		pool = new PatternPool(size.x, size.y);
+		pool.setSeed(PatternBenchmark.SEED);
+		compositor = new PatternCompositor(16384, 32);
+		live = new ArrayList<>(patterns);
+		comPic = new FrameBuffer(size.x, size.y);
+		frameTime = PatternBenchmark.FRAME_NANOS;
+		added = 0;
+		fill();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		compositor.shutdown();
+	}
+	
+	/**
+	 * Adds dots, walls and waves in turns, until the benchmarked number of patterns is live.
+	 */
+	private void fill() {
+		while(live.size() < patterns) {
+			switch(added++ % 3) {
+				case 0: live.add(pool.acquireDot(false));
+					break;
+				case 1: live.add(pool.acquireWall(false));
+					break;
+				default: live.add(pool.acquireWave(false));
+			}
+		}
+	}
+	
+	@Benchmark
+	public FrameBuffer compose() {
+		frameTime += PatternBenchmark.FRAME_NANOS;
+		comPic.clear();
+		compositor.compose(live, comPic, frameTime, BlendOp.ADD, pool);
+		fill();
+		return comPic;
+	}
+
+}
@@ -0,0 +1,83 @@
+package zyklone.LEDCloud.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import zyklone.LEDCloud.mesh.ColorCalibration;
+import zyklone.LEDCloud.mesh.LedMeshCoordinator;
+import zyklone.LEDCloud.output.NullLedOutput;
+import zyklone.LEDCloud.rendering.FrameBuffer;
+
+/**
+ * Measures how long the LedMeshCoordinator takes to send a picture to a headless LED-strip (NullLedOutput),
+ * which has one LED for every pixel of the mesh, wired in serpentine order.
+ * Two pictures are sent in turns, which differ in the passed share of their pixels,
+ * so 0 measures a picture that is skipped, because it is identical to the last one.
+ *
+ * @author Zyklone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MeshCoordinatorBenchmark {
+	
+	@Param({"39x15", "78x30", "156x60"})
+	public String mesh;
+	
+	/** the share of pixels that differ between the two pictures, in percent */
+	@Param({"0", "10", "100"})
+	public int changedPercent;
+	
+	/** true to convert every color with a gamma and brightness correction, false to send the colors as they are */
+	@Param({"false", "true"})
+	public boolean calibrated;
+	
+	private LedMeshCoordinator coordinator;
+	private FrameBuffer[] pictures;
+	private int next;
+	
+	@Setup
+	public void setup() {
+		MeshSize size = MeshSize.parse(mesh);
+		coordinator = new LedMeshCoordinator(size.serpentineOrder(), new NullLedOutput(size.x * size.y), size.x, size.y);
+		if(calibrated)
+			coordinator.setCalibration(new ColorCalibration(2.2f, 0.8f, 1f, 1f, 1f));
+		Random rand = new Random(PatternBenchmark.SEED);
+		FrameBuffer first = new FrameBuffer(size.x, size.y);
+		int[] pixels = first.getPixels();
+		for(int i = 0; i < pixels.length; i++) {
+			pixels[i] = rand.nextInt(0x1000000);
+		}
+		FrameBuffer second = new FrameBuffer(size.x, size.y);
+		second.copyFrom(first);
+		pixels = second.getPixels();
+		for(int i = 0; i < pixels.length; i++) {
+			if(rand.nextInt(100) < changedPercent)
+				pixels[i] ^= 0x010101;
+		}
+		pictures = new FrameBuffer[] {first, second};
+		next = 0;
+	}
+	
+	@Benchmark
+	public int updateLedMesh() {
+		next ^= 1;
+		return coordinator.updateLedMesh(pictures[next]);
+	}
+
+}
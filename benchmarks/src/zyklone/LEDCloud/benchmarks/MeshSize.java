@@ -0,0 +1,59 @@
+package zyklone.LEDCloud.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import zyklone.LEDCloud.mesh.FieldPosition;
+
+/**
+ * The size of a led-matrix, as passed to the benchmarks' mesh-parameter (e.g. "39x15" for 39 columns and 15 rows,
+ * the size of the cloud's current led-matrix).
+ *
+ * @author Zyklone
+ */
+final class MeshSize {
+	
+	/** the length in the x-axis of the led-matrix */
+	final int x;
+	/** the length in the y-axis of the led-matrix */
+	final int y;
+	
+	private MeshSize(int x, int y) {
+		this.x = x;
+		this.y = y;
+	}
+	
+	/**
+	 * @param mesh the size of the led-matrix, as columns and rows separated by an 'x'
+	 * @return the parsed size
+	 * @throws IllegalArgumentException if the passed size is malformed or not positive
+	 */
+	static MeshSize parse(String mesh) {
+		int separator = mesh.indexOf('x');
+		try {
+			int x = Integer.parseInt(mesh.substring(0, Math.max(separator, 0)));
+			int y = Integer.parseInt(mesh.substring(separator + 1));
+			if(x > 0 && y > 0)
+				return new MeshSize(x, y);
+		} catch(NumberFormatException nfe) {
+			// handled below
+		}
+		throw new IllegalArgumentException("Invalid mesh size " + mesh + ", expected columns and rows like 39x15.");
+	}
+	
+	/**
+	 * Creates the order of a led-strip that runs through every pixel of the led-matrix,
+	 * from left to right in even rows and from right to left in odd rows.
+	 * @return the position of every LED, ordered like the LEDs on the LED-strip
+	 */
+	List<FieldPosition> serpentineOrder() {
+		List<FieldPosition> order = new ArrayList<>(x * y);
+		for(int row = 0; row < y; row++) {
+			for(int i = 0; i < x; i++) {
+				order.add(new FieldPosition(row, row % 2 == 0 ? i : x - 1 - i));
+			}
+		}
+		return order;
+	}
+
+}
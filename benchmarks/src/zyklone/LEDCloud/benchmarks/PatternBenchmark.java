@@ -0,0 +1,100 @@
+package zyklone.LEDCloud.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import zyklone.LEDCloud.patterns.BackgroundPattern;
+import zyklone.LEDCloud.patterns.Pattern;
+import zyklone.LEDCloud.patterns.PatternPool;
+import zyklone.LEDCloud.patterns.RainbowPattern;
+import zyklone.LEDCloud.rendering.BlendOp;
+import zyklone.LEDCloud.rendering.FrameBuffer;
+
+/**
+ * Measures how long a single pattern takes to calculate its next picture.
+ * Like getNextPicture(), every invocation clears the pattern's picture and renders the pattern into it,
+ * but the frame time is advanced by one frame (at 20 fps) per invocation instead of being read from System.nanoTime(),
+ * so the pattern moves the same way no matter how fast it is drawn.
+ * Patterns that reach their lifetime are handed back to a seeded PatternPool and replaced by a reset one,
+ * so a measurement covers the patterns' whole lives, including fading in and out.
+ *
+ * @author Zyklone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PatternBenchmark {
+	
+	/** the time between two frames at 20 fps */
+	static final long FRAME_NANOS = 50_000_000L;
+	/** the seed of all random numbers */
+	static final long SEED = 1;
+	
+	@Param({"DOT", "WALL", "WAVE", "RAINBOW", "BACKGROUND"})
+	public String pattern;
+	
+	@Param({"39x15", "78x30", "156x60"})
+	public String mesh;
+	
+	private MeshSize size;
+	private PatternPool pool;
+	private Pattern current;
+	private FrameBuffer picture;
+	private long frameTime;
+	
+	@Setup
+	public void setup() {
+		size = MeshSize.parse(mesh);
+		pool = new PatternPool(size.x, size.y);
+		pool.setSeed(SEED);
+		picture = new FrameBuffer(size.x, size.y);
+		// any time but 0, which the patterns treat as "not started yet"
+		frameTime = FRAME_NANOS;
+		current = create();
+	}
+	
+	/**
+	 * @return a new pattern of the benchmarked type, which is shown from the start
+	 */
+	private Pattern create() {
+		switch(pattern) {
+			case "DOT": return pool.acquireDot(false);
+			case "WALL": return pool.acquireWall(false);
+			case "WAVE": return pool.acquireWave(false);
+			// same parameters as the cloud's rainbow mode
+			case "RAINBOW": return new RainbowPattern(size.x, size.y, 600, 20);
+			case "BACKGROUND":
+				BackgroundPattern background = new BackgroundPattern(size.x, size.y);
+				background.setSeed(SEED);
+				return background;
+			default: throw new IllegalArgumentException("Unknown pattern " + pattern + ".");
+		}
+	}
+	
+	@Benchmark
+	public FrameBuffer nextPicture() {
+		frameTime += FRAME_NANOS;
+		picture.clear();
+		if(!current.render(picture, frameTime, BlendOp.ADD)) {
+			pool.release(current);
+			current = create();
+			current.render(picture, frameTime, BlendOp.ADD);
+		}
+		return picture;
+	}
+
+}
@@ -0,0 +1,121 @@
+package zyklone.LEDCloud.networking;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long parsing a json-command takes, once with the CommandParser, straight from the received bytes,
+ * and for comparison the way the Server used to parse commands: decoding the bytes into a String, extracting the last
+ * json-object character by character and parsing it into a JSONObject, whose fields are then read.
+ * The bytes allocated per command are reported by the gc-profiler (see Benchmarks).
+ * The benchmark lies in the server's package, as the CommandParser is not visible outside of it.
+ *
+ * @author Zyklone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CommandParserBenchmark {
+	
+	@Param({"FIXED_COLOR", "NOTIFICATION", "ALARM", "PALETTE"})
+	public String command;
+	
+	private final CommandParser commandParser = new CommandParser();
+	private final Command parsed = new Command();
+	private final JSONParser jsonParser = new JSONParser();
+	private ByteBuffer bytes;
+	
+	@Setup
+	public void setup() {
+		bytes = ByteBuffer.wrap(text().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * @return the received text of the benchmarked command
+	 */
+	private String text() {
+		switch(command) {
+			case "FIXED_COLOR": return "{\"command\":\"fixed-color\",\"red\":200,\"green\":80,\"blue\":20}";
+			case "NOTIFICATION": return "{\"command\": \"notification\", \"red\": 0, \"green\": 120, \"blue\": 255, \"id\": 4711, \"ack\": true}";
+			case "ALARM": return "{\"command\":\"alarm\",\"time\":\"07:30\"}";
+			case "PALETTE": return "{\"command\":\"palette\",\"name\":\"sunset\",\"stops\":[[0,255,64,0],[128,255,0,96],[255,32,0,128]]}";
+			default: throw new IllegalArgumentException("Unknown command " + command + ".");
+		}
+	}
+	
+	/**
+	 * Parses the command with the CommandParser and reads the fields of a fixed-color command.
+	 * @return the read fields, so the parsing can not be removed
+	 */
+	@Benchmark
+	public long parseCommand() {
+		if(!commandParser.parse(bytes, 0, bytes.limit(), parsed))
+			return 0;
+		return (parsed.type != null ? parsed.type.ordinal() : 0) + parsed.red;
+	}
+	
+	/**
+	 * Parses the command the way the Server used to parse it and reads the fields of a fixed-color command.
+	 * @return the read fields, so the parsing can not be removed
+	 */
+	@Benchmark
+	public long parseJson() {
+		String message = StandardCharsets.UTF_8.decode(bytes.duplicate()).toString();
+		JSONObject json = extractValidJSON(message);
+		if(json == null)
+			return 0;
+		Object type = json.get("command");
+		Object red = json.get("red");
+		return (type instanceof String ? ((String) type).length() : 0) + (red instanceof Number ? ((Number) red).longValue() : 0);
+	}
+	
+	/**
+	 * The way the Server used to extract the last json-object out of a message.
+	 * @param originalMessage the message that should be converted into a json-object.
+	 * @return the extracted json-object, or null if the message does not contain a valid json-string
+	 */
+	private JSONObject extractValidJSON(String originalMessage) {
+		if(originalMessage == null || !originalMessage.contains("{") || !originalMessage.contains("}"))
+			return null;
+		String extractedJSONString = "";
+		String substring = "";
+		int depth = 0;
+		for(Character c : originalMessage.toCharArray()) {
+			if(c.equals('{'))
+				depth++;
+			if(depth > 0)
+				substring = substring.concat(c.toString());
+			if(c.equals('}') && depth != 0)
+				depth--;
+			if(depth == 0 && !substring.isEmpty()) {
+				extractedJSONString = new String(substring);
+				substring = "";
+			}
+		}
+		try {
+			return (JSONObject) jsonParser.parse(extractedJSONString);
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+package zyklone.LEDCloud.networking;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures how many commands per second a running Server accepts, like a controller driving the colors from a slider.
+ * Fixed-color commands are sent once with a connection of their own per command,
+ * and then over one streaming connection: without acknowledgements (only the last command is acknowledged,
+ * to know when all commands were processed), with acknowledgements and up to 32 unacknowledged commands,
+ * and with acknowledgements, waiting for every acknowledgement before sending the next command.
+ * Finally the same commands are sent as binary frames (see BinaryProtocol), only the last one acknowledged.
+ * Usage: StreamBenchmark [host [port [commands]]], by default localhost, 6639 and 20000 commands,
+ * e.g. java -cp target/benchmarks.jar zyklone.LEDCloud.networking.StreamBenchmark.
+ * It lies in the server's package, as it uses the constants of the binary protocol.
+ *
+ * @author Zyklone
+ */
+public class StreamBenchmark {
+	
+	private static final int WINDOW = 32;
+	
+	private final String host;
+	private final int port;
+	
+	/**
+	 * @param host the host the server is running on
+	 * @param port the port the server listens on
+	 */
+	public StreamBenchmark(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+	
+	/**
+	 * @param i the number of the command
+	 * @param ack true, if the command should be acknowledged
+	 * @return a fixed-color command, whose color changes with every number
+	 */
+	private static String command(int i, boolean ack) {
+		return "{\"command\":\"fixed-color\",\"red\":" + (i & 0xFF) + ",\"green\":" + ((i >> 8) & 0xFF) + ",\"blue\":40,\"id\":" + i
+				+ (ack ? ",\"ack\":true}" : "}");
+	}
+	
+	/**
+	 * Sends every command over a connection of its own, waiting until the server closed the connection.
+	 * @param commands the number of commands to send
+	 * @return the commands per second
+	 * @throws IOException if the server could not be reached
+	 */
+	public double measureOneShot(int commands) throws IOException {
+		long start = System.nanoTime();
+		for(int i = 0; i < commands; i++) {
+			try(Socket socket = new Socket(host, port)) {
+				socket.getOutputStream().write(command(i, false).getBytes(StandardCharsets.UTF_8));
+				// the server closes the connection once the command was processed
+				while(socket.getInputStream().read() >= 0);
+			}
+		}
+		return commands * 1e9 / (System.nanoTime() - start);
+	}
+	
+	/**
+	 * Sends all commands over one streaming connection.
+	 * @param commands the number of commands to send
+	 * @param window the number of commands that may be waiting for their acknowledgement, or 0 to only acknowledge the last command
+	 * @return the commands per second
+	 * @throws IOException if the server could not be reached or closed the connection
+	 */
+	public double measureStream(int commands, int window) throws IOException {
+		try(Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+			OutputStream out = socket.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			out.write(("{\"command\":\"stream\",\"ack\":" + (window > 0) + "}\n").getBytes(StandardCharsets.UTF_8));
+			if(window > 0)
+				readAck(in);
+			long start = System.nanoTime();
+			int acknowledged = 0;
+			for(int i = 0; i < commands; i++) {
+				boolean last = i == commands - 1;
+				out.write((command(i, last) + "\n").getBytes(StandardCharsets.UTF_8));
+				if(window > 0) {
+					while(i + 1 - acknowledged >= window) {
+						readAck(in);
+						acknowledged++;
+					}
+				}
+			}
+			out.flush();
+			if(window == 0)
+				acknowledged = commands - 1;
+			while(acknowledged < commands) {
+				readAck(in);
+				acknowledged++;
+			}
+			return commands * 1e9 / (System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Sends all commands as binary frames over one connection, only acknowledging the last command.
+	 * @param commands the number of commands to send
+	 * @return the commands per second
+	 * @throws IOException if the server could not be reached or closed the connection
+	 */
+	public double measureBinary(int commands) throws IOException {
+		try(Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+			OutputStream out = socket.getOutputStream();
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			out.write(new byte[] {(byte) BinaryProtocol.MAGIC, BinaryProtocol.VERSION});
+			if(in.readUnsignedByte() != BinaryProtocol.MAGIC || in.readUnsignedByte() != BinaryProtocol.VERSION)
+				throw new IOException("The server does not speak version " + BinaryProtocol.VERSION + " of the binary protocol.");
+			long start = System.nanoTime();
+			byte[] frame = new byte[BinaryProtocol.HEADER_LENGTH + 3];
+			for(int i = 0; i < commands; i++) {
+				boolean last = i == commands - 1;
+				frame[0] = 0x01;
+				frame[1] = (byte) (last ? BinaryProtocol.FLAG_ACK : 0);
+				frame[2] = (byte) (i >> 8);
+				frame[3] = (byte) i;
+				frame[4] = (byte) i;
+				frame[5] = (byte) (i >> 8);
+				frame[6] = 40;
+				out.write(frame);
+			}
+			byte[] ack = new byte[BinaryProtocol.ACK_LENGTH];
+			in.readFully(ack);
+			if(ack[0] != 0x01 || ack[1] != BinaryProtocol.STATUS_OK)
+				throw new IOException("Unexpected acknowledgement of opcode " + ack[0] + " with status " + ack[1] + ".");
+			return commands * 1e9 / (System.nanoTime() - start);
+		}
+	}
+	
+	private static void readAck(BufferedReader in) throws IOException {
+		String line = in.readLine();
+		if(line == null)
+			throw new IOException("The server closed the connection.");
+		if(!line.startsWith("{\"ack\""))
+			throw new IOException("Unexpected acknowledgement: " + line);
+	}
+	
+	/**
+	 * Prints the commands per second of every way of sending commands.
+	 * @param args the host, the port and the number of commands, all optional
+	 * @throws IOException if the server could not be reached
+	 */
+	public static void main(String[] args) throws IOException {
+		String host = args.length > 0 ? args[0] : "localhost";
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 6639;
+		int commands = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		StreamBenchmark benchmark = new StreamBenchmark(host, port);
+		// the server prints every command of a connection of its own, so fewer of them are sent
+		System.out.printf("one connection per command:\t%.0f commands/s%n", benchmark.measureOneShot(Math.max(1, commands / 20)));
+		System.out.printf("stream, last command acked:\t%.0f commands/s%n", benchmark.measureStream(commands, 0));
+		System.out.printf("stream, " + WINDOW + " commands in flight:\t%.0f commands/s%n", benchmark.measureStream(commands, WINDOW));
+		System.out.printf("stream, every command acked:\t%.0f commands/s%n", benchmark.measureStream(commands / 4, 1));
+		System.out.printf("binary, last command acked:\t%.0f commands/s%n", benchmark.measureBinary(commands));
+	}
+
+}
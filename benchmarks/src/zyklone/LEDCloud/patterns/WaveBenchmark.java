@@ -0,0 +1,97 @@
+package zyklone.LEDCloud.patterns;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import zyklone.LEDCloud.rendering.FrameBuffer;
+
+/**
+ * Measures how long a WavePattern takes to draw its wave, depending on the wave's radius.
+ * For comparison, the same wave is also drawn by scanning the complete square around the wave and comparing
+ * every pixel's squared distance in fixed point, the way WavePattern drew it before it was drawn row by row.
+ * (Before the move to fixed point, every pixel's distance was taken with Math.sqrt() in double precision,
+ * which is not measured here.)
+ * The wave is drawn into a picture big enough to hold the biggest wave without wrapping around in the x-axis.
+ * Its origin lies in the first row, as the y-axis is stretched relative to that row.
+ * The ring's cost should grow with the radius, the square's cost with the square of the radius.
+ * The benchmark lies in the patterns' package, as it draws the wave without advancing it in time.
+ *
+ * @author Zyklone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class WaveBenchmark {
+	
+	/** the radius of the biggest benchmarked wave */
+	private static final int BIGGEST_RADIUS = 256;
+	private static final int THICKNESS = 3;
+	
+	@Param({"4", "8", "16", "32", "64", "128", "256"})
+	public int radius;
+	
+	private WavePattern wave;
+	
+	@Setup
+	public void setup() {
+		int size = 4 * BIGGEST_RADIUS;
+		wave = new WavePattern(size, size);
+		wave.thickness = THICKNESS;
+		wave.currentX = FixedPoint.fromInt(size / 2);
+		wave.currentY = 0;
+		wave.initializePicture();
+		// the radius only grows while the wave is advanced in time, so it is set directly
+		wave.radius = FixedPoint.fromInt(radius);
+	}
+	
+	/**
+	 * Draws the wave row by row between its edges, the way WavePattern draws it.
+	 * @return the picture the wave was drawn into
+	 */
+	@Benchmark
+	public FrameBuffer ring() {
+		wave.drawPattern();
+		return wave.picture;
+	}
+	
+	/**
+	 * Draws the wave by testing every pixel of the square around the wave, like WavePattern's drawPattern() before it drew row by row.
+	 * @return the picture the wave was drawn into
+	 */
+	@Benchmark
+	public FrameBuffer square() {
+		int outer = wave.radius;
+		long outerSquared = (long) outer * outer;
+		int inner = outer - FixedPoint.fromInt(wave.thickness);
+		long innerSquared = (long) inner * inner;
+		long maxYDistance = (long) wave.pictureSizeY << (2 * FixedPoint.SHIFT);
+		int stretch = FixedPoint.toFixed(1.2f);
+		for(int y = FixedPoint.truncate(wave.currentY - outer); y <= FixedPoint.truncate(wave.currentY + outer); y++) {
+			long deltaY = (long) y * stretch - wave.currentY;
+			long yDistance = deltaY * deltaY;
+			for(int x = FixedPoint.truncate(wave.currentX - outer); FixedPoint.fromInt(x) <= wave.currentX + outer; x++) {
+				long deltaX = FixedPoint.fromInt(x) - wave.currentX;
+				long centerDistance = deltaX * deltaX + yDistance;
+				if(centerDistance < outerSquared && (inner < 0 || centerDistance > innerSquared) && yDistance <= maxYDistance) {
+					wave.drawPixel(x, y);
+				}
+			}
+		}
+		return wave.picture;
+	}
+
+}
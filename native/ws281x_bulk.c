@@ -0,0 +1,45 @@
+/*
+ * Copies the LED-buffer of a Ws281xLedOutput into the LED-array of the rpi_ws281x channel
+ * driven by a Ws281xLedStrip of the rpi-ws281x-java wrapper, with a single memcpy per frame
+ * (see zyklone.LEDCloud.output.Ws281xBulkCopy).
+ * The wrapper does not expose the channel, so its pointer is read from the wrapper's fields:
+ * Ws281xLedStrip.currentChannel, whose SWIG proxy keeps the channel's address in swigCPtr.
+ * The LED-buffer holds one packed color (0xRRGGBB) per LED in native byte order,
+ * which is the layout of ws2811_led_t, so the colors are copied as they are.
+ *
+ * @author Zyklone
+ */
+#include <jni.h>
+#include <stdint.h>
+#include <string.h>
+
+#include <ws2811.h>
+
+JNIEXPORT jlong JNICALL Java_zyklone_LEDCloud_output_Ws281xBulkCopy_channel(JNIEnv *env, jclass cls, jobject strip) {
+	jclass stripClass = (*env)->GetObjectClass(env, strip);
+	jfieldID channelField = (*env)->GetFieldID(env, stripClass, "currentChannel", "Lcom/github/mbelling/ws281x/jni/ws2811_channel_t;");
+	if(channelField == NULL) {
+		(*env)->ExceptionClear(env);
+		return 0;
+	}
+	jobject channel = (*env)->GetObjectField(env, strip, channelField);
+	if(channel == NULL)
+		return 0;
+	jfieldID pointerField = (*env)->GetFieldID(env, (*env)->GetObjectClass(env, channel), "swigCPtr", "J");
+	if(pointerField == NULL) {
+		(*env)->ExceptionClear(env);
+		return 0;
+	}
+	return (*env)->GetLongField(env, channel, pointerField);
+}
+
+JNIEXPORT jint JNICALL Java_zyklone_LEDCloud_output_Ws281xBulkCopy_copy(JNIEnv *env, jclass cls, jlong channelPointer, jobject leds, jint count) {
+	ws2811_channel_t *channel = (ws2811_channel_t *) (intptr_t) channelPointer;
+	const ws2811_led_t *colors = (*env)->GetDirectBufferAddress(env, leds);
+	if(channel == NULL || channel->leds == NULL || colors == NULL || count < 0)
+		return 0;
+	if(count > channel->count)
+		count = channel->count;
+	memcpy(channel->leds, colors, (size_t) count * sizeof(ws2811_led_t));
+	return count;
+}
@@ -1,31 +1,42 @@
 package zyklone.LEDCloud;
 
-import java.awt.Color;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.Random;
 
 import org.json.simple.JSONArray;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import com.github.mbelling.ws281x.Ws281xLedStrip;
-import com.github.mbelling.ws281x.jni.rpi_ws281xConstants;
-
+import zyklone.LEDCloud.mesh.ColorCalibration;
 import zyklone.LEDCloud.mesh.FieldPosition;
+import zyklone.LEDCloud.mesh.FramePipeline;
 import zyklone.LEDCloud.mesh.LedMeshCoordinator;
+import zyklone.LEDCloud.metrics.FrameStats;
+import zyklone.LEDCloud.metrics.Histogram;
+import zyklone.LEDCloud.output.LedOutput;
+import zyklone.LEDCloud.output.LedOutputFactory;
+import zyklone.LEDCloud.palettes.Palette;
+import zyklone.LEDCloud.palettes.PaletteRegistry;
 import zyklone.LEDCloud.patterns.BackgroundPattern;
-import zyklone.LEDCloud.patterns.DotPattern;
+import zyklone.LEDCloud.patterns.LocalPattern;
 import zyklone.LEDCloud.patterns.Pattern;
+import zyklone.LEDCloud.patterns.PatternCompositor;
+import zyklone.LEDCloud.patterns.PatternPool;
 import zyklone.LEDCloud.patterns.RainbowPattern;
-import zyklone.LEDCloud.patterns.WallPattern;
-import zyklone.LEDCloud.patterns.WavePattern;
+import zyklone.LEDCloud.patterns.StampCache;
+import zyklone.LEDCloud.rendering.BlendOp;
+import zyklone.LEDCloud.rendering.FrameBuffer;
+import zyklone.LEDCloud.rendering.FrameClock;
+import zyklone.LEDCloud.rendering.FrameScheduler;
+import zyklone.LEDCloud.rendering.SystemFrameClock;
+import zyklone.LEDCloud.stream.DdpReceiver;
 
 
 /**
@@ -35,63 +46,142 @@ import zyklone.LEDCloud.patterns.WavePattern;
  * The mode along with other necessary information (e.g. alarm time),
  * may be changed from outside the thread through the use of corresponding methods.
  * Changes to the cloud's LED-strip are mostly applied via the use of so-called pictures,
- * which are nothing more than two-dimensional arrays of Color-objects.
- * These pictures are sent to the classes LedMeshCoordinator, which sends the corresponding
- * commands to the cloud's LED-strip in the correct order.
+ * which are nothing more than frame buffers holding one packed color (0xRRGGBB) per pixel.
+ * These pictures are handed over to a FramePipeline, whose output thread sends them to the classes LedMeshCoordinator,
+ * which sends the corresponding commands to the cloud's LED-strip in the correct order.
+ * This way the next picture is calculated while the previous one is still being transferred to the LED-strip.
+ * The output thread can be disabled by setting the system property ledcloud.pipeline to false,
+ * in which case every picture is sent to the LED-strip before the next one is calculated.
  * The position of each LED in the matrix can be set via a file (./order.json) which is parsed at startup.
+ * The LED-strip the pictures are sent to can be replaced by another output (e.g. for running the cloud without a Raspberry Pi)
+ * via the system property ledcloud.output, see LedOutputFactory.
+ * The colors are calibrated before being sent (see ColorCalibration). The initial gamma value and brightness
+ * can be set via the system properties ledcloud.gamma (default 1.0) and ledcloud.brightness (0.0 to 1.0, default 1.0).
+ * Big LED-matrices are drawn in tiles by several threads. The number of pixels from which on this happens
+ * and the size of the tiles can be configured with the system properties
+ * ledcloud.tiles.threshold (default 16384) and ledcloud.tiles.size (default 32).
+ * All animations are paced by one FrameScheduler, whose frame rate can be set via
+ * the system property ledcloud.fps (default 20).
+ * The time of every frame is read once from a FrameClock and passed down to all patterns.
+ * For reproducible animations, the system's clock can be replaced by a virtual clock (ledcloud.clock=virtual)
+ * and all random numbers can be seeded via the system property ledcloud.seed.
+ * The cloud then renders exactly the same frames on every run (see GoldenFramesTest).
+ * In the stream mode, the cloud displays the pixels an external renderer sends via DDP (see DdpReceiver)
+ * on the udp-port set by the system property ledcloud.stream.port (default 4048). Every frame is displayed as soon as it
+ * was received, the LEDs are switched off if no pixels arrive for ledcloud.stream.timeout milliseconds (default 2500).
  * 
  * @author Zyklone
  */
 public class LEDCloud implements Runnable {
 	
-	private Ws281xLedStrip lightstrip = null;
 	private LedMeshCoordinator coordinator = null;
+	private FramePipeline pipeline;
 	private int meshSizeX;
 	private int meshSizeY;
-	private ArrayList<ArrayList<Color>> comPic;
+	private FrameBuffer comPic;
 	private int stripsize = 0;
 	private volatile ModeType currentMode;
 	private volatile ModeType cacheMode;
-	private volatile Color color;
-	private volatile Color cacheColor;
+	/** packed color (0xRRGGBB) */
+	private volatile int color;
+	/** packed color (0xRRGGBB) */
+	private volatile int cacheColor;
 	private ArrayList<Pattern> patterns = new ArrayList<>(30);
-	private Pattern rainbowPattern = new RainbowPattern(39, 15, 600, 20);
+	/** keeps the patterns that have reached their lifetime, to reuse them instead of creating new ones */
+	private PatternPool pool;
+	private PatternCompositor compositor = new PatternCompositor(
+			Integer.getInteger("ledcloud.tiles.threshold", 16384), Integer.getInteger("ledcloud.tiles.size", 32));
+	private FrameScheduler scheduler;
+	/** histograms of the frames' compute, output and overshoot times and of the number of patterns */
+	private final FrameStats stats;
+	private RainbowPattern rainbowPattern;
+	/** the palettes the rainbow mode can display, selected by name */
+	private final PaletteRegistry palettes = new PaletteRegistry();
 	private boolean addPattern = false;
 	private LocalTime alarmTime = null;
 	private Random rand = new Random();
+	/** frame time of the last status output */
 	private long lastUIUpdate = 0;
 	private boolean idle = false;
+	private final int streamPort = Integer.getInteger("ledcloud.stream.port", DdpReceiver.DEFAULT_PORT);
+	private final long streamTimeoutNanos = Long.getLong("ledcloud.stream.timeout", 2500) * 1_000_000;
 	
 
 	/**
 	 * Tries to read the file containing the led positioning information (./order.json),
-	 * parse it and create a Ws281xLedStrip instance as well as a LedMeshCoordinator instance
+	 * parse it and create the LedOutput (see LedOutputFactory) as well as a LedMeshCoordinator instance
 	 * from the parsed information. The corresponding class attributes as well as
 	 * the maximum values for the cloud's LED-matrix (meshSizeX, meshSizeY) are set accordingly.
-	 * Lastly, a BackgroundPattern is added to the list of patterns.
+	 * Lastly, the picture that all patterns are added up in and the pipeline that displays it are created
+	 * and a BackgroundPattern is added to the list of patterns.
+	 * The pool for reusing patterns is created for the size of the cloud's LED-matrix.
+	 * The clock and the seed of the random numbers are taken from the system properties ledcloud.clock and ledcloud.seed.
 	 */
 	public LEDCloud() {
+		this(createClock(), Long.getLong("ledcloud.seed"));
+	}
+	
+	/**
+	 * Creates the cloud like LEDCloud(), but with the passed clock and seed.
+	 * @param clock the clock all frames' times are read from
+	 * @param seed the seed of all random numbers, or null if they should not be reproducible
+	 */
+	public LEDCloud(FrameClock clock, Long seed) {
+		scheduler = new FrameScheduler(Integer.getInteger("ledcloud.fps", 20), clock);
+		stats = new FrameStats(clock);
 		importLedMeshOrder();
-		patterns.add(new BackgroundPattern(meshSizeX, meshSizeY));
+		try {
+			coordinator.setCalibration(new ColorCalibration(Float.parseFloat(System.getProperty("ledcloud.gamma", "1.0")),
+					Float.parseFloat(System.getProperty("ledcloud.brightness", "1.0")), 1f, 1f, 1f));
+		} catch(IllegalArgumentException iae) {
+			System.err.println("Invalid color calibration, the colors will not be calibrated: " + iae.getMessage());
+		}
+		comPic = new FrameBuffer(meshSizeX, meshSizeY);
+		pipeline = new FramePipeline(coordinator, meshSizeX, meshSizeY,
+				Boolean.parseBoolean(System.getProperty("ledcloud.pipeline", "true")));
+		pipeline.setOutputTimes(stats.getOutputTime());
+		pipeline.setStreamLatencies(stats.getStreamLatency());
+		rainbowPattern = new RainbowPattern(meshSizeX, meshSizeY, 600, 20);
+		BackgroundPattern background = new BackgroundPattern(meshSizeX, meshSizeY);
+		patterns.add(background);
+		pool = new PatternPool(meshSizeX, meshSizeY);
+		if(seed != null) {
+			rand.setSeed(seed);
+			background.setSeed(rand.nextLong());
+			pool.setSeed(rand.nextLong());
+		}
+	}
+	
+	/**
+	 * @return the clock configured via the system property ledcloud.clock, or the system's clock if the configuration is invalid
+	 */
+	private static FrameClock createClock() {
+		try {
+			return FrameClock.create();
+		} catch(IllegalArgumentException iae) {
+			System.err.println(iae.getMessage() + ", using the system's clock instead.");
+			return new SystemFrameClock(FrameScheduler.DEFAULT_SPIN_NANOS);
+		}
 	}
 	
 	/**
 	 * Takes a collection of pixels (FieldPosition), extracts the maximum values for rows (y) and columns (x),
 	 * and sets the classes mesh-size-attributes accordingly.
+	 * As the coordinates start at 0, the sizes are one bigger than the maximum values.
 	 * @param mesh the collection of pixels (FieldPosition)
 	 */
 	private void deriveMeshSize(Collection<FieldPosition> mesh) {
 		if(mesh == null)
 			return;
 		meshSizeX = mesh.stream().mapToInt(p -> p.getColumn())
-				.max().orElse(0);
-		meshSizeX = mesh.stream().mapToInt(p -> p.getRow())
-				.max().orElse(0);
+				.max().orElse(-1) + 1;
+		meshSizeY = mesh.stream().mapToInt(p -> p.getRow())
+				.max().orElse(-1) + 1;
 	}
 	
 	/**
 	 * Tries to read the file containing the led positioning information (./order.json),
-	 * parse it and create a Ws281xLedStrip instance as well as a LedMeshCoordinator instance
+	 * parse it and create the LedOutput (see LedOutputFactory) as well as a LedMeshCoordinator instance
 	 * from the parsed information. The corresponding class attributes as well as
 	 * the maximum values for the cloud's LED-matrix (meshSizeX, meshSizeY) are set accordingly.
 	 */
@@ -107,11 +197,23 @@ public class LEDCloud implements Runnable {
 		System.out.println("LED-Mesh-order successfully imported!");
 		this.stripsize = parsedLedMeshOrder.size();
 		
-		this.lightstrip = new Ws281xLedStrip(stripsize, 21, 800000, 10, 200, 0, false, rpi_ws281xConstants.WS2812_STRIP);
-		// current picture-size = row 15, col 39
-		this.coordinator = new LedMeshCoordinator(order, lightstrip);
 		// initialize mesh-size values
 		deriveMeshSize(order);
+		
+		LedOutput output = null;
+		try {
+			output = LedOutputFactory.create(stripsize);
+		} catch(IOException | IllegalArgumentException e) {
+			System.err.println("The LED-output could not be created: " + e.getMessage());
+			System.exit(-1);
+		}
+		// current picture-size = row 15, col 39
+		try {
+			this.coordinator = new LedMeshCoordinator(order, output, meshSizeX, meshSizeY);
+		} catch(IllegalArgumentException iae) {
+			System.err.println("The LED-Mesh-order is invalid: " + iae.getMessage());
+			System.exit(-1);
+		}
 	}
 	
 	/**
@@ -167,9 +269,9 @@ public class LEDCloud implements Runnable {
 	
 	/**
 	 * Tells the cloud to display a fixed color.
-	 * @param col the Color to be displayed
+	 * @param col the packed color (0xRRGGBB) to be displayed
 	 */
-	public void setFixedColorMode(Color col) {
+	public void setFixedColorMode(int col) {
 		this.currentMode = ModeType.FIXEDCOLOR;
 		this.color = col;
 		this.idle = false;
@@ -183,6 +285,27 @@ public class LEDCloud implements Runnable {
 		this.idle = false;
 	}
 	
+	/**
+	 * Tells the cloud to change the current mode to "Rainbow", displaying the colors of the passed palette.
+	 * @param paletteName the name of a palette known to the cloud (see getPalettes())
+	 * @return true if the mode was changed, or false if there is no palette with the passed name
+	 */
+	public boolean setRainbowMode(String paletteName) {
+		Palette palette = palettes.get(paletteName);
+		if(palette == null)
+			return false;
+		rainbowPattern.setPalette(palette);
+		setRainbowMode();
+		return true;
+	}
+	
+	/**
+	 * @return the palettes the rainbow mode can display, which may be extended at any time
+	 */
+	public PaletteRegistry getPalettes() {
+		return palettes;
+	}
+	
 	/**
 	 * Tells the cloud to change the current mode to "Patterns".
 	 */
@@ -201,9 +324,9 @@ public class LEDCloud implements Runnable {
 	
 	/**
 	 * Sets the Cloud to flash all LEDs 2 times with the specified color and then restore its prior state.
-	 * @param col the color of the notification-flashes
+	 * @param col the packed color (0xRRGGBB) of the notification-flashes
 	 */
-	public void playNotification(Color col) {
+	public void playNotification(int col) {
 		// save current state
 		if(this.currentMode != null && !this.currentMode.equals(ModeType.NOTIFICATION)) {
 			this.cacheMode = this.currentMode;
@@ -211,6 +334,7 @@ public class LEDCloud implements Runnable {
 		}
 		this.currentMode = ModeType.NOTIFICATION;
 		this.color = col;
+		this.idle = false;
 	}
 	
 	/**
@@ -230,6 +354,38 @@ public class LEDCloud implements Runnable {
 		System.out.println("Mode successfully set to alarm.");
 	}
 	
+	/**
+	 * @return the output the colors of the LEDs are sent to
+	 */
+	public LedOutput getOutput() {
+		return coordinator.getOutput();
+	}
+	
+	/**
+	 * @return the histograms describing how the frames are calculated and displayed
+	 */
+	public FrameStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * @return the calibration currently applied to all colors before they are sent to the LED-strip
+	 */
+	public ColorCalibration getCalibration() {
+		return coordinator.getCalibration();
+	}
+	
+	/**
+	 * Replaces the calibration applied to all colors before they are sent to the LED-strip.
+	 * A fixed color that is currently displayed is sent again, so that the new calibration is visible right away.
+	 * @param calibration the new calibration
+	 */
+	public void setCalibration(ColorCalibration calibration) {
+		coordinator.setCalibration(calibration);
+		this.idle = false;
+		System.out.println("Color calibration set to " + calibration + ".");
+	}
+	
 	/**
 	 * This feature is not yet implemented.
 	 * Sets the Cloud's mode to play patterns along to the recorded audio.
@@ -239,6 +395,14 @@ public class LEDCloud implements Runnable {
 		this.idle = false;
 	}
 	
+	/**
+	 * Tells the cloud to display the pixels an external renderer sends via DDP.
+	 */
+	public void setStreamMode() {
+		this.currentMode = ModeType.STREAM;
+		this.idle = false;
+	}
+	
 	/**
 	 * Fades out the currently set color if any,
 	 * then flashes the notification-color 2 times and restores the state prior to the notification.
@@ -270,10 +434,9 @@ public class LEDCloud implements Runnable {
 		// fade old colors
 		System.out.println("Fading old colors.");
 		fadeOutCurrentPicture(1000);
-		lightstrip.setStrip(0, 0, 0);
-		lightstrip.render();
+		pipeline.submitFill(FrameBuffer.BLACK);
 		long timeToAlarmInMs = LocalTime.now().until(this.alarmTime, ChronoUnit.MILLIS);
-		long startTime = System.currentTimeMillis();
+		long startTime = currentTimeMillis();
 		long currentTime;
 		if(timeToAlarmInMs < 0)
 			timeToAlarmInMs += 86400_000;	// add one day, if the time is negative (current time of day is bigger than alarm time)
@@ -281,48 +444,41 @@ public class LEDCloud implements Runnable {
 			timeToAlarmInMs -= 120_000;		// start the animation two minutes before the alarm time
 			System.out.println("Waiting " + timeToAlarmInMs + " ms.");
 			// wait until alarm time is reached (minus two minutes)
-			while(System.currentTimeMillis() - startTime < timeToAlarmInMs && this.currentMode.equals(ModeType.ALARM)) {
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {}
+			while(currentTimeMillis() - startTime < timeToAlarmInMs && this.currentMode.equals(ModeType.ALARM)) {
+				sleep(500);
 			}
 			if(!this.currentMode.equals(ModeType.ALARM))
 				return;
 		}
-		startTime = System.currentTimeMillis();
+		startTime = currentTimeMillis();
 		System.out.println("Alarm time reached. Slowly fading in white light.");
 		float fadeInTimeInMs = 240_000f;
 		// slowly fade in a white light over a period of 4 minutes
-		while((currentTime = System.currentTimeMillis()) - startTime < fadeInTimeInMs && this.currentMode.equals(ModeType.ALARM)) {
+		while((currentTime = currentTimeMillis()) - startTime < fadeInTimeInMs && this.currentMode.equals(ModeType.ALARM)) {
 			float brightness = (currentTime - startTime)/fadeInTimeInMs;
 			System.out.println("Brigthness: " + brightness);
-			lightstrip.setStrip((int) (250*brightness), (int) (250*brightness), (int) (250*brightness));
-			lightstrip.render();
-			try {
-				Thread.sleep(1000);	
-			} catch (InterruptedException e) {}
+			pipeline.submitFill(FrameBuffer.rgb((int) (250*brightness), (int) (250*brightness), (int) (250*brightness)));
+			sleep(1000);
 		}
 		if(!this.currentMode.equals(ModeType.ALARM))
 			return;
 		System.out.println("White light fully faded in.");
 		System.out.println("White light will be on for 2 minutes.");
-		startTime = System.currentTimeMillis();
+		startTime = currentTimeMillis();
 		long onTimeInMs = 120_000;
 		// set the cloud to a white light with full brightness for 2 minutes
-		while(System.currentTimeMillis() - startTime < onTimeInMs && this.currentMode.equals(ModeType.ALARM)) {
-			try {
-				Thread.sleep(1000);	
-			} catch (InterruptedException e) {}
+		while(currentTimeMillis() - startTime < onTimeInMs && this.currentMode.equals(ModeType.ALARM)) {
+			sleep(1000);
 		}
 		if(!this.currentMode.equals(ModeType.ALARM))
 			return;
 		System.out.println("Soft alarm-playback finished.");
 		System.out.println("Getting more aggressive.");
-		startTime = System.currentTimeMillis();
-		Color white = new Color(255, 255, 255);
+		startTime = currentTimeMillis();
+		int white = FrameBuffer.rgb(255, 255, 255);
 		fadeOutColor(white, 10000);
 		// start fading in and out a white light, increasing the speed over a period of 4 minutes
-		while((currentTime = System.currentTimeMillis()) - startTime < 240_000 && this.currentMode.equals(ModeType.ALARM)) {
+		while((currentTime = currentTimeMillis()) - startTime < 240_000 && this.currentMode.equals(ModeType.ALARM)) {
 			fadeInColor(white, 200 + 24_000*(1-(currentTime - startTime)/240_000));
 			fadeOutColor(white, 200 + 24_000*(1-(currentTime - startTime)/240_000));
 		}
@@ -333,13 +489,28 @@ public class LEDCloud implements Runnable {
 		}
 	}
 	
+	/**
+	 * @return the current time of the cloud's clock in milliseconds
+	 */
+	private long currentTimeMillis() {
+		return scheduler.getClock().nanoTime() / 1_000_000;
+	}
+	
+	/**
+	 * Waits for the passed time on the cloud's clock.
+	 * @param timeInMs the time to wait in milliseconds
+	 */
+	private void sleep(long timeInMs) {
+		FrameClock clock = scheduler.getClock();
+		clock.waitUntil(clock.nanoTime() + timeInMs * 1_000_000);
+	}
+	
 	/**
 	 * Sets the whole Cloud to one color, according to the last set Color-value.
 	 */
 	private void setFixedColor() {
 		
-		lightstrip.setStrip(this.color.getRed(), this.color.getGreen(), this.color.getBlue());
-		lightstrip.render();
+		pipeline.submitFill(this.color);
 		this.idle = true;
 	}
 	
@@ -348,123 +519,143 @@ public class LEDCloud implements Runnable {
 	 * @param timeInMs the time period over which the picture should be faded out
 	 */
 	private void fadeOutCurrentPicture(long timeInMs) {
-		long startTime = System.currentTimeMillis();
+		long duration = timeInMs * 1_000_000;
+		long startTime = scheduler.resync();
 		long currentTime;
-		while((currentTime = System.currentTimeMillis()) - startTime < timeInMs) {
-			float factor = 1 - (currentTime - startTime)/((float)timeInMs);
+		while((currentTime = scheduler.awaitNextFrame()) - startTime < duration) {
+			float factor = 1 - (currentTime - startTime)/((float)duration);
 			if(factor <= 1.0f && factor > 0.0f) {
-				for(int i = 0; i < comPic.size(); i++) {
-					for(int j = 0; j < comPic.get(i).size(); j++) {
-						Color col = comPic.get(i).get(j);
-						comPic.get(i).set(j, new Color((int)(col.getRed()*factor), (int)(col.getGreen()*factor), (int)(col.getBlue()*factor)));
-					}
-				}
-				this.coordinator.updateLedMesh(comPic);
+				comPic.scale(factor);
+				pipeline.submit(comPic);
 			}
-			try {
-				Thread.sleep(50 + currentTime - System.currentTimeMillis());
-			} catch (InterruptedException e) {}
 		}
 	}
 	
 	
 	/**
 	 * Fades in the given Color from minimum to maximum brightness in the specified amount of time
-	 * @param col the Color to fade in
+	 * @param col the packed color (0xRRGGBB) to fade in
 	 * @param timeInMs the amount of time in which the Color should be faded from minimum to maximum brightness
 	 */
-	private void fadeInColor(Color col, long timeInMs) {
-		long startTime = System.currentTimeMillis();
+	private void fadeInColor(int col, long timeInMs) {
+		long duration = timeInMs * 1_000_000;
+		long startTime = scheduler.resync();
 		long currentTime;
-		while((currentTime = System.currentTimeMillis()) - startTime < timeInMs) {
-			float factor = (currentTime - startTime)/((float)timeInMs);
+		while((currentTime = scheduler.awaitNextFrame()) - startTime < duration) {
+			float factor = (currentTime - startTime)/((float)duration);
 			if(factor <= 1.0f && factor > 0.0f) {
-				lightstrip.setStrip((int)(col.getRed()*factor), (int)(col.getGreen()*factor), (int)(col.getBlue()*factor));
-				lightstrip.render();
+				pipeline.submitFill(FrameBuffer.scale(col, factor));
 			}
-			try {
-				Thread.sleep(50 + currentTime - System.currentTimeMillis());
-			} catch (InterruptedException e) {}
 		}
 	}
 	
 	/**
 	 * Fades out the given Color from maximum to minimum brightness in the specified amount of time
-	 * @param col the Color to fade out
+	 * @param col the packed color (0xRRGGBB) to fade out
 	 * @param timeInMs the amount of time in which the Color should be faded from maximum to minimum brightness
 	 */
-	private void fadeOutColor(Color col, long timeInMs) {
-		long startTime = System.currentTimeMillis();
-		while(System.currentTimeMillis() - startTime < timeInMs) {
-			float factor = (System.currentTimeMillis() - startTime)*(-1.0f)/(timeInMs) + 1;
+	private void fadeOutColor(int col, long timeInMs) {
+		long duration = timeInMs * 1_000_000;
+		long startTime = scheduler.resync();
+		long currentTime;
+		while((currentTime = scheduler.awaitNextFrame()) - startTime < duration) {
+			float factor = (currentTime - startTime)*(-1.0f)/(duration) + 1;
 			if(factor <= 1.0f && factor > 0.0f) {
-				lightstrip.setStrip((int)(col.getRed()*factor), (int)(col.getGreen()*factor), (int)(col.getBlue()*factor));
-				lightstrip.render();
+				pipeline.submitFill(FrameBuffer.scale(col, factor));
 			}
-			try {
-				Thread.sleep(50);
-			} catch (InterruptedException e) {}
 		}
 	}
 	
 	/**
 	 * Populates the patterns-list with new patterns (by chance, or if there are less than 2),
-	 * creates a new "dark" picture (2D-array with black color objects),
-	 * adds each pattern to it, one by one
-	 * and sends the complete picture (comPic) to the lightstrip.
-	 * If a pattern has reached its lifetime, it is removed from the patterns-list.
+	 * clears the picture (sets all of its pixels to black),
+	 * lets the compositor draw each pattern into it
+	 * and sends the complete picture (comPic) to the LED-strip.
+	 * All patterns are advanced to the time of the current frame, as set by the scheduler.
+	 * If a pattern has reached its lifetime, it is removed from the patterns-list and handed back to the pool.
 	 */
 	private void processPatterns() {
-		if(System.currentTimeMillis() - lastUIUpdate >= 950) {
+		if(scheduler.getFrameTime() - lastUIUpdate >= 950_000_000L) {
 			System.out.println("Patterns in the list: " + patterns.size());
+			StampCache stamps = LocalPattern.getStampCache();
+			System.out.printf("Stamp cache: %d stamps, hit rate %.1f%%%n", stamps.size(), stamps.getHitRate() * 100);
+			System.out.println("Pattern pool: " + pool.getCreated() + " patterns created, " + pool.getReused() + " reused.");
 		}
-		 comPic = new ArrayList<>(meshSizeY);
-		
 		// 2% chance (every frame) to add new pattern, or 100% if less then 2 patterns are being displayed (BasePattern not counted)
 		if(rand.nextInt(50) == 0 || patterns.size() <= 2) {
 			addPatternToList();
 		}
-		// initialize dark base picture
-		Color black = new Color(0, 0, 0);
-		for(int i = 0; i < meshSizeY; i++) {
-			ArrayList<Color> row = new ArrayList<Color>(meshSizeX);
-			comPic.add(row);
-			for(int j = 0; j < meshSizeX; j++) {
-				row.add(black);
-			}
-		}
+		stats.getPatternCount().record(patterns.size());
+		// reset to a dark base picture
+		comPic.clear();
 		// add up all patterns
-		for(Iterator<Pattern> it = patterns.iterator(); it.hasNext();) {
-			Pattern current = it.next();
-			ArrayList<ArrayList<Color>> tempPic = current.getNextPicture();
-			// if pattern has reached lifetime, remove it from list
-			if(tempPic == null) {
-				it.remove();
-				System.out.println("Pattern lifetime reached.");
-				continue;
-			}
-			for(int y = 0; y < comPic.size(); y++) {
-				for(int x = 0; x < comPic.get(0).size(); x++) {
-					Color tempColor = tempPic.get(y).get(x);
-					// only add pixel, if it is not dark
-					if(tempColor.getRed() != 0 || tempColor.getGreen() != 0 || tempColor.getBlue() != 0) {
-						Color comColor = comPic.get(y).get(x);
-						int red = comColor.getRed() + tempColor.getRed();
-						if(red > 255)
-							red = 255;
-						int green = comColor.getGreen() + tempColor.getGreen();
-						if(green > 255)
-							green = 255;
-						int blue = comColor.getBlue() + tempColor.getBlue();
-						if(blue > 255)
-							blue = 255;
-						comPic.get(y).set(x, new Color(red, green, blue));
-					}
+		int removed = compositor.compose(patterns, comPic, scheduler.getFrameTime(), BlendOp.ADD, pool);
+		for(int i = 0; i < removed; i++) {
+			System.out.println("Pattern lifetime reached.");
+		}
+		// display complete picture
+		pipeline.submit(comPic);
+	}
+	
+	/**
+	 * Draws the next picture of the RainbowPattern and sends it to the LED-strip.
+	 */
+	private void processRainbow() {
+		rainbowPattern.render(comPic, scheduler.getFrameTime(), BlendOp.REPLACE);
+		pipeline.submit(comPic);
+	}
+	
+	/**
+	 * Receives the pixels of an external renderer and displays every frame as soon as its last packet arrived,
+	 * until the mode is changed. Pixels that are not sent keep their color of the last frame.
+	 * The pixels arrive in the order of the LED-strip and are handed to the pipeline in that order, without being drawn into a picture.
+	 * If no pixels are received within the stream timeout, the LEDs are switched off until the next frame arrives.
+	 * The receiver is only listening while the cloud is in stream mode.
+	 */
+	private void processStream() {
+		DdpReceiver receiver;
+		try {
+			receiver = new DdpReceiver(streamPort);
+		} catch(IOException ioe) {
+			System.err.println("Pixels can not be received on udp-port " + streamPort + ": " + ioe.getMessage());
+			if(this.currentMode == ModeType.STREAM)
+				setFixedColorMode(FrameBuffer.BLACK);
+			return;
+		}
+		System.out.println("Receiving pixels on udp-port " + streamPort + ".");
+		int[] leds = new int[coordinator.getLedCount()];
+		boolean dark = false;
+		long lastStatus = System.nanoTime();
+		long lastFrames = 0;
+		try {
+			while(this.currentMode == ModeType.STREAM) {
+				// return every frame period at the latest, to notice a change of the mode
+				if(receiver.receive(leds, scheduler.getPeriodNanos())) {
+					pipeline.submitStrip(leds, receiver.getFrameStartNanos());
+					dark = false;
+				} else if(!dark && receiver.getIdleNanos(System.nanoTime()) > streamTimeoutNanos) {
+					System.out.println("No pixels received for " + streamTimeoutNanos / 1_000_000_000.0 + " seconds. Switching the LEDs off.");
+					Arrays.fill(leds, FrameBuffer.BLACK);
+					pipeline.submitFill(FrameBuffer.BLACK);
+					dark = true;
+				}
+				long now = System.nanoTime();
+				if(now - lastStatus >= 1_000_000_000L && receiver.getFrames() != lastFrames) {
+					System.out.println("Pixel stream: " + receiver.getFrames() + " frames out of " + receiver.getPackets() + " packets ("
+							+ receiver.getLostPackets() + " lost, " + receiver.getLatePackets() + " late, " + receiver.getInvalidPackets() + " invalid).");
+					lastStatus = now;
+					lastFrames = receiver.getFrames();
 				}
 			}
+		} catch(IOException ioe) {
+			System.err.println("Receiving pixels failed: " + ioe.getMessage());
+			if(this.currentMode == ModeType.STREAM)
+				setFixedColorMode(FrameBuffer.BLACK);
+		} finally {
+			try {
+				receiver.close();
+			} catch(IOException ioe) {}
 		}
-		// display complete picture
-		coordinator.updateLedMesh(comPic);
 	}
 	
 	/**
@@ -472,55 +663,74 @@ public class LEDCloud implements Runnable {
 	 */
 	@Override
 	public void run() {
-		if(this.lightstrip == null || this.coordinator == null
+		if(this.coordinator == null
 				|| this.meshSizeX == 0 || this.meshSizeY == 0)
 			return;
 		
 		//long patternChangeTime = 0;	// forgot what I wanted to do with this
 		
+		pipeline.start();
 		playIntro();
 		
-		long currentTime = 0;
+		scheduler.resync();
 		while(true) {
-			currentTime = System.currentTimeMillis();
-			
-			processMode();
-			
-			if(this.addPattern) {
-				addPatternToList();
-				this.addPattern = false;
-			}
-			
-			long calculationTime = System.currentTimeMillis() - currentTime;
-			// add in a pause, whose length is dependent upon the time needed to calculate and display the next picture,
-			// to ensure a stable frame-rate
-			if(!this.idle && calculationTime < 50) {
-				try {
-					Thread.sleep(50-calculationTime);
-				} catch (InterruptedException e) {}
-			}
-			// for monitoring performance. atm only the last calculation-time is printed.
-			// Could be improved by adding average, min and max time.
-			if(System.currentTimeMillis()-lastUIUpdate > 1000) {
-				System.out.println("Calculating one complete picture took " + calculationTime + "ms.");
-				lastUIUpdate = System.currentTimeMillis();
-			}
+			renderFrame();
+		}
+	}
+	
+	/**
+	 * Waits for the next frame and sets / advances the LEDs according to the current mode.
+	 * Modes that play an animation of their own (e.g. a notification) only return once the animation is finished.
+	 * Called over and over by run(), after the intro was played.
+	 */
+	public void renderFrame() {
+		// wait for the deadline of the next frame, to ensure a stable frame-rate.
+		// If there is nothing to animate, the mode handles the pause itself and the deadlines start over afterwards
+		long frameTime;
+		ModeType mode = this.currentMode;
+		// notifications and alarms play a whole animation within one frame, so they are not recorded as one frame
+		boolean recorded = !this.idle && (mode == ModeType.FIXEDCOLOR || mode == ModeType.RAINBOW || mode == ModeType.PATTERNS);
+		if(this.idle || mode == null) {
+			frameTime = scheduler.resync();
+		} else {
+			frameTime = scheduler.awaitNextFrame();
+			if(recorded)
+				stats.getSleepOvershoot().record((scheduler.getClock().nanoTime() - frameTime) / 1000);
+		}
+		long currentTime = System.nanoTime();
+		
+		processMode();
+		
+		if(this.addPattern) {
+			addPatternToList();
+			this.addPattern = false;
+		}
+		
+		if(recorded)
+			stats.getComputeTime().record((System.nanoTime() - currentTime) / 1000);
+		if(frameTime - lastUIUpdate > 1_000_000_000L) {
+			Histogram.Snapshot computeTimes = stats.getComputeTime().snapshot(10_000_000_000L);
+			System.out.printf("Calculating one complete picture took %.1fms (median), %.1fms (99th percentile), %.1fms (max) "
+					+ "in the last 10s (%d late and %d skipped frames so far).%n",
+					computeTimes.getPercentile(0.5) / 1000f, computeTimes.getPercentile(0.99) / 1000f, computeTimes.getMax() / 1000f,
+					scheduler.getLateFrames(), scheduler.getSkippedFrames());
+			lastUIUpdate = frameTime;
 		}
 	}
 
 	/**
-	 * Creates a new pattern and adds it to the patterns-list.<br>
+	 * Takes a pattern from the pool (or creates a new one) and adds it to the patterns-list.<br>
 	 * The type of pattern to be added is randomly chosen
 	 * and the chance for each type to be selected is weighted differently.
 	 */
 	private void addPatternToList() {
 		int patternGenerator = rand.nextInt(100);
 		if(patternGenerator < 45)
-			patterns.add(new DotPattern(meshSizeX, meshSizeY));
+			patterns.add(pool.acquireDot(false));
 		else if(patternGenerator < 80)
-			patterns.add(new WallPattern(meshSizeX, meshSizeY));
+			patterns.add(pool.acquireWall(false));
 		else
-			patterns.add(new WavePattern(meshSizeX, meshSizeY));
+			patterns.add(pool.acquireWave(false));
 		System.out.println("Added new Pattern.");
 	}
 
@@ -528,15 +738,12 @@ public class LEDCloud implements Runnable {
 	 * Plays the RainbowPattern for 5 seconds and then shuts off all LEDs.
 	 */
 	private void playIntro() {
-		long currentTime = System.currentTimeMillis();
-		while((System.currentTimeMillis() - currentTime) < 5000) {
-			coordinator.updateLedMesh(this.rainbowPattern.getNextPicture());
-			try {
-				Thread.sleep(50);
-			} catch (InterruptedException e) {}
+		long startTime = scheduler.resync();
+		while(scheduler.awaitNextFrame() - startTime < 5_000_000_000L) {
+			processRainbow();
 		}
 		System.out.println("Intro finished.");
-		this.setFixedColorMode(new Color(0, 0, 0));
+		this.setFixedColorMode(FrameBuffer.BLACK);
 	}
 
 	/**
@@ -547,7 +754,7 @@ public class LEDCloud implements Runnable {
 			switch(currentMode) {
 				case FIXEDCOLOR: setFixedColor();
 					break;
-				case RAINBOW: coordinator.updateLedMesh(this.rainbowPattern.getNextPicture());
+				case RAINBOW: processRainbow();
 					break;
 				case PATTERNS: processPatterns();
 					break;
@@ -556,14 +763,18 @@ public class LEDCloud implements Runnable {
 				case NOTIFICATION: playNotification();
 					break;
 				case ALARM: playAlarm();
+					// the alarm may have been waiting for a long time, so the deadlines start over
+					scheduler.resync();
+					break;
+				case STREAM: processStream();
+					// the frames were paced by the sender, so the deadlines start over
+					scheduler.resync();
 					break;
 			}
 		} else {
 			// If the Mode has not been set yet (i.e. after startup),
 			// or there is a fixed color being displayed, there is nothing to do, so there can be a long pause
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {}
+			scheduler.pause(1_000_000_000L);
 		}
 	}
 
@@ -7,5 +7,5 @@ package zyklone.LEDCloud;
  *
  */
 public enum ModeType {
-	FIXEDCOLOR, RAINBOW, PATTERNS, MUSIC, NOTIFICATION, ALARM;
+	FIXEDCOLOR, RAINBOW, PATTERNS, MUSIC, NOTIFICATION, ALARM, STREAM;
 }
@@ -1,6 +1,5 @@
 package zyklone.LEDCloud;
 
-import java.awt.Color;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
@@ -17,7 +16,9 @@ import com.github.mbelling.ws281x.jni.rpi_ws281xConstants;
 
 import zyklone.LEDCloud.mesh.FieldPosition;
 import zyklone.LEDCloud.mesh.LedMeshCoordinator;
+import zyklone.LEDCloud.output.Ws281xLedOutput;
 import zyklone.LEDCloud.patterns.*;
+import zyklone.LEDCloud.rendering.FrameBuffer;
 
 
 /**
@@ -91,43 +92,31 @@ public class Tester {
 		Ws281xLedStrip lightstrip = new Ws281xLedStrip(stripsize, 21, 800000, 10, 150, 0, false, rpi_ws281xConstants.WS2812_STRIP);
 		
 		// current picture-size = row 15, col 39
-		LedMeshCoordinator coordinator = new LedMeshCoordinator(order, lightstrip);
+		LedMeshCoordinator coordinator = new LedMeshCoordinator(order, new Ws281xLedOutput(lightstrip, stripsize), 39, 15);
 		
-		lightstrip.setStrip(100, 00, 00);
-		lightstrip.render();
+		coordinator.fillLedMesh(FrameBuffer.rgb(100, 00, 00));
 		try {
 			Thread.sleep(300);
 		} catch (InterruptedException e) {}
 		
-		lightstrip.setStrip(00, 100, 00);
-		lightstrip.render();
+		coordinator.fillLedMesh(FrameBuffer.rgb(00, 100, 00));
 		try {
 			Thread.sleep(300);
 		} catch (InterruptedException e) {}
 		
-		lightstrip.setStrip(00, 00, 100);
-		lightstrip.render();
+		coordinator.fillLedMesh(FrameBuffer.rgb(00, 00, 100));
 		try {
 			Thread.sleep(300);
 		} catch (InterruptedException e) {}
 		
-		lightstrip.setStrip(100, 100, 100);
-		lightstrip.render();
+		coordinator.fillLedMesh(FrameBuffer.rgb(100, 100, 100));
 		try {
 			Thread.sleep(300);
 		} catch (InterruptedException e) {}
 		
 		
-		ArrayList<ArrayList<Color>> picture = new ArrayList<>();
-		
 		// initialize dark picture
-		for(int i = 0; i < 15; i++) {
-			ArrayList<Color> row = new ArrayList<Color>();
-			picture.add(row);
-			for(int j = 0; j < 39; j++) {
-				row.add(new Color(0, 0, 0));
-			}
-		}
+		FrameBuffer picture = new FrameBuffer(39, 15);
 		coordinator.updateLedMesh(picture);
 		try {
 			Thread.sleep(100);
@@ -136,17 +125,17 @@ public class Tester {
 		//middle blue, ends red
 		for(int i = 0; i < 15; i++) {
 			for(int j = 0; j < 9; j++) {
-				picture.get(i).set(j, new Color(255, 0, 0));
+				picture.setPixel(j, i, FrameBuffer.rgb(255, 0, 0));
 			}
 		}
 		for(int i = 0; i < 15; i++) {
 			for(int j = 9; j < 30; j++) {
-				picture.get(i).set(j, new Color(0, 0, 255));
+				picture.setPixel(j, i, FrameBuffer.rgb(0, 0, 255));
 			}
 		}
 		for(int i = 0; i < 15; i++) {
 			for(int j = 30; j < 39; j++) {
-				picture.get(i).set(j, new Color(255, 0, 0));
+				picture.setPixel(j, i, FrameBuffer.rgb(255, 0, 0));
 			}
 		}
 		coordinator.updateLedMesh(picture);
@@ -158,7 +147,7 @@ public class Tester {
 //		for(int i = 0; i < 10; i++) {
 //			System.out.println("Drawing dot " + i);
 //			Pattern dot = new Pattern(39, 15, PatternType.DOT);
-//			ArrayList<ArrayList<Color>> picture2;
+//			FrameBuffer picture2;
 //			while((picture2 = dot.getNext()) != null) {
 //				System.out.println("Returned picture is not null");
 //				coordinator.updateLedMesh(picture2);
@@ -177,16 +166,10 @@ public class Tester {
 		boolean calcTime = false;
 		Long startTime = System.currentTimeMillis();
 		//Long baseUpdateTime = System.currentTimeMillis();
-		ArrayList<ArrayList<Color>> basePic = new ArrayList<>();
 		// initialize cloud picture
-		for(int i = 0; i < 15; i++) {
-			ArrayList<Color> row = new ArrayList<Color>();
-			basePic.add(row);
-			for(int j = 0; j < 39; j++) {
-//				row.add(new Color(6, 2, 20));
-				row.add(new Color(0, 0, 0));
-			}
-		}
+		FrameBuffer basePic = new FrameBuffer(39, 15);
+//		basePic.fill(FrameBuffer.rgb(6, 2, 20));
+		FrameBuffer comPic = new FrameBuffer(39, 15);
 		//while((System.currentTimeMillis() - time) < 120000) {
 		while(time > 1000) {
 			startTime = System.currentTimeMillis();
@@ -195,7 +178,6 @@ public class Tester {
 				calcTime = true;
 				time = System.currentTimeMillis();
 			}
-			ArrayList<ArrayList<Color>> comPic = new ArrayList<>();
 			if(rand.nextInt(60) == 0 || patterns.size() < 1) {
 			//if(rand.nextInt(500) == 0) {
 				switch(rand.nextInt(3)){
@@ -210,58 +192,33 @@ public class Tester {
 			}
 			// advance base picture
 //			if(System.currentTimeMillis() - baseUpdateTime > 200) {
-//				for(int y = 0; y < basePic.size(); y++) {
-//					for(int x = 0; x < basePic.get(0).size(); x++) {
-//						Color tempColor = basePic.get(y).get(x);
-//						int red = tempColor.getRed()+rand.nextInt(3)-1;
-//						int green = tempColor.getGreen()+rand.nextInt(3)-1;
-//						int blue = tempColor.getBlue()+rand.nextInt(5)-2;
+//				for(int y = 0; y < basePic.getHeight(); y++) {
+//					for(int x = 0; x < basePic.getWidth(); x++) {
+//						int tempColor = basePic.getPixel(x, y);
+//						int red = FrameBuffer.red(tempColor)+rand.nextInt(3)-1;
+//						int green = FrameBuffer.green(tempColor)+rand.nextInt(3)-1;
+//						int blue = FrameBuffer.blue(tempColor)+rand.nextInt(5)-2;
 //						red = red > 255 ? 255 : red;
 //						blue = blue > 255 ? 255 : blue;
 //						green = green > 255 ? 255 : green;
-//						basePic.get(y).set(x, new Color(red < 0 ? 0 : red, green < 0 ? 0 : green, blue < 0 ? 0 : blue));
+//						basePic.setPixel(x, y, FrameBuffer.rgb(red < 0 ? 0 : red, green < 0 ? 0 : green, blue < 0 ? 0 : blue));
 //					}
 //				}
 //				baseUpdateTime = System.currentTimeMillis();
 //			}
 			// get base picture to work with
-			for(int i = 0; i < basePic.size(); i++) {
-				ArrayList<Color> row = new ArrayList<Color>();
-				comPic.add(row);
-				for(int j = 0; j < basePic.get(0).size(); j++) {
-					row.add(basePic.get(i).get(j));
-				}
-			}
+			comPic.copyFrom(basePic);
 			// add up all patterns
 			for(Iterator<Pattern> it = patterns.iterator(); it.hasNext();) {
 				Pattern current = it.next();
-				ArrayList<ArrayList<Color>> tempPic = current.getNextPicture();
+				FrameBuffer tempPic = current.getNextPicture();
 				// if pattern has reached lifetime, remove it from list
 				if(tempPic == null) {
 					it.remove();
 					System.out.println("Pattern lifetime reached.");
 					continue;
 				}
-				for(int y = 0; y < comPic.size(); y++) {
-					for(int x = 0; x < comPic.get(0).size(); x++) {
-						Color tempColor = tempPic.get(y).get(x);
-						// only add pixel, if it is not dark
-						if(tempColor.getRed() != 0 || tempColor.getGreen() != 0 || tempColor.getBlue() != 0) {
-							Color comColor = comPic.get(y).get(x);
-							int red = comColor.getRed() + tempColor.getRed();
-							if(red > 255)
-								red = 255;
-							int green = comColor.getGreen() + tempColor.getGreen();
-							if(green > 255)
-								green = 255;
-							int blue = comColor.getBlue() + tempColor.getBlue();
-							if(blue > 255)
-								blue = 255;
-							comPic.get(y).set(x, new Color(red, green, blue));
-						}
-							
-					}
-				}
+				comPic.addSaturated(tempPic);
 			}
 			
 			// display complete picture
@@ -284,7 +241,7 @@ public class Tester {
 		while((System.currentTimeMillis() - time) < 20000) {
 			for(int i = 0; i < 15; i++) {
 				for(int j = 0; j < 39; j++) {
-					picture.get(i).set(j, new Color(j == progress ? 255 : 0, 0, 0));
+					picture.setPixel(j, i, FrameBuffer.rgb(j == progress ? 255 : 0, 0, 0));
 				}
 			}
 			coordinator.updateLedMesh(picture);
@@ -301,7 +258,8 @@ public class Tester {
 		for(int x = 0; x < 1500; x++) {
 			for(int i = 0; i < 15; i++) {
 				for(int j = 0; j < 39; j++) {
-					picture.get(i).set(j, new Color(picture.get(i).get(j).getRed() < 255 ? picture.get(i).get(j).getRed()+1 : 0, picture.get(i).get(j).getGreen() < 255 ? picture.get(i).get(j).getGreen()+1 : 0, picture.get(i).get(j).getBlue() < 255 ? picture.get(i).get(j).getBlue()+1 : 0));
+					int col = picture.getPixel(j, i);
+					picture.setPixel(j, i, FrameBuffer.rgb(FrameBuffer.red(col) < 255 ? FrameBuffer.red(col)+1 : 0, FrameBuffer.green(col) < 255 ? FrameBuffer.green(col)+1 : 0, FrameBuffer.blue(col) < 255 ? FrameBuffer.blue(col)+1 : 0));
 				}
 			}
 			coordinator.updateLedMesh(picture);
@@ -314,7 +272,7 @@ public class Tester {
 				Random rand2 = new Random();
 				for(int i = 0; i < 15; i++) {
 					for(int j = 0; j < 39; j++) {
-						picture.get(i).set(j, new Color(rand2.nextInt(255), rand2.nextInt(255), rand2.nextInt(255)));
+						picture.setPixel(j, i, FrameBuffer.rgb(rand2.nextInt(255), rand2.nextInt(255), rand2.nextInt(255)));
 					}
 				}
 				coordinator.updateLedMesh(picture);
@@ -0,0 +1,160 @@
+package zyklone.LEDCloud.mesh;
+
+/**
+ * Converts the colors of a picture into the colors that are actually sent to the LEDs.
+ * The conversion combines a gamma-correction, a global brightness and a gain for every channel (e.g. to correct the white balance).
+ * As all of these only depend on the value of a single channel, the conversion is precomputed into one table
+ * of 256 entries per channel upon instantiation, so converting a color costs one table lookup per channel.
+ * Instances are immutable, to change a setting a new instance has to be created.
+ * 
+ * @author Zyklone
+ */
+public class ColorCalibration {
+	
+	/** the calibration that leaves all colors unchanged */
+	public static final ColorCalibration IDENTITY = new ColorCalibration(1f, 1f, 1f, 1f, 1f);
+	
+	private final float gamma;
+	private final float brightness;
+	private final float redGain;
+	private final float greenGain;
+	private final float blueGain;
+	private final boolean identity;
+	/** the converted red channel, already shifted to its position in a packed color */
+	private final int[] red = new int[256];
+	/** the converted green channel, already shifted to its position in a packed color */
+	private final int[] green = new int[256];
+	/** the converted blue channel */
+	private final int[] blue = new int[256];
+	
+	/**
+	 * Creates the lookup tables.
+	 * @param gamma the exponent applied to every channel (1 for a linear output, around 2.2 to match the perceived brightness)
+	 * @param brightness the global brightness, within 0 and 1
+	 * @param redGain the factor for the red channel, within 0 and 1
+	 * @param greenGain the factor for the green channel, within 0 and 1
+	 * @param blueGain the factor for the blue channel, within 0 and 1
+	 * @throws IllegalArgumentException if a value lies outside of its range
+	 */
+	public ColorCalibration(float gamma, float brightness, float redGain, float greenGain, float blueGain) {
+		if(!(gamma > 0))
+			throw new IllegalArgumentException("The gamma value has to be positive.");
+		checkFactor("brightness", brightness);
+		checkFactor("red gain", redGain);
+		checkFactor("green gain", greenGain);
+		checkFactor("blue gain", blueGain);
+		this.gamma = gamma;
+		this.brightness = brightness;
+		this.redGain = redGain;
+		this.greenGain = greenGain;
+		this.blueGain = blueGain;
+		this.identity = gamma == 1f && brightness == 1f && redGain == 1f && greenGain == 1f && blueGain == 1f;
+		fillTable(red, brightness * redGain, 16);
+		fillTable(green, brightness * greenGain, 8);
+		fillTable(blue, brightness * blueGain, 0);
+	}
+	
+	private static void checkFactor(String name, float factor) {
+		if(!(factor >= 0 && factor <= 1))
+			throw new IllegalArgumentException("The " + name + " has to be within 0 and 1.");
+	}
+	
+	/**
+	 * Fills the table of one channel.
+	 * A lit channel is never turned off completely, unless its factor is 0,
+	 * so that dim colors (e.g. the background) do not vanish.
+	 * @param table the table to fill
+	 * @param factor the combined brightness and gain of the channel
+	 * @param shift the position of the channel inside a packed color
+	 */
+	private void fillTable(int[] table, float factor, int shift) {
+		for(int i = 0; i < 256; i++) {
+			int value = Math.round((float) Math.pow(i / 255.0, gamma) * 255 * factor);
+			if(value == 0 && i > 0 && factor > 0)
+				value = 1;
+			table[i] = Math.min(value, 255) << shift;
+		}
+	}
+	
+	/**
+	 * @param rgb the packed color (0xRRGGBB) of a pixel
+	 * @return the packed color that should be sent to the LED
+	 */
+	public int apply(int rgb) {
+		return red[(rgb >> 16) & 0xFF] | green[(rgb >> 8) & 0xFF] | blue[rgb & 0xFF];
+	}
+	
+	/**
+	 * @return true if this calibration leaves all colors unchanged
+	 */
+	public boolean isIdentity() {
+		return identity;
+	}
+	
+	/**
+	 * @param gamma the new gamma value
+	 * @return a new calibration with the passed gamma value and all other settings of this calibration
+	 */
+	public ColorCalibration withGamma(float gamma) {
+		return new ColorCalibration(gamma, brightness, redGain, greenGain, blueGain);
+	}
+	
+	/**
+	 * @param brightness the new brightness
+	 * @return a new calibration with the passed brightness and all other settings of this calibration
+	 */
+	public ColorCalibration withBrightness(float brightness) {
+		return new ColorCalibration(gamma, brightness, redGain, greenGain, blueGain);
+	}
+	
+	/**
+	 * @param redGain the new factor for the red channel
+	 * @param greenGain the new factor for the green channel
+	 * @param blueGain the new factor for the blue channel
+	 * @return a new calibration with the passed gains and all other settings of this calibration
+	 */
+	public ColorCalibration withGains(float redGain, float greenGain, float blueGain) {
+		return new ColorCalibration(gamma, brightness, redGain, greenGain, blueGain);
+	}
+	
+	/**
+	 * @return the exponent applied to every channel
+	 */
+	public float getGamma() {
+		return gamma;
+	}
+	
+	/**
+	 * @return the global brightness, within 0 and 1
+	 */
+	public float getBrightness() {
+		return brightness;
+	}
+	
+	/**
+	 * @return the factor for the red channel
+	 */
+	public float getRedGain() {
+		return redGain;
+	}
+	
+	/**
+	 * @return the factor for the green channel
+	 */
+	public float getGreenGain() {
+		return greenGain;
+	}
+	
+	/**
+	 * @return the factor for the blue channel
+	 */
+	public float getBlueGain() {
+		return blueGain;
+	}
+	
+	@Override
+	public String toString() {
+		return "gamma " + gamma + ", brightness " + brightness + ", gains " + redGain + "/" + greenGain + "/" + blueGain;
+	}
+
+}
@@ -0,0 +1,280 @@
+package zyklone.LEDCloud.mesh;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import zyklone.LEDCloud.metrics.Histogram;
+import zyklone.LEDCloud.rendering.FrameBuffer;
+
+/**
+ * Decouples the calculation of pictures from sending them to the LED-strip.
+ * The thread calculating the pictures (compute thread) submits every finished picture to the pipeline,
+ * which copies it into a back buffer and returns right away, while an output thread sends the
+ * most recent picture to the LedMeshCoordinator. This way the next picture can be calculated
+ * while the previous one is still being transferred to the LED-strip.
+ * The pipeline uses three buffers (triple buffering): the compute thread owns the back buffer,
+ * the output thread owns the front buffer, and the third buffer is exchanged between both threads
+ * with a single atomic operation, so neither thread ever waits for a lock.
+ * If the compute thread submits pictures faster than they can be displayed, only the most recent one is shown.
+ * If the pipeline is not threaded, every picture is sent to the coordinator directly by the submitting thread.
+ * Besides pictures, a buffer can hold a single color for all LEDs or colors given in the order of the LED-strip (e.g. from a pixel stream).
+ * The time needed to send every picture can be recorded in a histogram (see setOutputTimes()), as well as the time from receiving
+ * the first packet of a streamed frame until the frame was sent (see setStreamLatencies()).
+ *
+ * @author Zyklone
+ */
+public class FramePipeline {
+	
+	/** set in the exchanged index, if the buffer holds a picture that has not been displayed yet */
+	private static final int FRESH = 0x4;
+	private static final int INDEX_MASK = 0x3;
+	/** the kinds of content a buffer may hold */
+	private static final int PICTURE = 0;
+	private static final int FILL = 1;
+	private static final int STRIP = 2;
+	
+	private final LedMeshCoordinator coordinator;
+	private final boolean threaded;
+	private final Frame[] frames = new Frame[3];
+	private final AtomicInteger middle = new AtomicInteger(1);
+	private int back = 0;
+	private int front = 2;
+	private volatile boolean running = false;
+	private volatile Thread outputThread;
+	private volatile long submitted = 0;
+	private volatile long displayed = 0;
+	private volatile long dropped = 0;
+	/** the time needed to send a picture in microseconds, or null if it is not recorded */
+	private volatile Histogram outputTimes;
+	/** the time from receiving a streamed frame until it was sent in microseconds, or null if it is not recorded */
+	private volatile Histogram streamLatencies;
+	
+	/**
+	 * @param coordinator the coordinator the pictures are sent to
+	 * @param meshSizeX the length in the x-axis of the pictures that will be displayed
+	 * @param meshSizeY the length in the y-axis of the pictures that will be displayed
+	 * @param threaded true, if the pictures should be sent to the LED-strip by a separate output thread
+	 */
+	public FramePipeline(LedMeshCoordinator coordinator, int meshSizeX, int meshSizeY, boolean threaded) {
+		if(coordinator == null)
+			throw new IllegalArgumentException("The pipeline needs a coordinator to send the pictures to.");
+		this.coordinator = coordinator;
+		this.threaded = threaded;
+		for(int i = 0; i < frames.length; i++) {
+			frames[i] = new Frame(new FrameBuffer(meshSizeX, meshSizeY), new int[coordinator.getLedCount()]);
+		}
+	}
+	
+	/**
+	 * Starts the output thread, if the pipeline is threaded and not yet running.
+	 */
+	public synchronized void start() {
+		if(!threaded || running)
+			return;
+		running = true;
+		outputThread = new Thread(this::runOutput, "LED-Output");
+		outputThread.setDaemon(true);
+		outputThread.start();
+	}
+	
+	/**
+	 * Stops the output thread after the picture it is currently sending.
+	 * Pictures that have not been displayed yet are discarded.
+	 */
+	public synchronized void stop() {
+		if(!running)
+			return;
+		running = false;
+		LockSupport.unpark(outputThread);
+		try {
+			outputThread.join();
+		} catch (InterruptedException e) {}
+		outputThread = null;
+	}
+	
+	/**
+	 * Hands a picture over to be displayed. The picture is copied, so it may be changed right after this method returns.
+	 * @param picture the picture, which needs to have the mesh's size
+	 */
+	public void submit(FrameBuffer picture) {
+		if(!threaded) {
+			long start = System.nanoTime();
+			coordinator.updateLedMesh(picture);
+			recordOutputTime(start);
+			submitted++;
+			displayed++;
+			return;
+		}
+		Frame frame = frames[back];
+		frame.picture.copyFrom(picture);
+		frame.kind = PICTURE;
+		publish();
+	}
+	
+	/**
+	 * Hands a color over, to which all LEDs of the LED-strip should be set.
+	 * @param rgb the packed color (0xRRGGBB)
+	 */
+	public void submitFill(int rgb) {
+		if(!threaded) {
+			long start = System.nanoTime();
+			coordinator.fillLedMesh(rgb);
+			recordOutputTime(start);
+			submitted++;
+			displayed++;
+			return;
+		}
+		Frame frame = frames[back];
+		frame.kind = FILL;
+		frame.rgb = rgb;
+		publish();
+	}
+	
+	/**
+	 * Hands colors over that are given in the order of the LED-strip. The colors are copied,
+	 * so they may be changed right after this method returns.
+	 * @param leds the packed colors (0xRRGGBB) of the LEDs, one per LED displaying a pixel (see LedMeshCoordinator.getLedCount())
+	 * @param receivedNanos the time the first packet of the frame was received, as returned by System.nanoTime()
+	 */
+	public void submitStrip(int[] leds, long receivedNanos) {
+		if(!threaded) {
+			long start = System.nanoTime();
+			coordinator.updateLedStrip(leds);
+			recordOutputTime(start);
+			recordStreamLatency(receivedNanos);
+			submitted++;
+			displayed++;
+			return;
+		}
+		Frame frame = frames[back];
+		System.arraycopy(leds, 0, frame.leds, 0, frame.leds.length);
+		frame.kind = STRIP;
+		frame.receivedNanos = receivedNanos;
+		publish();
+	}
+	
+	/**
+	 * Exchanges the filled back buffer with the middle buffer and wakes up the output thread.
+	 */
+	private void publish() {
+		int old = middle.getAndSet(back | FRESH);
+		if((old & FRESH) != 0)
+			dropped++;
+		back = old & INDEX_MASK;
+		submitted++;
+		LockSupport.unpark(outputThread);
+	}
+	
+	/**
+	 * Waits for new pictures and sends them to the coordinator, until the pipeline is stopped.
+	 */
+	private void runOutput() {
+		while(running) {
+			if((middle.get() & FRESH) == 0) {
+				LockSupport.park(this);
+				continue;
+			}
+			front = middle.getAndSet(front) & INDEX_MASK;
+			Frame frame = frames[front];
+			long start = System.nanoTime();
+			switch(frame.kind) {
+				case FILL: coordinator.fillLedMesh(frame.rgb);
+					break;
+				case STRIP: coordinator.updateLedStrip(frame.leds);
+					break;
+				default: coordinator.updateLedMesh(frame.picture);
+					break;
+			}
+			recordOutputTime(start);
+			if(frame.kind == STRIP)
+				recordStreamLatency(frame.receivedNanos);
+			displayed++;
+		}
+	}
+	
+	/**
+	 * Records the time passed since the start of sending a picture, if the times are recorded.
+	 * @param start the time sending the picture started, as returned by System.nanoTime()
+	 */
+	private void recordOutputTime(long start) {
+		Histogram histogram = outputTimes;
+		if(histogram != null)
+			histogram.record((System.nanoTime() - start) / 1000);
+	}
+	
+	/**
+	 * Records the time passed since the first packet of a streamed frame was received, if the latencies are recorded.
+	 * @param receivedNanos the time the first packet of the frame was received, as returned by System.nanoTime()
+	 */
+	private void recordStreamLatency(long receivedNanos) {
+		Histogram histogram = streamLatencies;
+		if(histogram != null)
+			histogram.record((System.nanoTime() - receivedNanos) / 1000);
+	}
+	
+	/**
+	 * Sets the histogram the time needed to send every picture is recorded in, in microseconds.
+	 * The histogram is only recorded by one thread: the output thread, or the submitting thread if the pipeline is not threaded.
+	 * @param outputTimes the histogram, or null to stop recording the times
+	 */
+	public void setOutputTimes(Histogram outputTimes) {
+		this.outputTimes = outputTimes;
+	}
+	
+	/**
+	 * Sets the histogram the time from receiving the first packet of a streamed frame until the frame was sent
+	 * to the LED-strip is recorded in, in microseconds. It is recorded by the same thread as the output times.
+	 * @param streamLatencies the histogram, or null to stop recording the latencies
+	 */
+	public void setStreamLatencies(Histogram streamLatencies) {
+		this.streamLatencies = streamLatencies;
+	}
+	
+	/**
+	 * @return true, if the pictures are sent to the LED-strip by a separate output thread
+	 */
+	public boolean isThreaded() {
+		return threaded;
+	}
+	
+	/**
+	 * @return the number of pictures that were submitted
+	 */
+	public long getSubmitted() {
+		return submitted;
+	}
+	
+	/**
+	 * @return the number of pictures that were sent to the LED-strip
+	 */
+	public long getDisplayed() {
+		return displayed;
+	}
+	
+	/**
+	 * @return the number of pictures that were replaced by a newer picture before they could be displayed
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+	
+	/**
+	 * One of the three buffers, holding either a complete picture, a single color for all LEDs
+	 * or the colors of the LEDs in the order of the LED-strip.
+	 */
+	private static class Frame {
+		
+		private final FrameBuffer picture;
+		private final int[] leds;
+		private int kind;
+		private int rgb;
+		/** the time the first packet of a streamed frame was received */
+		private long receivedNanos;
+		
+		Frame(FrameBuffer picture, int[] leds) {
+			this.picture = picture;
+			this.leds = leds;
+		}
+	}
+
+}
@@ -1,54 +1,244 @@
 package zyklone.LEDCloud.mesh;
 
 
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.List;
-import java.awt.Color;
 
-import com.github.mbelling.ws281x.Ws281xLedStrip;
+import zyklone.LEDCloud.output.LedOutput;
+import zyklone.LEDCloud.rendering.FrameBuffer;
 
 /**
- * The LedMeshCoordinator is responsible for mapping every pixel in a picture (2 dimensional array)
- * to an led on an LED-strip and send the color-information to the strip in the correct order,
+ * The LedMeshCoordinator is responsible for mapping every pixel in a picture (FrameBuffer)
+ * to an led on an LED-strip and send the color-information to the strip (LedOutput) in the correct order,
  * so that the desired picture is displayed.
  * In order to achieve this, the LedMeshCoordinator needs information about the position of each pixel
- * in the 2-dimensional array, i.e. its coordinates.
+ * in the picture, i.e. its coordinates.
  * This information, in the form of a list of FieldPosition objects, is passed along upon instantiation.
  * The list needs to be ordered, so that the n-th element may represent the n-th LED on the LED-strip.
+ * Upon instantiation, the list is compiled into a lookup table holding the index of every LED's pixel
+ * inside the frame buffer's pixel-array, so that no position has to be checked while a picture is displayed.
+ * Every picture is written into the LedOutput's LED-buffer in one pass and then handed over as a whole.
+ * Before being sent, every color is converted by the coordinator's ColorCalibration (gamma, brightness and white balance),
+ * which can be replaced at any time.
+ * The coordinator keeps the colors it last sent to the LED-strip and compares every new picture with them in a single pass.
+ * Pictures that are identical to the last one are not sent at all. Otherwise only the LEDs whose color changed are written,
+ * and their indices are passed to the output (see LedOutput.showChanged()).
+ * Colors that arrive in the order of the LED-strip (e.g. from a pixel stream) are written into the next frame as they are,
+ * without being mapped into a picture and back (see updateLedStrip()).
  * 
  * @author Zyklone
  */
 public class LedMeshCoordinator {
 
-	private List<FieldPosition> order;
-	private Ws281xLedStrip ledstrip;
+	/** the n-th element holds the index of the n-th LED's pixel inside the frame buffer's pixel-array */
+	private final int[] ledToPixelOffset;
+	private final int meshSizeX;
+	private final int meshSizeY;
+	private LedOutput output;
+	private volatile ColorCalibration calibration = ColorCalibration.IDENTITY;
+	/** the colors that were last sent to the LED-strip, one per LED */
+	private final int[] lastFrame;
+	/** the colors of the frame that is being sent, one per LED */
+	private final int[] nextFrame;
+	/** the indices of the LEDs whose color changed */
+	private final int[] changed;
+	private boolean lastFrameValid = false;
+	private volatile long framesSent = 0;
+	private volatile long framesSkipped = 0;
+	private volatile long changedLeds = 0;
+	private volatile int lastChangedLeds = 0;
 	
-	public LedMeshCoordinator(List<FieldPosition> order, Ws281xLedStrip ledstrip) {
-		if(order == null || ledstrip == null) {
+	/**
+	 * Compiles the passed order-list into the coordinator's lookup table.
+	 * @param order the position of every LED in the picture, ordered like the LEDs on the LED-strip
+	 * @param output the LED-strip the pictures are sent to
+	 * @param meshSizeX the length in the x-axis of the pictures that will be displayed
+	 * @param meshSizeY the length in the y-axis of the pictures that will be displayed
+	 * @throws IllegalArgumentException if the order-list or the output is null,
+	 * if the order-list contains more LEDs than the output drives,
+	 * or if a position of the order-list lies outside of the picture
+	 */
+	public LedMeshCoordinator(List<FieldPosition> order, LedOutput output, int meshSizeX, int meshSizeY) {
+		if(order == null || output == null) {
 			System.err.println("MeshCoordinator will not provide meaningful output, if the order-Array is null!");
 			throw new IllegalArgumentException("MeshCoordinator will not provide meaningful output, if the order-Array is null!");
 		}
-		this.order = order;
-		this.ledstrip = ledstrip;
+		if(order.size() > output.getLedCount())
+			throw new IllegalArgumentException("The order-list contains " + order.size() + " LEDs, but the output only drives " + output.getLedCount() + ".");
+		this.meshSizeX = meshSizeX;
+		this.meshSizeY = meshSizeY;
+		this.ledToPixelOffset = compileOrder(order);
+		this.output = output;
+		this.lastFrame = new int[output.getLedCount()];
+		this.nextFrame = new int[output.getLedCount()];
+		this.changed = new int[output.getLedCount()];
 	}
 	
 	/**
-	 * Updates the LED-strip according to the passed 2-dimensional color-array (referred to as picture)
-	 * and the order-list of the instance of this class.
-	 * @param picture the passed 2-dimensional color-array
-	 * @return the number of updated LEDs / set pixels, which should correspond to the number of elements in the order-list.
+	 * Converts the position of every LED into the index of its pixel inside a frame buffer of the mesh's size.
+	 * @param order the position of every LED in the picture, ordered like the LEDs on the LED-strip
+	 * @return the lookup table
+	 * @throws IllegalArgumentException if a position lies outside of the picture
 	 */
-	public long updateLedMesh(List<? extends List<Color>> picture) {
-		long updatedLeds = 0;
-		for(int i = 0; i < order.size(); i++) {
+	private int[] compileOrder(List<FieldPosition> order) {
+		int[] offsets = new int[order.size()];
+		for(int i = 0; i < offsets.length; i++) {
 			FieldPosition fieldPos = order.get(i);
-			if(picture.size() > fieldPos.getRow() && picture.get(fieldPos.getRow()).size() > fieldPos.getColumn()) {
-				Color col = picture.get(fieldPos.getRow()).get(fieldPos.getColumn());
-				ledstrip.setPixel(i, col.getRed(), col.getGreen(), col.getBlue());
-				updatedLeds++;
+			if(fieldPos.getRow() < 0 || fieldPos.getRow() >= meshSizeY || fieldPos.getColumn() < 0 || fieldPos.getColumn() >= meshSizeX)
+				throw new IllegalArgumentException("The position [" + fieldPos.getRow() + ", " + fieldPos.getColumn() + "] of LED " + i
+						+ " lies outside of the " + meshSizeX + "x" + meshSizeY + " mesh.");
+			offsets[i] = fieldPos.getRow() * meshSizeX + fieldPos.getColumn();
+		}
+		return offsets;
+	}
+	
+	/**
+	 * Updates the LED-strip according to the passed frame buffer (referred to as picture)
+	 * and the lookup table of the instance of this class.
+	 * If no LED changed since the last picture, nothing is sent.
+	 * @param picture the passed frame buffer, which needs to have the mesh's size
+	 * @return the number of LEDs whose color changed
+	 * @throws IllegalArgumentException if the picture's dimensions do not match the mesh's size
+	 */
+	public int updateLedMesh(FrameBuffer picture) {
+		if(picture.getWidth() != meshSizeX || picture.getHeight() != meshSizeY || picture.getStride() != meshSizeX)
+			throw new IllegalArgumentException("The picture's dimensions do not match the mesh's size of " + meshSizeX + "x" + meshSizeY + ".");
+		int[] pixels = picture.getPixels();
+		int[] offsets = this.ledToPixelOffset;
+		ColorCalibration cal = this.calibration;
+		if(cal.isIdentity()) {
+			for(int i = 0; i < offsets.length; i++) {
+				nextFrame[i] = pixels[offsets[i]];
+			}
+		} else {
+			for(int i = 0; i < offsets.length; i++) {
+				nextFrame[i] = cal.apply(pixels[offsets[i]]);
 			}
 		}
-		ledstrip.render();
-		return updatedLeds;
+		return send(offsets.length);
+	}
+	
+	/**
+	 * Updates the LED-strip with colors given in the order of the LED-strip (e.g. from a pixel stream),
+	 * which are written into the next frame as they are, without looking up any pixel.
+	 * If no LED changed since the last frame, nothing is sent.
+	 * @param leds the packed colors (0xRRGGBB) of the LEDs, starting with the first LED of the strip
+	 * @return the number of LEDs whose color changed
+	 * @throws IllegalArgumentException if fewer colors than LEDs displaying a pixel are passed (see getLedCount())
+	 */
+	public int updateLedStrip(int[] leds) {
+		int count = ledToPixelOffset.length;
+		if(leds.length < count)
+			throw new IllegalArgumentException("The colors of " + leds.length + " LEDs were passed, but " + count + " LEDs display a pixel.");
+		ColorCalibration cal = this.calibration;
+		if(cal.isIdentity()) {
+			System.arraycopy(leds, 0, nextFrame, 0, count);
+		} else {
+			for(int i = 0; i < count; i++) {
+				nextFrame[i] = cal.apply(leds[i]);
+			}
+		}
+		return send(count);
+	}
+	
+	/**
+	 * @return the number of LEDs that display a pixel of the pictures
+	 */
+	public int getLedCount() {
+		return ledToPixelOffset.length;
+	}
+	
+	/**
+	 * Sets all LEDs of the LED-strip to the same color.
+	 * If all LEDs already have that color, nothing is sent.
+	 * @param rgb the packed color (0xRRGGBB)
+	 * @return the number of LEDs whose color changed
+	 */
+	public int fillLedMesh(int rgb) {
+		Arrays.fill(nextFrame, calibration.apply(rgb));
+		return send(nextFrame.length);
+	}
+	
+	/**
+	 * Compares the first LEDs of the next frame with the last frame
+	 * and sends the LEDs whose color changed to the LED-strip.
+	 * @param count the number of LEDs set in the next frame
+	 * @return the number of LEDs whose color changed
+	 */
+	private int send(int count) {
+		IntBuffer leds = output.getLedBuffer();
+		int changedCount = 0;
+		for(int i = 0; i < count; i++) {
+			// the first frame is sent completely, as the state of the LED-strip is unknown
+			if(nextFrame[i] != lastFrame[i] || !lastFrameValid) {
+				lastFrame[i] = nextFrame[i];
+				leds.put(i, nextFrame[i]);
+				changed[changedCount++] = i;
+			}
+		}
+		lastFrameValid = true;
+		lastChangedLeds = changedCount;
+		if(changedCount == 0) {
+			framesSkipped++;
+			return 0;
+		}
+		output.showChanged(changed, changedCount);
+		framesSent++;
+		changedLeds += changedCount;
+		return changedCount;
+	}
+	
+	/**
+	 * @return the output the colors of the LEDs are sent to
+	 */
+	public LedOutput getOutput() {
+		return output;
+	}
+	
+	/**
+	 * @return the calibration applied to all colors before they are sent to the LED-strip
+	 */
+	public ColorCalibration getCalibration() {
+		return calibration;
+	}
+	
+	/**
+	 * Replaces the calibration. It is applied starting with the next frame.
+	 * @param calibration the calibration applied to all colors before they are sent to the LED-strip
+	 */
+	public void setCalibration(ColorCalibration calibration) {
+		if(calibration == null)
+			throw new IllegalArgumentException("The calibration must not be null.");
+		this.calibration = calibration;
+	}
+	
+	/**
+	 * @return the number of frames that were sent to the LED-strip
+	 */
+	public long getFramesSent() {
+		return framesSent;
+	}
+	
+	/**
+	 * @return the number of frames that were not sent, as they were identical to the last frame
+	 */
+	public long getFramesSkipped() {
+		return framesSkipped;
+	}
+	
+	/**
+	 * @return the total number of LEDs whose color changed, summed up over all frames
+	 */
+	public long getChangedLeds() {
+		return changedLeds;
+	}
+	
+	/**
+	 * @return the number of LEDs whose color changed with the last frame
+	 */
+	public int getLastChangedLeds() {
+		return lastChangedLeds;
 	}
 	
 
@@ -0,0 +1,101 @@
+package zyklone.LEDCloud.metrics;
+
+import zyklone.LEDCloud.rendering.FrameClock;
+
+/**
+ * Keeps the histograms describing how the cloud's frames are calculated and displayed:
+ * the time needed to calculate a frame, the time needed to send a frame to the LED-strip,
+ * the time a frame started after its deadline (the overshoot of waiting for the deadline)
+ * the number of patterns drawn into a frame and the time from receiving the first packet of a streamed frame
+ * until it was sent to the LED-strip.
+ * All times are recorded in microseconds.
+ * The histograms can be printed in the plain-text format used by Prometheus (see format()),
+ * with the median, the 99th percentile and the maximum of the last 10 seconds and the last minute.
+ *
+ * @author Zyklone
+ */
+public class FrameStats {
+	
+	/** the windows the percentiles are printed for, in seconds */
+	private static final int[] WINDOWS = {10, 60};
+	
+	private final Histogram computeTime;
+	private final Histogram outputTime;
+	private final Histogram sleepOvershoot;
+	private final Histogram patternCount;
+	private final Histogram streamLatency;
+	
+	/**
+	 * @param clock the clock that decides which slot of the histograms a value is counted in
+	 */
+	public FrameStats(FrameClock clock) {
+		this.computeTime = new Histogram(clock);
+		this.outputTime = new Histogram(clock);
+		this.sleepOvershoot = new Histogram(clock);
+		this.patternCount = new Histogram(clock);
+		this.streamLatency = new Histogram(clock);
+	}
+	
+	/**
+	 * @return the time needed to calculate a frame, in microseconds. Recorded by the thread calculating the frames.
+	 */
+	public Histogram getComputeTime() {
+		return computeTime;
+	}
+	
+	/**
+	 * @return the time needed to send a frame to the LED-strip, in microseconds. Recorded by the thread sending the frames.
+	 */
+	public Histogram getOutputTime() {
+		return outputTime;
+	}
+	
+	/**
+	 * @return the time a frame started after its deadline, in microseconds. Recorded by the thread calculating the frames.
+	 */
+	public Histogram getSleepOvershoot() {
+		return sleepOvershoot;
+	}
+	
+	/**
+	 * @return the number of patterns drawn into a frame. Recorded by the thread calculating the frames.
+	 */
+	public Histogram getPatternCount() {
+		return patternCount;
+	}
+	
+	/**
+	 * @return the time from receiving the first packet of a streamed frame until the frame was sent to the LED-strip,
+	 * in microseconds. Recorded by the thread sending the frames.
+	 */
+	public Histogram getStreamLatency() {
+		return streamLatency;
+	}
+	
+	/**
+	 * @return all histograms in the plain-text format used by Prometheus, one quantile per line
+	 */
+	public String format() {
+		StringBuilder builder = new StringBuilder();
+		append(builder, "ledcloud_compute_time_us", "Time needed to calculate a frame in microseconds.", computeTime);
+		append(builder, "ledcloud_output_time_us", "Time needed to send a frame to the LED-strip in microseconds.", outputTime);
+		append(builder, "ledcloud_sleep_overshoot_us", "Time a frame started after its deadline in microseconds.", sleepOvershoot);
+		append(builder, "ledcloud_pattern_count", "Number of patterns drawn into a frame.", patternCount);
+		append(builder, "ledcloud_stream_latency_us", "Time from receiving the first packet of a streamed frame until it was sent to the LED-strip in microseconds.", streamLatency);
+		return builder.toString();
+	}
+	
+	private void append(StringBuilder builder, String name, String help, Histogram histogram) {
+		builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		builder.append("# TYPE ").append(name).append(" summary\n");
+		for(int window : WINDOWS) {
+			Histogram.Snapshot snapshot = histogram.snapshot(window * 1_000_000_000L);
+			String label = "window=\"" + window + "s\"";
+			builder.append(name).append('{').append(label).append(",quantile=\"0.5\"} ").append(snapshot.getPercentile(0.5)).append('\n');
+			builder.append(name).append('{').append(label).append(",quantile=\"0.99\"} ").append(snapshot.getPercentile(0.99)).append('\n');
+			builder.append(name).append('{').append(label).append(",quantile=\"1\"} ").append(snapshot.getMax()).append('\n');
+			builder.append(name).append("_count{").append(label).append("} ").append(snapshot.getCount()).append('\n');
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+package zyklone.LEDCloud.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import zyklone.LEDCloud.rendering.FrameClock;
+
+/**
+ * Counts recorded values (e.g. times in microseconds) in fixed buckets, so that percentiles can be read at any time.
+ * Values below 16 have a bucket of their own, bigger values share a bucket with values
+ * that differ by less than 1/8, so percentiles are off by at most 12.5%. Values of 2^31 and above share the last bucket.
+ * The counts are kept in slots of 5 seconds (by the passed clock), of which the last 12 are kept,
+ * so the values of any window of up to a minute can be read (see snapshot()).
+ * As the current slot is not complete yet, a window covers between its length minus 5 seconds and its length.
+ * Recording a value does not allocate any memory and does not lock. Only one thread may record values at a time,
+ * but any thread may read snapshots concurrently.
+ *
+ * @author Zyklone
+ */
+public class Histogram {
+	
+	/** the time covered by one slot */
+	public static final long SLOT_NANOS = 5_000_000_000L;
+	/** the number of slots that are kept */
+	public static final int SLOTS = 12;
+	/** values below this have a bucket of their own */
+	private static final int LINEAR = 16;
+	/** the number of buckets every power of two above LINEAR is split into, as bits */
+	private static final int SUB_BITS = 3;
+	/** the exponent of the highest power of two that is split into buckets */
+	private static final int MAX_EXPONENT = 30;
+	/** the split buckets of the exponents 4 to MAX_EXPONENT, followed by the bucket of all values of 2^(MAX_EXPONENT+1) and above */
+	static final int BUCKETS = LINEAR + (MAX_EXPONENT - 3) * (1 << SUB_BITS) + 1;
+	
+	private final FrameClock clock;
+	/** the counts of all buckets of all slots, one slot after another */
+	private final AtomicLongArray counts = new AtomicLongArray(SLOTS * BUCKETS);
+	private final AtomicLongArray maxima = new AtomicLongArray(SLOTS);
+	/** the number of the 5 seconds (time / SLOT_NANOS) every slot's counts belong to */
+	private final AtomicLongArray epochs = new AtomicLongArray(SLOTS);
+	
+	/**
+	 * @param clock the clock that decides which slot a value is counted in
+	 */
+	public Histogram(FrameClock clock) {
+		this.clock = clock;
+		for(int slot = 0; slot < SLOTS; slot++) {
+			epochs.set(slot, Long.MIN_VALUE);
+		}
+	}
+	
+	/**
+	 * @param value a value that is not negative
+	 * @return the index of the bucket the value is counted in
+	 */
+	static int bucket(long value) {
+		if(value < LINEAR)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if(exponent > MAX_EXPONENT)
+			return BUCKETS - 1;
+		return LINEAR + ((exponent - 4) << SUB_BITS) + (int) ((value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1));
+	}
+	
+	/**
+	 * @param bucket the index of a bucket
+	 * @return the biggest value counted in the bucket
+	 */
+	static long upperBound(int bucket) {
+		if(bucket < LINEAR)
+			return bucket;
+		if(bucket == BUCKETS - 1)
+			return Long.MAX_VALUE;
+		int exponent = ((bucket - LINEAR) >> SUB_BITS) + 4;
+		long sub = (bucket - LINEAR) & ((1 << SUB_BITS) - 1);
+		return (1L << exponent) + ((sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+	
+	/**
+	 * Counts a value in the current slot. Negative values are counted as 0.
+	 * @param value the value to count
+	 */
+	public void record(long value) {
+		if(value < 0)
+			value = 0;
+		long epoch = Math.floorDiv(clock.nanoTime(), SLOT_NANOS);
+		int slot = Math.floorMod(epoch, SLOTS);
+		if(epochs.get(slot) != epoch) {
+			// the slot still holds the counts of a minute ago
+			for(int i = slot * BUCKETS; i < (slot + 1) * BUCKETS; i++) {
+				counts.set(i, 0);
+			}
+			maxima.set(slot, 0);
+			epochs.set(slot, epoch);
+		}
+		counts.incrementAndGet(slot * BUCKETS + bucket(value));
+		if(value > maxima.get(slot))
+			maxima.set(slot, value);
+	}
+	
+	/**
+	 * Adds up the counts of all slots within the passed window.
+	 * @param windowNanos the length of the window, which is rounded up to whole slots and capped at a minute
+	 * @return the counts of the window
+	 */
+	public Snapshot snapshot(long windowNanos) {
+		int windowSlots = (int) Math.max(1, Math.min(SLOTS, (windowNanos + SLOT_NANOS - 1) / SLOT_NANOS));
+		long epoch = Math.floorDiv(clock.nanoTime(), SLOT_NANOS);
+		long[] sums = new long[BUCKETS];
+		long max = 0;
+		for(int slot = 0; slot < SLOTS; slot++) {
+			long age = epoch - epochs.get(slot);
+			if(age < 0 || age >= windowSlots)
+				continue;
+			for(int bucket = 0; bucket < BUCKETS; bucket++) {
+				sums[bucket] += counts.get(slot * BUCKETS + bucket);
+			}
+			max = Math.max(max, maxima.get(slot));
+		}
+		return new Snapshot(sums, max);
+	}
+	
+	/**
+	 * The counts of a histogram within a window, which do not change anymore.
+	 */
+	public static class Snapshot {
+	
+		private final long[] counts;
+		private final long count;
+		private final long max;
+	
+		Snapshot(long[] counts, long max) {
+			this.counts = counts;
+			long count = 0;
+			for(long bucketCount : counts) {
+				count += bucketCount;
+			}
+			this.count = count;
+			this.max = max;
+		}
+	
+		/**
+		 * @return the number of values counted within the window
+		 */
+		public long getCount() {
+			return count;
+		}
+	
+		/**
+		 * @return the biggest value counted within the window, or 0 if no value was counted
+		 */
+		public long getMax() {
+			return max;
+		}
+	
+		/**
+		 * @param quantile the share of values that should be smaller than or equal to the result, within 0 and 1
+		 * @return the upper bound of the bucket holding the quantile (at most the biggest value), or 0 if no value was counted
+		 */
+		public long getPercentile(double quantile) {
+			long rank = Math.max(1, (long) Math.ceil(quantile * count));
+			long seen = 0;
+			for(int bucket = 0; bucket < counts.length; bucket++) {
+				seen += counts[bucket];
+				if(seen >= rank)
+					return Math.min(upperBound(bucket), max);
+			}
+			return 0;
+		}
+	}
+
+}
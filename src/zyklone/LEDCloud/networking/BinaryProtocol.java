@@ -0,0 +1,154 @@
+package zyklone.LEDCloud.networking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the compact binary commands, which controllers sending many commands per second can use instead of json.
+ * A binary connection starts with the magic byte 0xC1 (which can not start a json-message, as it never appears in UTF-8)
+ * and the version of the protocol. The server answers with the magic byte and the version it speaks;
+ * if the versions differ, the connection is closed afterwards.
+ * Then the client sends any number of frames, all numbers in network byte order (big-endian):
+ * <pre>
+ * opcode (1 byte) | flags (1 byte, bit 0: acknowledge) | id (2 bytes) | arguments (fixed length, depending on the opcode)
+ *
+ * 0x01 fixed-color   red, green, blue (1 byte each)
+ * 0x02 rainbow       -
+ * 0x03 patterns      -
+ * 0x04 add-pattern   -
+ * 0x05 music         -
+ * 0x06 notification  red, green, blue (1 byte each)
+ * 0x07 alarm         hour, minute, second (1 byte each)
+ * 0x08 calibration   gamma * 100 (2 bytes), brightness, red-gain, green-gain, blue-gain (1 byte each)
+ * 0x09 stats         -
+ * 0x0A pixel-stream  -
+ * </pre>
+ * Frames that should be acknowledged, frames with a reply and frames that could not be decoded are answered with
+ * <pre>
+ * opcode (1 byte) | status (1 byte, 0: ok, 1: unknown opcode) | id (2 bytes) | length (2 bytes) | reply (UTF-8)
+ * </pre>
+ * As the length of a frame with an unknown opcode is unknown, the connection is closed after answering it.
+ * Palettes can only be defined and chosen with json-commands.
+ * A frame is decoded into the same Command as a json-command, so both reach the LEDCloud the same way.
+ * Decoding does not allocate any memory.
+ *
+ * @author Zyklone
+ */
+class BinaryProtocol {
+	
+	/** the first byte of a binary connection */
+	static final int MAGIC = 0xC1;
+	/** the version of the protocol this server speaks */
+	static final int VERSION = 1;
+	/** the length of a frame's opcode, flags and id */
+	static final int HEADER_LENGTH = 4;
+	/** the length of an acknowledgement without its reply */
+	static final int ACK_LENGTH = 6;
+	/** the flag requesting an acknowledgement */
+	static final int FLAG_ACK = 1;
+	static final byte STATUS_OK = 0;
+	static final byte STATUS_UNKNOWN_OPCODE = 1;
+	
+	/** the commands in the order of their opcodes, starting with opcode 1 */
+	private static final Command.Type[] TYPES = {Command.Type.FIXED_COLOR, Command.Type.RAINBOW, Command.Type.PATTERNS,
+			Command.Type.ADD_PATTERN, Command.Type.MUSIC, Command.Type.NOTIFICATION, Command.Type.ALARM,
+			Command.Type.CALIBRATION, Command.Type.STATS, Command.Type.PIXEL_STREAM};
+	/** the length of the arguments of every opcode, starting with opcode 1 */
+	private static final int[] ARGUMENT_LENGTHS = {3, 0, 0, 0, 0, 3, 3, 6, 0, 0};
+	
+	/** the opcode of the last decoded frame */
+	private int opcode;
+	
+	/**
+	 * Decodes the frame at the beginning of the passed bytes into the passed command.
+	 * The buffer's position and limit are not changed.
+	 * @param buffer the received bytes
+	 * @param from the index of the first byte of the frame
+	 * @param to the index after the last received byte
+	 * @param command the command the frame is decoded into, all fields of the last command are cleared
+	 * @return the length of the decoded frame, 0 if the frame is not complete yet, or -1 if its opcode is unknown
+	 */
+	int decode(ByteBuffer buffer, int from, int to, Command command) {
+		if(to - from < HEADER_LENGTH)
+			return 0;
+		int opcode = buffer.get(from) & 0xFF;
+		boolean known = opcode >= 1 && opcode <= TYPES.length;
+		int length = known ? HEADER_LENGTH + ARGUMENT_LENGTHS[opcode - 1] : HEADER_LENGTH;
+		if(to - from < length)
+			return 0;
+		this.opcode = opcode;
+		command.clear();
+		command.id[0] = buffer.get(from + 2);
+		command.id[1] = buffer.get(from + 3);
+		command.idLength = 2;
+		if(!known)
+			return -1;
+		command.type = TYPES[opcode - 1];
+		command.fields = Command.COMMAND | Command.ID;
+		command.ack = (buffer.get(from + 1) & FLAG_ACK) != 0;
+		if(command.ack)
+			command.fields |= Command.ACK;
+		int p = from + HEADER_LENGTH;
+		switch(command.type) {
+			case FIXED_COLOR:
+			case NOTIFICATION:
+				command.red = buffer.get(p) & 0xFF;
+				command.green = buffer.get(p + 1) & 0xFF;
+				command.blue = buffer.get(p + 2) & 0xFF;
+				command.fields |= Command.RED | Command.GREEN | Command.BLUE;
+				break;
+			case ALARM:
+				// the time is handed on as text (HH:MM:SS), so it is checked the same way as a json-alarm
+				appendTwoDigits(command.time, buffer.get(p) & 0xFF).append(':');
+				appendTwoDigits(command.time, buffer.get(p + 1) & 0xFF).append(':');
+				appendTwoDigits(command.time, buffer.get(p + 2) & 0xFF);
+				command.fields |= Command.TIME;
+				break;
+			case CALIBRATION:
+				command.gamma = (((buffer.get(p) & 0xFF) << 8) | (buffer.get(p + 1) & 0xFF)) / 100f;
+				command.brightness = buffer.get(p + 2) & 0xFF;
+				command.redGain = buffer.get(p + 3) & 0xFF;
+				command.greenGain = buffer.get(p + 4) & 0xFF;
+				command.blueGain = buffer.get(p + 5) & 0xFF;
+				command.fields |= Command.GAMMA | Command.BRIGHTNESS | Command.RED_GAIN | Command.GREEN_GAIN | Command.BLUE_GAIN;
+				break;
+			default:
+				break;
+		}
+		return length;
+	}
+	
+	/**
+	 * @return the opcode of the last decoded frame, even if it was unknown
+	 */
+	int getOpcode() {
+		return opcode;
+	}
+	
+	/**
+	 * @param text the text to append to
+	 * @param value the number to append, numbers below 10 are padded with a zero
+	 * @return the passed text
+	 */
+	private static StringBuilder appendTwoDigits(StringBuilder text, int value) {
+		if(value < 10)
+			text.append('0');
+		return text.append(value);
+	}
+	
+	/**
+	 * Writes the header of the acknowledgement of the last decoded frame into the passed array.
+	 * @param ack the array the header is written into, at least ACK_LENGTH bytes long
+	 * @param status the status of the acknowledged frame
+	 * @param command the command the frame was decoded into, whose id is repeated
+	 * @param replyLength the length of the reply following the header
+	 */
+	void writeAck(byte[] ack, byte status, Command command, int replyLength) {
+		ack[0] = (byte) opcode;
+		ack[1] = status;
+		ack[2] = command.id[0];
+		ack[3] = command.id[1];
+		ack[4] = (byte) (replyLength >> 8);
+		ack[5] = (byte) replyLength;
+	}
+
+}
@@ -0,0 +1,395 @@
+package zyklone.LEDCloud.networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The state of one client connected to the Server: its channel, the bytes received so far and the replies that are being sent.
+ * A connection starts out carrying a single message, which is complete as soon as it contains a whole json-object
+ * (i.e. its braces outside of strings are balanced again), when the client closes its side of the connection,
+ * or when the read buffer is full. As the bytes are scanned while they arrive, a message may be split into any number of reads.
+ * A streaming connection (see startStreaming()) instead carries any number of messages, one per line.
+ * Lines that do not fit into the read buffer are dropped.
+ * A binary connection (see startBinary()) is kept open as well and carries any number of frames of the BinaryProtocol.
+ * The messages are parsed straight from the read buffer (see CommandParser), without converting them into Strings.
+ * Every connection is only used by the server's selector thread.
+ *
+ * @author Zyklone
+ */
+class ClientConnection {
+	
+	/** the maximum length of a message in bytes, longer messages are cut off (or dropped, if streaming) */
+	static final int BUFFER_SIZE = 4096;
+	/** the maximum number of bytes waiting to be sent, before the client is considered too slow to read its replies */
+	static final int MAX_PENDING_OUTPUT = 65536;
+	
+	private final SocketChannel channel;
+	private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+	/** the replies that have not been sent yet, in write mode */
+	private ByteBuffer output = ByteBuffer.allocate(1024);
+	/** the time of the last read or write, as returned by System.nanoTime() */
+	private long lastActivity;
+	/** the number of bytes of the input that have been scanned for braces or line breaks */
+	private int scanned = 0;
+	private int depth = 0;
+	/** true, while the scanned bytes are inside of a json-string */
+	private boolean inString = false;
+	/** true, if the last scanned byte escapes the next one */
+	private boolean escaped = false;
+	/** the length of the complete json-object at the beginning of the input, or -1 if it is not complete yet */
+	private int end = -1;
+	/** the index of the line break ending the next line, or -1 if no complete line was received yet */
+	private int lineBreak = -1;
+	private boolean streaming = false;
+	private boolean acking = false;
+	private boolean binary = false;
+	/** true, while the rest of a line that did not fit into the read buffer is dropped */
+	private boolean dropping = false;
+	private boolean closeWhenSent = false;
+	
+	/**
+	 * @param channel the non-blocking channel of the client
+	 * @param now the time the connection was accepted, as returned by System.nanoTime()
+	 */
+	ClientConnection(SocketChannel channel, long now) {
+		this.channel = channel;
+		this.lastActivity = now;
+	}
+	
+	/**
+	 * Reads the bytes the client sent, as far as they fit into the read buffer.
+	 * @param now the current time, as returned by System.nanoTime()
+	 * @return the number of bytes read, or -1 if the client closed its side of the connection
+	 * @throws IOException if the channel could not be read
+	 */
+	int read(long now) throws IOException {
+		int read = channel.read(input);
+		if(read > 0)
+			lastActivity = now;
+		return read;
+	}
+	
+	/**
+	 * Sends as much of the pending replies as the channel accepts without blocking.
+	 * @param now the current time, as returned by System.nanoTime()
+	 * @throws IOException if the channel could not be written
+	 */
+	void write(long now) throws IOException {
+		output.flip();
+		if(channel.write(output) > 0)
+			lastActivity = now;
+		output.compact();
+	}
+	
+	/**
+	 * @param now the current time, as returned by System.nanoTime()
+	 * @param timeoutNanos the time a client may stay silent
+	 * @return true, if there was no read or write within the passed time
+	 */
+	boolean isIdle(long now, long timeoutNanos) {
+		return now - lastActivity > timeoutNanos;
+	}
+	
+	/**
+	 * Scans the bytes that were read since the last call for the end of a json-object.
+	 * @return true, if the input holds a complete json-object or the input buffer is full
+	 */
+	boolean hasCompleteMessage() {
+		for(; scanned < input.position() && end < 0; scanned++) {
+			byte b = input.get(scanned);
+			if(inString) {
+				if(escaped)
+					escaped = false;
+				else if(b == '\\')
+					escaped = true;
+				else if(b == '"')
+					inString = false;
+			} else if(b == '"' && depth > 0) {
+				inString = true;
+			} else if(b == '{') {
+				depth++;
+			} else if(b == '}' && depth > 0) {
+				depth--;
+				if(depth == 0)
+					end = scanned + 1;
+			}
+		}
+		return end >= 0 || !input.hasRemaining();
+	}
+	
+	/**
+	 * @return true, if no bytes are waiting to be processed
+	 */
+	boolean isEmpty() {
+		return input.position() == 0;
+	}
+	
+	/**
+	 * @param index the index of a received byte
+	 * @return the byte (within 0 and 255), or -1 if it was not received yet
+	 */
+	int peek(int index) {
+		return index < input.position() ? input.get(index) & 0xFF : -1;
+	}
+	
+	/**
+	 * @return the complete json-object (or, if there is none, all received bytes), without leading and trailing whitespace
+	 */
+	String getMessage() {
+		return new String(input.array(), 0, messageLength(), StandardCharsets.UTF_8).trim();
+	}
+	
+	/**
+	 * @return the length of the complete json-object, or the number of received bytes, if there is none
+	 */
+	private int messageLength() {
+		return end >= 0 ? end : input.position();
+	}
+	
+	/**
+	 * Parses the complete json-object (or, if there is none, all received bytes) into the passed command
+	 * and removes it from the input. Bytes received after the json-object are kept.
+	 * @param parser the parser extracting the command's fields
+	 * @param command the command the fields are written into
+	 * @return true, if the message contained a valid json-object
+	 */
+	boolean parseMessage(CommandParser parser, Command command) {
+		int length = messageLength();
+		boolean valid = parser.parse(input, 0, length, command);
+		remove(length);
+		end = -1;
+		depth = 0;
+		inString = false;
+		escaped = false;
+		return valid;
+	}
+	
+	/**
+	 * Looks for the next line that is not blank. While streaming, messages are separated by line breaks.
+	 * If the input buffer is full without containing a line break, the line is dropped up to its next line break.
+	 * @return true, if a complete line was received, which can be parsed by parseLine()
+	 */
+	boolean hasNextLine() {
+		while(true) {
+			if(lineBreak >= 0)
+				return true;
+			for(; scanned < input.position(); scanned++) {
+				if(input.get(scanned) == '\n') {
+					lineBreak = scanned;
+					break;
+				}
+			}
+			if(lineBreak < 0) {
+				if(input.hasRemaining())
+					return false;
+				dropping = true;
+				input.clear();
+				scanned = 0;
+				continue;
+			}
+			if(dropping || isBlank(lineBreak)) {
+				remove(lineBreak + 1);
+				dropping = false;
+			}
+		}
+	}
+	
+	/**
+	 * @param length the number of bytes at the beginning of the input to check
+	 * @return true, if the bytes only contain whitespace
+	 */
+	private boolean isBlank(int length) {
+		for(int i = 0; i < length; i++) {
+			byte b = input.get(i);
+			if(b != ' ' && b != '\t' && b != '\r')
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Parses the line found by hasNextLine() into the passed command and removes it from the input.
+	 * @param parser the parser extracting the command's fields
+	 * @param command the command the fields are written into
+	 * @return true, if the line contained a valid json-object
+	 */
+	boolean parseLine(CommandParser parser, Command command) {
+		boolean valid = parser.parse(input, 0, lineBreak, command);
+		remove(lineBreak + 1);
+		return valid;
+	}
+	
+	/**
+	 * @return true, if there are bytes left in the input that are not blank (e.g. the last line, if it was not terminated)
+	 */
+	boolean hasRest() {
+		return !dropping && !isBlank(input.position());
+	}
+	
+	/**
+	 * Parses all bytes that are left in the input into the passed command and removes them.
+	 * @param parser the parser extracting the command's fields
+	 * @param command the command the fields are written into
+	 * @return true, if the bytes contained a valid json-object
+	 */
+	boolean parseRest(CommandParser parser, Command command) {
+		boolean valid = parser.parse(input, 0, input.position(), command);
+		remove(input.position());
+		return valid;
+	}
+	
+	/**
+	 * @param length the number of bytes to remove from the beginning of the input
+	 */
+	private void remove(int length) {
+		input.flip();
+		input.position(length);
+		input.compact();
+		scanned = 0;
+		lineBreak = -1;
+	}
+	
+	/**
+	 * Turns the connection into a streaming connection, which carries one message per line and is kept open.
+	 * @param acking true, if every message should be acknowledged
+	 */
+	void startStreaming(boolean acking) {
+		this.streaming = true;
+		this.acking = acking;
+		this.scanned = 0;
+	}
+	
+	/**
+	 * Turns the connection into a binary connection, which carries frames of the BinaryProtocol and is kept open.
+	 * The magic byte and the version at the beginning of the input are removed.
+	 */
+	void startBinary() {
+		this.streaming = true;
+		this.binary = true;
+		remove(2);
+	}
+	
+	/**
+	 * @return true, if the connection carries frames of the BinaryProtocol
+	 */
+	boolean isBinary() {
+		return binary;
+	}
+	
+	/**
+	 * Decodes the next frame into the passed command and removes it from the input, once it is complete.
+	 * @param protocol the protocol decoding the frame
+	 * @param command the command the frame is decoded into
+	 * @return the length of the decoded frame, 0 if the next frame is not complete yet, or -1 if its opcode is unknown
+	 */
+	int decodeFrame(BinaryProtocol protocol, Command command) {
+		int length = protocol.decode(input, 0, input.position(), command);
+		if(length > 0)
+			remove(length);
+		return length;
+	}
+	
+	/**
+	 * @return true, if the connection carries one message per line (or binary frames) and is kept open
+	 */
+	boolean isStreaming() {
+		return streaming;
+	}
+	
+	/**
+	 * @return true, if every message should be acknowledged
+	 */
+	boolean isAcking() {
+		return acking;
+	}
+	
+	/**
+	 * Appends a reply to the replies that are waiting to be sent.
+	 * @param reply the text that should be sent to the client
+	 */
+	void queue(String reply) {
+		byte[] bytes = reply.getBytes(StandardCharsets.UTF_8);
+		queue(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * Appends bytes to the replies that are waiting to be sent.
+	 * @param bytes the bytes
+	 * @param offset the index of the first byte to append
+	 * @param length the number of bytes to append
+	 */
+	void queue(byte[] bytes, int offset, int length) {
+		ensureOutputCapacity(length);
+		output.put(bytes, offset, length);
+	}
+	
+	/**
+	 * Appends text as a json-string (in quotes) to the replies that are waiting to be sent.
+	 * All characters outside of ASCII are escaped, so the text is written without encoding it first.
+	 * @param text the text
+	 */
+	void queueJsonString(CharSequence text) {
+		ensureOutputCapacity(text.length() * 6 + 2);
+		output.put((byte) '"');
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c == '"' || c == '\\') {
+				output.put((byte) '\\').put((byte) c);
+			} else if(c == '\n') {
+				output.put((byte) '\\').put((byte) 'n');
+			} else if(c < 0x20 || c >= 0x7F) {
+				output.put((byte) '\\').put((byte) 'u');
+				for(int shift = 12; shift >= 0; shift -= 4) {
+					output.put((byte) Character.forDigit((c >> shift) & 0xF, 16));
+				}
+			} else {
+				output.put((byte) c);
+			}
+		}
+		output.put((byte) '"');
+	}
+	
+	/**
+	 * Makes sure that the passed number of bytes can be appended to the replies without growing the output buffer.
+	 * @param length the number of bytes that will be appended
+	 */
+	private void ensureOutputCapacity(int length) {
+		if(output.remaining() >= length)
+			return;
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + length));
+		output.flip();
+		bigger.put(output);
+		output = bigger;
+	}
+	
+	/**
+	 * @return true, if there are replies waiting to be sent
+	 */
+	boolean hasPendingOutput() {
+		return output.position() > 0;
+	}
+	
+	/**
+	 * @return true, if more replies are waiting to be sent than the client should leave unread
+	 */
+	boolean isOverflowing() {
+		return output.position() > MAX_PENDING_OUTPUT;
+	}
+	
+	/**
+	 * Marks the connection to be closed, as soon as all replies have been sent.
+	 */
+	void closeWhenSent() {
+		this.closeWhenSent = true;
+	}
+	
+	/**
+	 * @return true, if the connection should be closed as soon as all replies have been sent
+	 */
+	boolean isClosingWhenSent() {
+		return closeWhenSent;
+	}
+
+}
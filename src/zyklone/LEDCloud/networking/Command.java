@@ -0,0 +1,125 @@
+package zyklone.LEDCloud.networking;
+
+import java.util.Arrays;
+
+/**
+ * The fields of one json-command the Server knows, as extracted by the CommandParser.
+ * A command is reused for every message, so extracting the fields does not allocate any memory
+ * (unless a message is bigger than all messages before, so the buffers have to grow).
+ * Every field is only valid, if the message contained it with a value of the right type (see has()).
+ * The text fields are kept as StringBuilders, which may be read until the next message is parsed into the command.
+ *
+ * @author Zyklone
+ */
+class Command {
+	
+	/** the commands the server knows, by the name they are sent with */
+	enum Type {
+		FIXED_COLOR("fixed-color"), RAINBOW("rainbow"), PATTERNS("patterns"), ADD_PATTERN("add-pattern"), MUSIC("music"),
+		NOTIFICATION("notification"), ALARM("alarm"), CALIBRATION("calibration"), PALETTE("palette"), STATS("stats"), STREAM("stream"),
+		PIXEL_STREAM("pixel-stream");
+	
+		private static final Type[] VALUES = values();
+		private final String name;
+	
+		Type(String name) {
+			this.name = name;
+		}
+	
+		/**
+		 * @param name the name of a command
+		 * @return the command with the passed name, or null if there is none
+		 */
+		static Type of(CharSequence name) {
+			for(Type type : VALUES) {
+				if(type.name.contentEquals(name))
+					return type;
+			}
+			return null;
+		}
+	}
+	
+	static final int COMMAND = 1;
+	static final int RED = 1 << 1;
+	static final int GREEN = 1 << 2;
+	static final int BLUE = 1 << 3;
+	static final int GAMMA = 1 << 4;
+	static final int BRIGHTNESS = 1 << 5;
+	static final int RED_GAIN = 1 << 6;
+	static final int GREEN_GAIN = 1 << 7;
+	static final int BLUE_GAIN = 1 << 8;
+	static final int TIME = 1 << 9;
+	static final int PALETTE = 1 << 10;
+	static final int NAME = 1 << 11;
+	static final int STOPS = 1 << 12;
+	static final int ACK = 1 << 13;
+	static final int ID = 1 << 14;
+	
+	/** the fields the message contained, with a value of the right type */
+	int fields;
+	Type type;
+	final StringBuilder command = new StringBuilder(16);
+	long red;
+	long green;
+	long blue;
+	float gamma;
+	float brightness;
+	float redGain;
+	float greenGain;
+	float blueGain;
+	final StringBuilder time = new StringBuilder(16);
+	final StringBuilder palette = new StringBuilder(16);
+	final StringBuilder name = new StringBuilder(16);
+	/** the values of all stops ([position, red, green, blue]), one stop after another */
+	long[] stops = new long[32];
+	int stopCount;
+	/** false, if the stops contained anything else than arrays of 4 integers */
+	boolean stopsValid;
+	boolean ack;
+	/** the json-value of the id, exactly as it was received */
+	byte[] id = new byte[16];
+	int idLength;
+	
+	/**
+	 * Forgets all fields of the last message.
+	 */
+	void clear() {
+		fields = 0;
+		type = null;
+		command.setLength(0);
+		time.setLength(0);
+		palette.setLength(0);
+		name.setLength(0);
+		stopCount = 0;
+		stopsValid = true;
+		ack = false;
+		idLength = 0;
+	}
+	
+	/**
+	 * @param field one of the field constants, or several of them or-ed together
+	 * @return true, if the message contained all passed fields with a value of the right type
+	 */
+	boolean has(int field) {
+		return (fields & field) == field;
+	}
+	
+	/**
+	 * @param values the position and the color of the next stop
+	 */
+	void addStop(long[] values) {
+		if((stopCount + 1) * 4 > stops.length)
+			stops = Arrays.copyOf(stops, stops.length * 2);
+		System.arraycopy(values, 0, stops, stopCount * 4, 4);
+		stopCount++;
+	}
+	
+	/**
+	 * @param length the length the id will have
+	 */
+	void ensureIdCapacity(int length) {
+		if(id.length < length)
+			id = new byte[Math.max(length, id.length * 2)];
+	}
+
+}
@@ -0,0 +1,455 @@
+package zyklone.LEDCloud.networking;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Extracts the fields the Server knows from a json-command, directly from the received bytes.
+ * Unlike parsing the message into a tree of json-objects, the parser does not create any objects:
+ * the known fields are written into a reused Command, all other fields are skipped.
+ * Everything in front of the first opening brace and behind the matching closing brace is ignored.
+ * Keys are compared without decoding escape sequences, so a known key must be sent as it is.
+ * A parser is not thread-safe.
+ *
+ * @author Zyklone
+ */
+class CommandParser {
+	
+	/** the keys of the known fields, in the order of FIELDS */
+	private static final byte[][] KEYS = keys("command", "red", "green", "blue", "gamma", "brightness", "red-gain",
+			"green-gain", "blue-gain", "time", "palette", "name", "stops", "ack", "id");
+	private static final int[] FIELDS = {Command.COMMAND, Command.RED, Command.GREEN, Command.BLUE, Command.GAMMA,
+			Command.BRIGHTNESS, Command.RED_GAIN, Command.GREEN_GAIN, Command.BLUE_GAIN, Command.TIME, Command.PALETTE,
+			Command.NAME, Command.STOPS, Command.ACK, Command.ID};
+	
+	private ByteBuffer buffer;
+	private int end;
+	/** the value of the last number that was parsed */
+	private double number;
+	/** true, if the last number that was parsed had neither a fraction nor an exponent */
+	private boolean integral;
+	/** the values of the stop that is being parsed */
+	private final long[] stop = new long[4];
+	
+	private static byte[][] keys(String... keys) {
+		byte[][] bytes = new byte[keys.length][];
+		for(int i = 0; i < keys.length; i++) {
+			bytes[i] = keys[i].getBytes(StandardCharsets.US_ASCII);
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Extracts the known fields of the first json-object within the passed bytes into the passed command.
+	 * The buffer's position and limit are not changed.
+	 * @param buffer the received bytes
+	 * @param from the index of the first byte of the message
+	 * @param to the index after the last byte of the message
+	 * @param command the command the fields are written into, all fields of the last message are cleared
+	 * @return true, if the message contained a complete and valid json-object
+	 */
+	boolean parse(ByteBuffer buffer, int from, int to, Command command) {
+		command.clear();
+		this.buffer = buffer;
+		this.end = to;
+		int p = from;
+		while(p < end && buffer.get(p) != '{')
+			p++;
+		boolean valid = p < end && parseObject(p, command) >= 0;
+		this.buffer = null;
+		return valid;
+	}
+	
+	/**
+	 * @param p the index of the opening brace of the command
+	 * @param command the command the fields are written into
+	 * @return the index after the closing brace, or -1 if the object is invalid
+	 */
+	private int parseObject(int p, Command command) {
+		p = skipWhitespace(p + 1);
+		if(p < end && buffer.get(p) == '}')
+			return p + 1;
+		while(p >= 0 && p < end) {
+			if(buffer.get(p) != '"')
+				return -1;
+			int keyStart = p + 1;
+			p = skipString(p);
+			if(p < 0)
+				return -1;
+			int field = field(keyStart, p - 1);
+			p = skipWhitespace(p);
+			if(p >= end || buffer.get(p) != ':')
+				return -1;
+			p = skipWhitespace(p + 1);
+			p = parseValue(p, field, command);
+			p = skipWhitespace(p);
+			if(p < 0 || p >= end)
+				return -1;
+			byte b = buffer.get(p);
+			if(b == '}')
+				return p + 1;
+			if(b != ',')
+				return -1;
+			p = skipWhitespace(p + 1);
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param start the index of the key's first byte
+	 * @param stop the index after the key's last byte
+	 * @return the field constant of the key, or 0 if the key is unknown
+	 */
+	private int field(int start, int stop) {
+		for(int i = 0; i < KEYS.length; i++) {
+			byte[] key = KEYS[i];
+			if(key.length != stop - start)
+				continue;
+			int j = 0;
+			while(j < key.length && key[j] == buffer.get(start + j))
+				j++;
+			if(j == key.length)
+				return FIELDS[i];
+		}
+		return 0;
+	}
+	
+	/**
+	 * Parses the value of a field. If the value is not of the field's type, it is skipped and the field is not set.
+	 * @param p the index of the value's first byte
+	 * @param field the field constant of the value's key, or 0 if the key is unknown
+	 * @param command the command the field is written into
+	 * @return the index after the value, or -1 if the value is invalid
+	 */
+	private int parseValue(int p, int field, Command command) {
+		if(p < 0 || p >= end)
+			return -1;
+		byte b = buffer.get(p);
+		switch(field) {
+			case Command.COMMAND:
+			case Command.TIME:
+			case Command.PALETTE:
+			case Command.NAME:
+				if(b != '"')
+					break;
+				StringBuilder text = field == Command.COMMAND ? command.command : field == Command.TIME ? command.time
+						: field == Command.PALETTE ? command.palette : command.name;
+				text.setLength(0);
+				p = parseString(p, text);
+				if(p >= 0) {
+					command.fields |= field;
+					if(field == Command.COMMAND)
+						command.type = Command.Type.of(text);
+				}
+				return p;
+			case Command.RED:
+			case Command.GREEN:
+			case Command.BLUE:
+				if(b != '-' && (b < '0' || b > '9'))
+					break;
+				p = parseNumber(p);
+				// colors need to be integers
+				if(p >= 0 && integral) {
+					long value = (long) number;
+					if(field == Command.RED)
+						command.red = value;
+					else if(field == Command.GREEN)
+						command.green = value;
+					else
+						command.blue = value;
+					command.fields |= field;
+				}
+				return p;
+			case Command.GAMMA:
+			case Command.BRIGHTNESS:
+			case Command.RED_GAIN:
+			case Command.GREEN_GAIN:
+			case Command.BLUE_GAIN:
+				if(b != '-' && (b < '0' || b > '9'))
+					break;
+				p = parseNumber(p);
+				if(p >= 0) {
+					float value = (float) number;
+					if(field == Command.GAMMA)
+						command.gamma = value;
+					else if(field == Command.BRIGHTNESS)
+						command.brightness = value;
+					else if(field == Command.RED_GAIN)
+						command.redGain = value;
+					else if(field == Command.GREEN_GAIN)
+						command.greenGain = value;
+					else
+						command.blueGain = value;
+					command.fields |= field;
+				}
+				return p;
+			case Command.STOPS:
+				if(b != '[')
+					break;
+				command.stopCount = 0;
+				command.stopsValid = true;
+				p = parseStops(p, command);
+				if(p >= 0)
+					command.fields |= field;
+				return p;
+			case Command.ACK:
+				int after = skipValue(p);
+				if(after >= 0 && (b == 't' || b == 'f')) {
+					command.ack = b == 't';
+					command.fields |= field;
+				}
+				return after;
+			case Command.ID:
+				int idEnd = skipValue(p);
+				if(idEnd >= 0) {
+					command.ensureIdCapacity(idEnd - p);
+					for(int i = p; i < idEnd; i++) {
+						command.id[i - p] = buffer.get(i);
+					}
+					command.idLength = idEnd - p;
+					command.fields |= field;
+				}
+				return idEnd;
+		}
+		return skipValue(p);
+	}
+	
+	/**
+	 * Parses an array of stops, each of which is an array of 4 integers.
+	 * If any element is not a stop, the stops are marked invalid.
+	 * @param p the index of the opening bracket
+	 * @param command the command the stops are written into
+	 * @return the index after the closing bracket, or -1 if the array is invalid
+	 */
+	private int parseStops(int p, Command command) {
+		p = skipWhitespace(p + 1);
+		if(p >= 0 && p < end && buffer.get(p) == ']')
+			return p + 1;
+		while(p >= 0 && p < end) {
+			int elementEnd = skipValue(p);
+			if(elementEnd < 0)
+				return -1;
+			if(!parseStop(p))
+				command.stopsValid = false;
+			else
+				command.addStop(stop);
+			p = skipWhitespace(elementEnd);
+			if(p < 0 || p >= end)
+				return -1;
+			byte b = buffer.get(p);
+			if(b == ']')
+				return p + 1;
+			if(b != ',')
+				return -1;
+			p = skipWhitespace(p + 1);
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param p the index of the stop's first byte
+	 * @return true, if the stop is an array of exactly 4 integers, which were written into the stop-array
+	 */
+	private boolean parseStop(int p) {
+		if(buffer.get(p) != '[')
+			return false;
+		for(int i = 0; i < 4; i++) {
+			p = skipWhitespace(p + 1);
+			if(p < 0 || p >= end)
+				return false;
+			byte b = buffer.get(p);
+			if(b != '-' && (b < '0' || b > '9'))
+				return false;
+			p = parseNumber(p);
+			if(p < 0 || !integral)
+				return false;
+			stop[i] = (long) number;
+			p = skipWhitespace(p);
+			if(p < 0 || p >= end || buffer.get(p) != (i < 3 ? ',' : ']'))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Parses a json-number into number and integral.
+	 * @param p the index of the number's first byte
+	 * @return the index after the number, or -1 if it is invalid
+	 */
+	private int parseNumber(int p) {
+		boolean negative = buffer.get(p) == '-';
+		if(negative)
+			p++;
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		integral = true;
+		for(; p < end; p++) {
+			byte b = buffer.get(p);
+			if(b >= '0' && b <= '9') {
+				digits++;
+				// further digits do not change a double anymore, only its magnitude
+				if(mantissa < 100_000_000_000_000_000L)
+					mantissa = mantissa * 10 + (b - '0');
+				else
+					exponent++;
+			} else if(b == '.' && integral) {
+				integral = false;
+				for(p++; p < end && buffer.get(p) >= '0' && buffer.get(p) <= '9'; p++) {
+					if(mantissa < 100_000_000_000_000_000L) {
+						mantissa = mantissa * 10 + (buffer.get(p) - '0');
+						exponent--;
+					}
+				}
+				p--;
+			} else if(b == 'e' || b == 'E') {
+				integral = false;
+				p++;
+				boolean negativeExponent = p < end && buffer.get(p) == '-';
+				if(p < end && (buffer.get(p) == '-' || buffer.get(p) == '+'))
+					p++;
+				int value = 0;
+				int start = p;
+				for(; p < end && buffer.get(p) >= '0' && buffer.get(p) <= '9'; p++) {
+					if(value < 10_000)
+						value = value * 10 + (buffer.get(p) - '0');
+				}
+				if(p == start)
+					return -1;
+				exponent += negativeExponent ? -value : value;
+				break;
+			} else {
+				break;
+			}
+		}
+		if(digits == 0)
+			return -1;
+		double value = exponent == 0 ? mantissa : exponent > 0 ? mantissa * Math.pow(10, exponent) : mantissa / Math.pow(10, -exponent);
+		number = negative ? -value : value;
+		return p;
+	}
+	
+	/**
+	 * Decodes a json-string, including escape sequences and multi-byte characters (UTF-8).
+	 * @param p the index of the opening quote
+	 * @param text the builder the characters are appended to
+	 * @return the index after the closing quote, or -1 if the string is invalid
+	 */
+	private int parseString(int p, StringBuilder text) {
+		for(p++; p < end; p++) {
+			int b = buffer.get(p) & 0xFF;
+			if(b == '"')
+				return p + 1;
+			if(b == '\\') {
+				if(++p >= end)
+					return -1;
+				switch(buffer.get(p)) {
+					case 'n': text.append('\n');
+						break;
+					case 't': text.append('\t');
+						break;
+					case 'r': text.append('\r');
+						break;
+					case 'b': text.append('\b');
+						break;
+					case 'f': text.append('\f');
+						break;
+					case 'u':
+						if(p + 4 >= end)
+							return -1;
+						int c = 0;
+						for(int i = 1; i <= 4; i++) {
+							int digit = Character.digit(buffer.get(p + i), 16);
+							if(digit < 0)
+								return -1;
+							c = c * 16 + digit;
+						}
+						text.append((char) c);
+						p += 4;
+						break;
+					default: text.append((char) buffer.get(p));
+				}
+			} else if(b < 0x80) {
+				text.append((char) b);
+			} else {
+				// the number of bytes following the first byte of a multi-byte character
+				int following = b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : 1;
+				int codePoint = b & (0x3F >> following);
+				if(p + following >= end)
+					return -1;
+				for(int i = 0; i < following; i++) {
+					codePoint = (codePoint << 6) | (buffer.get(++p) & 0x3F);
+				}
+				if(!Character.isValidCodePoint(codePoint))
+					return -1;
+				text.appendCodePoint(codePoint);
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param p the index of the opening quote
+	 * @return the index after the closing quote, or -1 if the string is not terminated
+	 */
+	private int skipString(int p) {
+		for(p++; p < end; p++) {
+			byte b = buffer.get(p);
+			if(b == '"')
+				return p + 1;
+			if(b == '\\')
+				p++;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Skips any json-value: strings, objects and arrays (including everything nested in them), numbers and literals.
+	 * @param p the index of the value's first byte
+	 * @return the index after the value, or -1 if the value is not complete
+	 */
+	private int skipValue(int p) {
+		if(p < 0 || p >= end)
+			return -1;
+		byte b = buffer.get(p);
+		if(b == '"')
+			return skipString(p);
+		if(b == '{' || b == '[') {
+			int depth = 0;
+			for(; p < end; p++) {
+				b = buffer.get(p);
+				if(b == '"') {
+					p = skipString(p) - 1;
+					if(p < 0)
+						return -1;
+				} else if(b == '{' || b == '[') {
+					depth++;
+				} else if((b == '}' || b == ']') && --depth == 0) {
+					return p + 1;
+				}
+			}
+			return -1;
+		}
+		int start = p;
+		while(p < end && (b = buffer.get(p)) != ',' && b != '}' && b != ']' && b != ' ' && b != '\t' && b != '\r' && b != '\n')
+			p++;
+		return p > start ? p : -1;
+	}
+	
+	/**
+	 * @param p an index, or -1
+	 * @return the index of the next byte that is no whitespace, or -1 if -1 was passed
+	 */
+	private int skipWhitespace(int p) {
+		if(p < 0)
+			return -1;
+		while(p < end) {
+			byte b = buffer.get(p);
+			if(b != ' ' && b != '\t' && b != '\r' && b != '\n')
+				break;
+			p++;
+		}
+		return p;
+	}
+
+}
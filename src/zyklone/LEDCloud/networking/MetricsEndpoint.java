@@ -0,0 +1,82 @@
+package zyklone.LEDCloud.networking;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import zyklone.LEDCloud.metrics.FrameStats;
+
+/**
+ * Serves the cloud's frame statistics (see FrameStats) as plain text on http://localhost:port/metrics,
+ * so they can be read by a browser, curl or a Prometheus server running on the Pi.
+ * The endpoint is only bound to the loopback address, so it can not be reached from the network.
+ * Requests are handled by a single thread of their own.
+ *
+ * @author Zyklone
+ */
+public class MetricsEndpoint {
+	
+	private final HttpServer server;
+	private final FrameStats stats;
+	
+	/**
+	 * Binds the endpoint to the passed port of the loopback address, without starting it yet.
+	 * @param port the port to listen on
+	 * @param stats the statistics to serve
+	 * @throws IOException if the port could not be bound
+	 */
+	public MetricsEndpoint(int port, FrameStats stats) throws IOException {
+		this.stats = stats;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", this::handle);
+	}
+	
+	/**
+	 * Starts answering requests in a background thread.
+	 */
+	public void start() {
+		server.start();
+		System.out.println("Metrics available on http://localhost:" + server.getAddress().getPort() + "/metrics");
+	}
+	
+	/**
+	 * Stops answering requests, waiting at most one second for requests that are being answered.
+	 */
+	public void stop() {
+		server.stop(1);
+	}
+	
+	/**
+	 * Answers a request with the current statistics. Only GET and HEAD are allowed.
+	 * @param exchange the request and its response
+	 * @throws IOException if the response could not be sent
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			if(!method.equals("GET") && !method.equals("HEAD")) {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = stats.format().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			if(method.equals("HEAD")) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+}
@@ -1,35 +1,70 @@
 package zyklone.LEDCloud.networking;
 
-import java.awt.Color;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalTime;
 import java.time.format.DateTimeParseException;
-
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import java.util.Iterator;
 
 import zyklone.LEDCloud.LEDCloud;
+import zyklone.LEDCloud.mesh.ColorCalibration;
+import zyklone.LEDCloud.rendering.FrameBuffer;
 
 /**
  * The projects starting-class.<br>
  * This class instantiates an LEDCloud-object, and listens on an open tcp-port (6639 by default) for new connections.
  * It reads a message from an accepted message and updates the LEDCloud's status according to the message's content.
+ * All clients are served by a single thread with a selector and non-blocking channels, so a slow or silent client
+ * does not delay any other client. Every client has 5 seconds to send its message (ledcloud.server.timeout, in ms),
+ * and at most 256 clients may be connected at the same time (ledcloud.server.connections),
+ * further clients are disconnected right away.
+ * A client that wants to send many commands (e.g. to drive the colors live) can keep its connection open,
+ * by sending {"command": "stream"} first. Afterwards every line it sends is processed as one json-command,
+ * until it closes the connection or stays silent for 5 minutes (ledcloud.server.stream.timeout, in ms).
+ * If the stream command contains "ack": true, every command is acknowledged with one line
+ * ({"ack": command, "id": id of the command if it has one}), otherwise only commands containing "ack": true are.
+ * Replies (e.g. to the stats command) are sent as one line as well, as "reply" of the acknowledgement.
+ * The commands are parsed straight from the received bytes (see CommandParser), so streamed commands
+ * (apart from their acknowledgements' replies) are processed without creating any garbage.
+ * Controllers can also send compact binary commands over a connection of their own, which is told apart
+ * from json-messages by its first byte (see BinaryProtocol). Both kinds of commands are processed the same way.
+ * The pixel-stream command lets an external renderer take over the LEDs, by sending pixels via DDP (see LEDCloud).
+ * The statistics of the cloud's frames can be requested by a stats command, which is answered on the same connection,
+ * and are also served on http://localhost:9639/metrics (the port can be set via the system property ledcloud.metrics.port,
+ * 0 or less disables the endpoint).
  * 
  * @author Zyklone
  */
 public class Server{
 	
+	/** the answer to a binary connection's magic byte and version */
+	private static final byte[] BINARY_HELLO = {(byte) BinaryProtocol.MAGIC, (byte) BinaryProtocol.VERSION};
+	/** the parts of a json-acknowledgement and of the answer to an invalid command */
+	private static final byte[] ACK_START = "{\"ack\":".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ACK_ID = ",\"id\":".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ACK_REPLY = ",\"reply\":".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ACK_END = "}\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ACK_ERROR = "{\"error\":\"invalid command\"".getBytes(StandardCharsets.US_ASCII);
+	
 	private LEDCloud ledCloud;
-	private static JSONParser parser = new JSONParser();
+	/** the parser and the command every message is parsed into, as all clients are served by the same thread */
+	private final CommandParser parser = new CommandParser();
+	private final Command command = new Command();
+	private final BinaryProtocol binaryProtocol = new BinaryProtocol();
+	/** the header of a binary acknowledgement, reused for every acknowledgement */
+	private final byte[] binaryAck = new byte[BinaryProtocol.ACK_LENGTH];
 	private int port = 6639;
-	private ServerSocket acceptor = null;
-	private Socket connection;
-	private InputStreamReader inputStream;
+	private final long timeoutNanos = Long.getLong("ledcloud.server.timeout", 5000) * 1_000_000;
+	private final long streamTimeoutNanos = Long.getLong("ledcloud.server.stream.timeout", 300_000) * 1_000_000;
+	private final int maxConnections = Integer.getInteger("ledcloud.server.connections", 256);
+	private Selector selector;
+	private ServerSocketChannel acceptor;
+	private int connections = 0;
 
 	private Server() {
 		this.ledCloud = new LEDCloud();
@@ -44,184 +79,489 @@ public class Server{
 	/**
 	 * Loops endlessly, waiting for new json-messages to update the status of the LEDCloud.<br>
 	 * First the LEDCloud-Runnable is started in a new thread.
-	 * Then an endless loop waits for new incoming connections and accepts them.
-	 * The connected client has 5 seconds to send a message, before the connection is automatically terminated.
+	 * Then an endless loop waits for new incoming connections and messages and handles whichever is ready.
+	 * Every connected client has 5 seconds to send a message, before the connection is automatically terminated.
 	 * If a message was received, a valid command is extracted if possible, and the LEDCloud's status is updated accordingly.
-	 * The connection is then terminated.
+	 * The connection is then terminated, once the reply (if the command has one) has been sent.
 	 */
 	private void start() {
 		new Thread(ledCloud).start();
+		startMetricsEndpoint();
 		try {
-			acceptor = new ServerSocket(port);
+			selector = Selector.open();
+			acceptor = ServerSocketChannel.open();
+			acceptor.bind(new InetSocketAddress(port));
+			acceptor.configureBlocking(false);
+			acceptor.register(selector, SelectionKey.OP_ACCEPT);
 		} catch (IOException e) {
 			e.printStackTrace();
+			return;
 		}
+		System.out.println("Listening for new connections.");
 		while(true) {
-			System.out.println("Listening for new connections.");
-			acceptConnection();
 			try {
-				char[] inputBuffer = new char[500];
-				if(inputStream.read(inputBuffer, 0, 500) != -1) {
-					String message = (new String(inputBuffer)).trim();
-					System.out.println("Message received: " + message);
-					//process message
-					processCommand(message);
+				// wake up regularly, to close connections that timed out
+				selector.select(Math.max(1, timeoutNanos / 4_000_000));
+			} catch(IOException ioe) {
+				ioe.printStackTrace();
+				continue;
+			}
+			long now = System.nanoTime();
+			Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+			while(selected.hasNext()) {
+				SelectionKey key = selected.next();
+				selected.remove();
+				if(!key.isValid())
+					continue;
+				if(key.isAcceptable())
+					acceptConnection(now);
+				else if(key.isReadable())
+					readMessage(key, now);
+				else if(key.isWritable())
+					writeReply(key, now);
+			}
+			closeIdleConnections(now);
+		}
+	}
+	
+	/**
+	 * Accepts all pending connect-requests and registers the new connections for reading.
+	 * Connections exceeding the maximum number of connections are closed right away.
+	 * @param now the current time, as returned by System.nanoTime()
+	 */
+	private void acceptConnection(long now) {
+		SocketChannel channel;
+		try {
+			while((channel = acceptor.accept()) != null) {
+				if(connections >= maxConnections) {
+					System.out.println("Too many connections (" + connections + "). Refusing the new connection.");
+					channel.close();
+					continue;
 				}
-				closeConnection();
-			} catch (IOException ioe) {
-				System.out.println("Connection timeout. No message recieved after 5 seconds.");
-				closeConnection();
+				channel.configureBlocking(false);
+				channel.register(selector, SelectionKey.OP_READ, new ClientConnection(channel, now));
+				connections++;
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 	
 	/**
-	 * Closes the Socket and its inputStream, if it is not closed already.
+	 * Reads the bytes a client sent. Once the message is complete (or the client closed its side),
+	 * the message is processed and the connection is either closed or switched to sending the reply.
+	 * If the message is a stream command, the connection is kept open for further commands instead.
+	 * @param key the key of the client's connection
+	 * @param now the current time, as returned by System.nanoTime()
 	 */
-	protected void closeConnection() {
-		if(this.inputStream!= null) {
-			try {
-				this.inputStream.close();
-			} catch(IOException ioe) {}
+	private void readMessage(SelectionKey key, long now) {
+		ClientConnection client = (ClientConnection) key.attachment();
+		int read;
+		try {
+			read = client.read(now);
+		} catch(IOException ioe) {
+			closeConnection(key);
+			return;
+		}
+		if(client.isStreaming()) {
+			readCommands(key, client, read < 0, now);
+			return;
+		}
+		if(client.peek(0) == BinaryProtocol.MAGIC) {
+			// the version follows the magic byte
+			if(client.peek(1) < 0 && read >= 0)
+				return;
+			openBinaryConnection(key, client, read < 0, now);
+			return;
+		}
+		if(!client.hasCompleteMessage() && read >= 0)
+			return;
+		if(!client.isEmpty()) {
+			System.out.println("Message received: " + client.getMessage());
+			//process message
+			boolean valid = client.parseMessage(parser, command);
+			if(valid && command.type == Command.Type.STREAM) {
+				client.startStreaming(command.ack);
+				System.out.println("Streaming connection opened.");
+				if(client.isAcking())
+					acknowledge(client, valid, null);
+				// the client may have sent its first commands right after the stream command
+				readCommands(key, client, read < 0, now);
+				return;
+			}
+			if(!valid)
+				System.err.println("The received message is not a valid json-command. Ignoring the message.");
+			String reply = valid ? processCommand() : null;
+			if(reply != null)
+				client.queue(reply);
+		}
+		client.closeWhenSent();
+		writeReply(key, now);
+	}
+	
+	/**
+	 * Answers the beginning of a binary connection with the version this server speaks
+	 * and turns the connection into a binary connection, if the client speaks the same version.
+	 * Otherwise the connection is closed once the answer has been sent.
+	 * @param key the key of the client's connection
+	 * @param client the client, whose input starts with the magic byte
+	 * @param closed true, if the client closed its side of the connection
+	 * @param now the current time, as returned by System.nanoTime()
+	 */
+	private void openBinaryConnection(SelectionKey key, ClientConnection client, boolean closed, long now) {
+		int version = client.peek(1);
+		client.queue(BINARY_HELLO, 0, BINARY_HELLO.length);
+		if(version != BinaryProtocol.VERSION) {
+			System.out.println("The binary client speaks version " + version + ", but only version " + BinaryProtocol.VERSION
+					+ " is supported. Closing the connection.");
+			client.closeWhenSent();
+			writeReply(key, now);
+			return;
+		}
+		client.startBinary();
+		System.out.println("Binary connection opened.");
+		// the client may have sent its first frames right after the version
+		readCommands(key, client, closed, now);
+	}
+	
+	/**
+	 * Processes every complete line (or frame, if binary) a streaming client sent as one command and queues the acknowledgements.
+	 * If the client closed its side, an unterminated last line is processed as well
+	 * and the connection is closed once all acknowledgements have been sent.
+	 * @param key the key of the client's connection
+	 * @param client the streaming client
+	 * @param closed true, if the client closed its side of the connection
+	 * @param now the current time, as returned by System.nanoTime()
+	 */
+	private void readCommands(SelectionKey key, ClientConnection client, boolean closed, long now) {
+		if(client.isBinary()) {
+			processFrames(client);
+		} else {
+			while(client.hasNextLine()) {
+				processStreamedCommand(client, client.parseLine(parser, command));
+			}
+		}
+		if(closed) {
+			if(!client.isBinary() && client.hasRest())
+				processStreamedCommand(client, client.parseRest(parser, command));
+			System.out.println("Streaming connection closed by the client.");
+			client.closeWhenSent();
+		}
+		if(client.isOverflowing()) {
+			System.out.println("Streaming client does not read its acknowledgements. Closing the connection.");
+			closeConnection(key);
+			return;
 		}
-		if(this.connection != null) {
+		writeReply(key, now);
+	}
+	
+	/**
+	 * Processes the command parsed from one line of a streaming client and queues its acknowledgement, if it should be acknowledged.
+	 * Commands are not printed, as there may be many of them every second.
+	 * @param client the streaming client
+	 * @param valid true, if the line contained a valid json-object, which was parsed into the command
+	 */
+	private void processStreamedCommand(ClientConnection client, boolean valid) {
+		String reply = valid ? processCommand() : null;
+		if(client.isAcking() || reply != null || (valid && command.ack))
+			acknowledge(client, valid, reply);
+	}
+	
+	/**
+	 * Processes every complete frame a binary client sent and queues the acknowledgements.
+	 * A frame with an unknown opcode is answered with an error, then the connection is closed,
+	 * as the following frames can not be told apart anymore.
+	 * @param client the binary client
+	 */
+	private void processFrames(ClientConnection client) {
+		int length;
+		while(!client.isClosingWhenSent() && (length = client.decodeFrame(binaryProtocol, command)) != 0) {
+			if(length < 0) {
+				System.out.println("The binary client sent the unknown opcode " + binaryProtocol.getOpcode() + ". Closing the connection.");
+				acknowledgeFrame(client, BinaryProtocol.STATUS_UNKNOWN_OPCODE, null);
+				client.closeWhenSent();
+				return;
+			}
+			String reply = processCommand();
+			if(command.ack || reply != null)
+				acknowledgeFrame(client, BinaryProtocol.STATUS_OK, reply);
+		}
+	}
+	
+	/**
+	 * Queues the binary acknowledgement of the last decoded frame.
+	 * @param client the client the acknowledgement is sent to
+	 * @param status the status of the frame
+	 * @param reply the reply to the command, or null if it has none
+	 */
+	private void acknowledgeFrame(ClientConnection client, byte status, String reply) {
+		byte[] bytes = reply != null ? reply.getBytes(StandardCharsets.UTF_8) : null;
+		// the length of the reply has to fit into two bytes
+		int length = bytes != null ? Math.min(bytes.length, 0xFFFF) : 0;
+		binaryProtocol.writeAck(binaryAck, status, command, length);
+		client.queue(binaryAck, 0, binaryAck.length);
+		if(length > 0)
+			client.queue(bytes, 0, length);
+	}
+	
+	/**
+	 * Queues the acknowledgement of the last parsed command as one line: its command, its id and its reply, if it has any.
+	 * The acknowledgement is written straight into the client's output, without creating a String first.
+	 * @param client the client the acknowledgement is sent to
+	 * @param valid true, if the command was a valid json-object
+	 * @param reply the reply to the command, or null if it has none
+	 */
+	private void acknowledge(ClientConnection client, boolean valid, String reply) {
+		if(!valid || !command.has(Command.COMMAND)) {
+			client.queue(ACK_ERROR, 0, ACK_ERROR.length);
+		} else {
+			client.queue(ACK_START, 0, ACK_START.length);
+			client.queueJsonString(command.command);
+			if(command.has(Command.ID)) {
+				client.queue(ACK_ID, 0, ACK_ID.length);
+				client.queue(command.id, 0, command.idLength);
+			}
+		}
+		if(reply != null) {
+			client.queue(ACK_REPLY, 0, ACK_REPLY.length);
+			client.queueJsonString(reply);
+		}
+		client.queue(ACK_END, 0, ACK_END.length);
+	}
+	
+	/**
+	 * Sends as much of the pending replies as the client's channel accepts without blocking.
+	 * Once all replies have been sent, the connection is closed, unless it is a streaming connection.
+	 * @param key the key of the client's connection
+	 * @param now the current time, as returned by System.nanoTime()
+	 */
+	private void writeReply(SelectionKey key, long now) {
+		ClientConnection client = (ClientConnection) key.attachment();
+		if(client.hasPendingOutput()) {
 			try {
-				this.connection.close();
-			} catch(IOException ioe) {}
+				client.write(now);
+			} catch(IOException ioe) {
+				System.out.println("The reply could not be sent: " + ioe.getMessage());
+				closeConnection(key);
+				return;
+			}
+		}
+		if(client.hasPendingOutput()) {
+			key.interestOps(SelectionKey.OP_WRITE);
+		} else if(client.isClosingWhenSent()) {
+			closeConnection(key);
+		} else {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+	
+	/**
+	 * Closes every connection whose client did not send or receive anything within the timeout.
+	 * Streaming connections have a timeout of their own, as their clients may pause between commands.
+	 * @param now the current time, as returned by System.nanoTime()
+	 */
+	private void closeIdleConnections(long now) {
+		for(SelectionKey key : selector.keys()) {
+			if(!(key.attachment() instanceof ClientConnection))
+				continue;
+			ClientConnection client = (ClientConnection) key.attachment();
+			if(client.isStreaming() && client.isIdle(now, streamTimeoutNanos)) {
+				System.out.println("Streaming connection timeout. No command received for " + streamTimeoutNanos / 1_000_000_000.0 + " seconds.");
+				closeConnection(key);
+			} else if(!client.isStreaming() && client.isIdle(now, timeoutNanos)) {
+				System.out.println("Connection timeout. No message recieved after " + timeoutNanos / 1_000_000_000.0 + " seconds.");
+				closeConnection(key);
+			}
 		}
 	}
 	
 	/**
-	 * Takes the incoming message, tries to convert it into a json-object and extract a valid command from it.
-	 * If the contained information can be parsed successfully and is complete,
-	 * the cloud's status is set accordingly.
-	 * @param message the json-string to process
+	 * Starts serving the cloud's frame statistics on localhost, unless the endpoint is disabled.
+	 * If the port can not be bound, the server keeps running without the endpoint.
 	 */
-	private void processCommand(String message){
-		JSONObject json = extractValidJSON(message);
-		if(json == null)
+	private void startMetricsEndpoint() {
+		int metricsPort = Integer.getInteger("ledcloud.metrics.port", 9639);
+		if(metricsPort <= 0)
 			return;
-		if(!json.containsKey("command"))
+		try {
+			new MetricsEndpoint(metricsPort, ledCloud.getStats()).start();
+		} catch(IOException ioe) {
+			System.err.println("The metrics endpoint could not be started: " + ioe.getMessage());
+		}
+	}
+	
+	/**
+	 * Closes the client's channel and stops watching it, if it is not closed already.
+	 * @param key the key of the client's connection
+	 */
+	protected void closeConnection(SelectionKey key) {
+		if(!key.isValid())
 			return;
-		switch((String)json.get("command")){
-			case "fixed-color": ledCloud.setFixedColorMode(extractColorFromJSON(json));
+		key.cancel();
+		connections--;
+		try {
+			key.channel().close();
+		} catch(IOException ioe) {}
+	}
+	
+	/**
+	 * Takes the last parsed command and extracts a valid command from it.
+	 * If the contained information is complete, the cloud's status is set accordingly.
+	 * @return the reply that should be sent to the client, or null if the command has no reply
+	 */
+	private String processCommand(){
+		if(command.type == null)
+			return null;
+		switch(command.type){
+			case FIXED_COLOR: processFixedColorCommand();
 				break;
-			case "rainbow": ledCloud.setRainbowMode();
+			case RAINBOW: processRainbowCommand();
 				break;
-			case "patterns": ledCloud.setPatternsMode();
+			case PATTERNS: ledCloud.setPatternsMode();
 				break;
-			case "add-pattern": ledCloud.addPattern();
+			case ADD_PATTERN: ledCloud.addPattern();
 				break;
-			case "music": ledCloud.setMusicMode();
+			case MUSIC: ledCloud.setMusicMode();
 				break;
-			case "notification": ledCloud.playNotification(extractColorFromJSON(json));
+			case NOTIFICATION: processNotificationCommand();
 				break;
-			case "alarm": processAlarmCommand(json);
+			case ALARM: processAlarmCommand();
+				break;
+			case CALIBRATION: processCalibrationCommand();
+				break;
+			case PALETTE: processPaletteCommand();
+				break;
+			case STATS: return ledCloud.getStats().format();
+			case PIXEL_STREAM: ledCloud.setStreamMode();
+				break;
+			case STREAM:	// only valid as the first message of a connection
+				break;
+		}
+		return null;
+	}
+	
+	/**
+	 * Tries to extract a color out of the last parsed command and set the cloud's status to fixed-color-mode.
+	 */
+	private void processFixedColorCommand() {
+		int color = extractColor();
+		if(color < 0) {
+			System.out.println("The received fixed-color command did not contain a valid color. Ignoring the command.");
+			return;
+		}
+		ledCloud.setFixedColorMode(color);
+	}
+	
+	/**
+	 * Tries to extract a color out of the last parsed command and play a notification with it.
+	 */
+	private void processNotificationCommand() {
+		int color = extractColor();
+		if(color < 0) {
+			System.out.println("The received notification command did not contain a valid color. Ignoring the command.");
+			return;
 		}
+		ledCloud.playNotification(color);
 	}
 	
 	/**
-	 * Tries to extract a time out of the passed JSON-Object, parse it and set the clouds status to alarm-mode.
-	 * @param json the json-object that should contain the alarm time
+	 * Sets the cloud's status to rainbow-mode, displaying the palette named in the last parsed command, if it names one.
 	 */
-	private void processAlarmCommand(JSONObject json) {
-		if(!json.containsKey("time")) {
+	private void processRainbowCommand() {
+		if(!command.has(Command.PALETTE)) {
+			ledCloud.setRainbowMode();
+			return;
+		}
+		if(!ledCloud.setRainbowMode(command.palette.toString()))
+			System.out.println("The received rainbow command named an unknown palette. Ignoring the command.");
+	}
+	
+	/**
+	 * Tries to extract a name and the stops of a gradient out of the last parsed command
+	 * and registers the gradient as a palette under that name, so it can be displayed by a rainbow command.
+	 * Every stop is an array of its position and its color ([position, red, green, blue]), all within 0 and 255.
+	 * The positions need to be in ascending order. New names are ignored once the maximum number of palettes is defined.
+	 */
+	private void processPaletteCommand() {
+		if(!command.has(Command.NAME | Command.STOPS)) {
+			System.out.println("The received palette command did not contain a name and stops. Ignoring the command.");
+			return;
+		}
+		if(!command.stopsValid) {
+			System.out.println("The received palette command contained an invalid stop. Ignoring the command.");
+			return;
+		}
+		float[] positions = new float[command.stopCount];
+		int[] colors = new int[command.stopCount];
+		for(int i = 0; i < command.stopCount; i++) {
+			positions[i] = clamp(command.stops[i*4]) / 255f;
+			colors[i] = FrameBuffer.rgb(clamp(command.stops[i*4 + 1]), clamp(command.stops[i*4 + 2]), clamp(command.stops[i*4 + 3]));
+		}
+		String name = command.name.toString();
+		try {
+			if(ledCloud.getPalettes().define(name, positions, colors) == null) {
+				System.out.println("Too many palettes (" + ledCloud.getPalettes().getMaxDefined() + " defined). Ignoring the palette "
+						+ name + ".");
+				return;
+			}
+			System.out.println("Palette " + name + " defined with " + command.stopCount + " stops.");
+		} catch(IllegalArgumentException iae) {
+			System.out.println("The received palette command contained invalid stops: " + iae.getMessage() + " Ignoring the command.");
+		}
+	}
+	
+	/**
+	 * Tries to extract a time out of the last parsed command, parse it and set the clouds status to alarm-mode.
+	 */
+	private void processAlarmCommand() {
+		if(!command.has(Command.TIME)) {
 			System.out.println("The received alarm command did not contain a time. Ignoring the command.");
 			return;
 		}
 		try {
-			ledCloud.setAlarm(LocalTime.parse((String) json.get("time")));
+			ledCloud.setAlarm(LocalTime.parse(command.time));
 		} catch(DateTimeParseException dtpe) {
 			System.out.println("The received time for the alarm has an invalid format. Ignoring the command.");
 		}
 	}
 	
 	/**
-	 * Tries to extract a Color-object from a json-object.
-	 * @param json the json-object the Color should be extracted from
-	 * @return the extracted Color-object, or null if no Color-object could be created from the passed json-object
+	 * Updates the color calibration with all settings contained in the last parsed command.
+	 * Settings that are not contained keep their current value.
+	 * The gamma value is expected to be a positive number, brightness and gains to be within 0 and 255.
 	 */
-	private Color extractColorFromJSON(JSONObject json) {
-		if(json.get("red") instanceof Long && json.get("green") instanceof Long && json.get("blue") instanceof Long) {
-			int red = ((Long)json.get("red")).intValue();
-			if(red < 0)
-				red = 0;
-			if(red > 255)
-				red = 255;
-			int green = ((Long)json.get("green")).intValue();
-			if(green < 0)
-				green = 0;
-			if(green > 255)
-				green = 255;
-			int blue = ((Long)json.get("blue")).intValue();
-			if(blue < 0)
-				blue = 0;
-			if(blue > 255)
-				blue = 255;
-			return new Color(red, green, blue);
+	private void processCalibrationCommand() {
+		ColorCalibration current = ledCloud.getCalibration();
+		float gamma = command.has(Command.GAMMA) ? command.gamma : current.getGamma();
+		float brightness = command.has(Command.BRIGHTNESS) ? command.brightness / 255 : current.getBrightness();
+		float redGain = command.has(Command.RED_GAIN) ? command.redGain / 255 : current.getRedGain();
+		float greenGain = command.has(Command.GREEN_GAIN) ? command.greenGain / 255 : current.getGreenGain();
+		float blueGain = command.has(Command.BLUE_GAIN) ? command.blueGain / 255 : current.getBlueGain();
+		try {
+			ledCloud.setCalibration(new ColorCalibration(gamma, brightness, redGain, greenGain, blueGain));
+		} catch(IllegalArgumentException iae) {
+			System.out.println("The received calibration command contained an invalid value: " + iae.getMessage() + " Ignoring the command.");
 		}
-		return null;
 	}
 	
 	/**
-	 * Tries to extract a valid json-message out of a String and convert it into a json-object.
-	 * @param originalMessage the message that should be converted into a json-object.
-	 * @return the extracted json-object, or null if the message does not contain a valid json-string
+	 * Tries to extract a packed color (0xRRGGBB) from the last parsed command.
+	 * @return the extracted packed color, or -1 if the command does not contain a valid color
 	 */
-	private JSONObject extractValidJSON(String originalMessage)
-	{
-		if(originalMessage == null || !originalMessage.contains("{") || !originalMessage.contains("}"))
-			return null;
-		
-		String extractedJSONString = "";
-		String substring = "";
-        int depth = 0;
-        // search for a complete json-message inside of the string, based on braces (curly brackets)
-        // if the string contains more than one valid json-message, the last one is chosen
-        for(Character c : originalMessage.toCharArray())
-        {
-            if(c.equals('{'))
-                depth++;
-
-            if(depth > 0)
-                substring = substring.concat(c.toString());
-            //System.out.println("Extracting: " + substring);
-            
-            if(c.equals('}') && depth != 0)
-                depth--;
-            
-            if(depth == 0 && !substring.isEmpty()) {
-                extractedJSONString = new String(substring);
-                substring = "";
-            }
-        }
-        
-        try {
-        	return (JSONObject) parser.parse(extractedJSONString);
-        } catch (ParseException e) {
-			System.err.println("Reading coin-infos from the file failed. Wrong format!");
-			System.err.println("Importing coin-infos from file failed.");
-			e.printStackTrace();
-			return null;
-		}
+	private int extractColor() {
+		if(!command.has(Command.RED | Command.GREEN | Command.BLUE))
+			return -1;
+		return FrameBuffer.rgb(clamp(command.red), clamp(command.green), clamp(command.blue));
 	}
 	
 	/**
-	 * Waits until there is a new incoming connect-request, accepts the connection and sets the classes inputStream accordingly.
-	 * The read-timeout is set to 5 seconds.
-	 * This is used as a threshold in which the client has to send a message, before the connection is terminated.
+	 * @param value a color channel or position
+	 * @return the value, capped to the range of 0 to 255
 	 */
-	private void acceptConnection() {
-		try {
-			connection = acceptor.accept();
-			connection.setSoTimeout(5000);
-			this.inputStream = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8);
-			System.out.println("New connection accepted.");
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	private static int clamp(long value) {
+		return (int) Math.max(0, Math.min(255, value));
 	}
-
+	
 	public static void main(String[] args) {
 		//LEDCloud cloud = new LEDCloud();
 		Server server = new Server();
@@ -0,0 +1,38 @@
+package zyklone.LEDCloud.output;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Base class for LedOutputs that allocates the direct LED-buffer every output shares.
+ * 
+ * @author Zyklone
+ */
+public abstract class AbstractLedOutput implements LedOutput {
+	
+	protected final int ledCount;
+	protected final IntBuffer leds;
+	
+	/**
+	 * Allocates a dark LED-buffer outside of the java heap.
+	 * @param ledCount the number of LEDs this output drives
+	 */
+	protected AbstractLedOutput(int ledCount) {
+		if(ledCount < 0)
+			throw new IllegalArgumentException("The number of LEDs must not be negative.");
+		this.ledCount = ledCount;
+		this.leds = ByteBuffer.allocateDirect(ledCount * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+	
+	@Override
+	public int getLedCount() {
+		return ledCount;
+	}
+	
+	@Override
+	public IntBuffer getLedBuffer() {
+		return leds;
+	}
+	
+}
@@ -0,0 +1,73 @@
+package zyklone.LEDCloud.output;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a CRC32 checksum of every shown frame, e.g. to compare the rendered frames with frames rendered earlier.
+ * The checksum covers the red, green and blue channel of every LED in the order of the LED-strip,
+ * so it does not depend on the platform's byte order.
+ * Only the checksums of the first frames up to the configured limit are kept.
+ * 
+ * @author Zyklone
+ */
+public class ChecksumLedOutput extends AbstractLedOutput {
+	
+	private final long[] checksums;
+	private final CRC32 crc = new CRC32();
+	private int frames = 0;
+	private Runnable limitListener;
+	
+	/**
+	 * @param ledCount the number of LEDs this output pretends to drive
+	 * @param limit the number of frames whose checksums are kept, at least 1
+	 */
+	public ChecksumLedOutput(int ledCount, int limit) {
+		super(ledCount);
+		if(limit < 1)
+			throw new IllegalArgumentException("At least one checksum has to be kept.");
+		this.checksums = new long[limit];
+	}
+	
+	/**
+	 * Calculates the checksum of the LED-buffer, unless the limit has already been reached.
+	 * The listener is informed, once the checksum of the last frame within the limit was calculated.
+	 */
+	@Override
+	public void show() {
+		if(frames == checksums.length)
+			return;
+		crc.reset();
+		for(int i = 0; i < ledCount; i++) {
+			int rgb = leds.get(i);
+			crc.update(rgb >> 16);
+			crc.update(rgb >> 8);
+			crc.update(rgb);
+		}
+		checksums[frames++] = crc.getValue();
+		if(frames == checksums.length && limitListener != null)
+			limitListener.run();
+	}
+	
+	/**
+	 * @param limitListener called once the checksums of as many frames as the limit allows were calculated
+	 */
+	public void setLimitListener(Runnable limitListener) {
+		this.limitListener = limitListener;
+	}
+	
+	/**
+	 * @return the number of frames whose checksums were calculated
+	 */
+	public int getFrameCount() {
+		return frames;
+	}
+	
+	/**
+	 * @return a copy of the checksums of all frames shown so far (up to the limit), in the order they were shown
+	 */
+	public long[] getChecksums() {
+		return Arrays.copyOf(checksums, frames);
+	}
+	
+}
@@ -0,0 +1,67 @@
+package zyklone.LEDCloud.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes every shown frame to a file, e.g. to record the output of the rendering for later playback.
+ * Every frame is stored as three bytes (red, green, blue) per LED, in the order of the LED-strip,
+ * without any header or separator, so the file's size is a multiple of three times the number of LEDs.
+ * Note that the LedMeshCoordinator does not show frames that are identical to the previous one, so these are not written either.
+ * If writing fails, an error is printed and all following frames are discarded.
+ * 
+ * @author Zyklone
+ */
+public class FileLedOutput extends AbstractLedOutput implements Closeable {
+	
+	private final FileChannel channel;
+	private final ByteBuffer frame;
+	private boolean failed = false;
+	
+	/**
+	 * Creates (or truncates) the file the frames are written to.
+	 * @param file the path of the file
+	 * @param ledCount the number of LEDs this output pretends to drive
+	 * @throws IOException if the file can not be opened for writing
+	 */
+	public FileLedOutput(Path file, int ledCount) throws IOException {
+		super(ledCount);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.frame = ByteBuffer.allocateDirect(ledCount * 3);
+	}
+	
+	/**
+	 * Appends the LED-buffer to the file.
+	 */
+	@Override
+	public synchronized void show() {
+		if(failed)
+			return;
+		frame.clear();
+		for(int i = 0; i < ledCount; i++) {
+			int col = leds.get(i);
+			frame.put((byte) (col >> 16));
+			frame.put((byte) (col >> 8));
+			frame.put((byte) col);
+		}
+		frame.flip();
+		try {
+			while(frame.hasRemaining()) {
+				channel.write(frame);
+			}
+		} catch(IOException ioe) {
+			System.err.println("Writing a frame to the file failed, all following frames will be discarded: " + ioe.getMessage());
+			failed = true;
+		}
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+	
+}
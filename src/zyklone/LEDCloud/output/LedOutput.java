@@ -0,0 +1,43 @@
+package zyklone.LEDCloud.output;
+
+import java.nio.IntBuffer;
+
+/**
+ * Represents the hardware (or anything else) the colors of the cloud's LEDs are sent to.
+ * A complete frame is handed over at once: the caller writes one packed color (0xRRGGBB) per LED,
+ * in the order of the LED-strip, into the output's LED-buffer and then calls show().
+ * The LED-buffer is a direct buffer in native byte order, so that an implementation backed by
+ * native code can hand the whole frame over in a single bulk copy instead of one call per LED
+ * (e.g. the Ws281xLedOutput, see Ws281xBulkCopy).
+ * 
+ * @author Zyklone
+ */
+public interface LedOutput {
+	
+	/**
+	 * @return the number of LEDs this output drives
+	 */
+	int getLedCount();
+	
+	/**
+	 * @return the buffer holding one packed color per LED, which is sent to the LEDs upon calling show()
+	 */
+	IntBuffer getLedBuffer();
+	
+	/**
+	 * Sends the current content of the LED-buffer to the LEDs and displays it.
+	 */
+	void show();
+	
+	/**
+	 * Sends the current content of the LED-buffer to the LEDs and displays it,
+	 * knowing that only the passed LEDs changed since the last call.
+	 * Outputs that are able to update single LEDs should override this method to only send the changes,
+	 * by default the whole LED-buffer is sent via show().
+	 * @param changedLeds the indices of the LEDs whose color changed, in ascending order
+	 * @param count the number of valid indices in changedLeds
+	 */
+	default void showChanged(int[] changedLeds, int count) {
+		show();
+	}
+}
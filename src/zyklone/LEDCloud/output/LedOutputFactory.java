@@ -0,0 +1,64 @@
+package zyklone.LEDCloud.output;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import com.github.mbelling.ws281x.Ws281xLedStrip;
+import com.github.mbelling.ws281x.jni.rpi_ws281xConstants;
+
+/**
+ * Creates the LedOutput the cloud's pictures are sent to.
+ * The type of the output is chosen via the system property ledcloud.output:
+ * <ul>
+ * <li>ws281x (default): the WS281x LED-strip connected to the Raspberry Pi</li>
+ * <li>null: discards every frame</li>
+ * <li>memory: keeps the last frames in memory, the number of frames is set via ledcloud.output.capacity (default 1)</li>
+ * <li>file: writes every frame to the file set via ledcloud.output.file (default ./frames.rgb)</li>
+ * <li>checksum: keeps a checksum of the first frames, the number of frames is set via ledcloud.output.capacity (default 1)</li>
+ * </ul>
+ * All outputs but the first one allow the rendering to be run on any machine, without an LED-strip attached.
+ * 
+ * @author Zyklone
+ */
+public class LedOutputFactory {
+	
+	private LedOutputFactory() {}
+	
+	/**
+	 * Creates the output configured by the system properties.
+	 * @param ledCount the number of LEDs the output drives
+	 * @return the output
+	 * @throws IOException if the output could not be opened
+	 * @throws IllegalArgumentException if the configured type of output is unknown
+	 */
+	public static LedOutput create(int ledCount) throws IOException {
+		return create(System.getProperty("ledcloud.output", "ws281x"), ledCount);
+	}
+	
+	/**
+	 * Creates an output of the passed type.
+	 * @param type the type of the output (ws281x, null, memory, file or checksum)
+	 * @param ledCount the number of LEDs the output drives
+	 * @return the output
+	 * @throws IOException if the output could not be opened
+	 * @throws IllegalArgumentException if the type of output is unknown
+	 */
+	public static LedOutput create(String type, int ledCount) throws IOException {
+		switch(type.toLowerCase()) {
+			case "ws281x":
+				Ws281xLedStrip lightstrip = new Ws281xLedStrip(ledCount, 21, 800000, 10, 200, 0, false, rpi_ws281xConstants.WS2812_STRIP);
+				return new Ws281xLedOutput(lightstrip, ledCount);
+			case "null":
+				return new NullLedOutput(ledCount);
+			case "memory":
+				return new MemoryLedOutput(ledCount, Integer.getInteger("ledcloud.output.capacity", 1));
+			case "file":
+				return new FileLedOutput(Paths.get(System.getProperty("ledcloud.output.file", "./frames.rgb")), ledCount);
+			case "checksum":
+				return new ChecksumLedOutput(ledCount, Integer.getInteger("ledcloud.output.capacity", 1));
+			default:
+				throw new IllegalArgumentException("Unknown type of LED-output: " + type);
+		}
+	}
+	
+}
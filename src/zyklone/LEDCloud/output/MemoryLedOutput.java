@@ -0,0 +1,60 @@
+package zyklone.LEDCloud.output;
+
+/**
+ * Keeps a copy of the most recently shown frames in memory, e.g. to check the output of the rendering
+ * without any LED-strip attached. The frames are stored in a ring of fixed capacity,
+ * so the oldest frame is overwritten once the capacity is reached.
+ * 
+ * @author Zyklone
+ */
+public class MemoryLedOutput extends AbstractLedOutput {
+	
+	private final int[][] history;
+	private long frames = 0;
+	
+	/**
+	 * @param ledCount the number of LEDs this output pretends to drive
+	 * @param capacity the number of frames that are kept, at least 1
+	 */
+	public MemoryLedOutput(int ledCount, int capacity) {
+		super(ledCount);
+		if(capacity < 1)
+			throw new IllegalArgumentException("At least one frame has to be kept.");
+		this.history = new int[capacity][ledCount];
+	}
+	
+	/**
+	 * Copies the LED-buffer into the ring of frames.
+	 */
+	@Override
+	public synchronized void show() {
+		leds.get(0, history[(int) (frames % history.length)]);
+		frames++;
+	}
+	
+	/**
+	 * @return the number of frames that were shown
+	 */
+	public synchronized long getFrameCount() {
+		return frames;
+	}
+	
+	/**
+	 * Returns a copy of a frame that is still kept in memory.
+	 * @param age 0 for the most recently shown frame, 1 for the one before it, and so on
+	 * @return one packed color (0xRRGGBB) per LED, or null if the frame is not kept (anymore)
+	 */
+	public synchronized int[] getFrame(int age) {
+		if(age < 0 || age >= history.length || age >= frames)
+			return null;
+		return history[(int) ((frames - 1 - age) % history.length)].clone();
+	}
+	
+	/**
+	 * @return a copy of the most recently shown frame, or null if no frame was shown yet
+	 */
+	public int[] getLastFrame() {
+		return getFrame(0);
+	}
+	
+}
@@ -0,0 +1,32 @@
+package zyklone.LEDCloud.output;
+
+/**
+ * Discards every frame. Only counts the number of frames that were shown,
+ * so that the rendering can be run and profiled without any LED-strip attached.
+ * 
+ * @author Zyklone
+ */
+public class NullLedOutput extends AbstractLedOutput {
+	
+	private volatile long frames = 0;
+	
+	/**
+	 * @param ledCount the number of LEDs this output pretends to drive
+	 */
+	public NullLedOutput(int ledCount) {
+		super(ledCount);
+	}
+	
+	@Override
+	public void show() {
+		frames++;
+	}
+	
+	/**
+	 * @return the number of frames that were shown
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+	
+}
@@ -0,0 +1,68 @@
+package zyklone.LEDCloud.output;
+
+import java.nio.IntBuffer;
+
+import com.github.mbelling.ws281x.Ws281xLedStrip;
+
+/**
+ * Copies the LED-buffer into the LED-array of the rpi_ws281x channel driven by a Ws281xLedStrip in a single native call,
+ * through the shim libledcloud-ws281x (built from native/ws281x_bulk.c, see native/Makefile).
+ * The java-wrapper around rpi_ws281x only offers to set the LEDs one by one, so the shim reads the channel
+ * straight out of the wrapper's fields. If the shim is not on the java.library.path, or the wrapper's fields are not found,
+ * no bulk copy is created and the LEDs have to be set one by one.
+ * The bulk copy can be switched off by setting the system property ledcloud.output.ws281x.bulk to false.
+ *
+ * @author Zyklone
+ */
+final class Ws281xBulkCopy {
+	
+	private static final String LIBRARY = "ledcloud-ws281x";
+	
+	/** the address of the rpi_ws281x channel */
+	private final long channel;
+	
+	private Ws281xBulkCopy(long channel) {
+		this.channel = channel;
+	}
+	
+	/**
+	 * @param ledstrip the LED-strip whose channel the LED-buffer should be copied into
+	 * @return the bulk copy, or null if the shim is switched off, can not be loaded or does not find the strip's channel
+	 */
+	static Ws281xBulkCopy open(Ws281xLedStrip ledstrip) {
+		if(!Boolean.parseBoolean(System.getProperty("ledcloud.output.ws281x.bulk", "true")))
+			return null;
+		try {
+			System.loadLibrary(LIBRARY);
+		} catch(UnsatisfiedLinkError ule) {
+			System.out.println("The library " + LIBRARY + " could not be loaded, the LEDs are set one by one: " + ule.getMessage());
+			return null;
+		}
+		long channel = channel(ledstrip);
+		if(channel == 0) {
+			System.out.println("The channel of the LED-strip was not found, the LEDs are set one by one.");
+			return null;
+		}
+		System.out.println("Frames are copied to the LED-strip at once.");
+		return new Ws281xBulkCopy(channel);
+	}
+	
+	/**
+	 * Copies the first LEDs of the LED-buffer into the channel's LED-array.
+	 * @param leds the direct LED-buffer, in native byte order
+	 * @param count the number of LEDs to copy
+	 * @return the number of copied LEDs, which is less than count if the channel drives fewer LEDs
+	 */
+	int copy(IntBuffer leds, int count) {
+		return copy(channel, leds, count);
+	}
+	
+	/**
+	 * @param ledstrip an initialized LED-strip
+	 * @return the address of the rpi_ws281x channel the LED-strip drives, or 0 if it was not found
+	 */
+	private static native long channel(Ws281xLedStrip ledstrip);
+	
+	private static native int copy(long channel, IntBuffer leds, int count);
+
+}
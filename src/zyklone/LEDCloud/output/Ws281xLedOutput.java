@@ -0,0 +1,89 @@
+package zyklone.LEDCloud.output;
+
+import com.github.mbelling.ws281x.Ws281xLedStrip;
+
+/**
+ * Sends the LED-buffer to a WS281x LED-strip.
+ * The java-wrapper around the rpi_ws281x library does not offer a way to hand over all LEDs at once,
+ * so every frame is copied into the library's LED-array by a small native shim in a single call (see Ws281xBulkCopy).
+ * If the shim is not available, this output falls back to setting the LEDs one by one.
+ * To keep the number of native calls down, only LEDs whose color changed since the last frame are set then.
+ * If the caller passes the changed LEDs along (showChanged()), these LEDs are set without comparing them again,
+ * as the caller (e.g. the LedMeshCoordinator) already compared every LED with the last frame.
+ * 
+ * @author Zyklone
+ */
+public class Ws281xLedOutput extends AbstractLedOutput {
+	
+	private final Ws281xLedStrip ledstrip;
+	/** copies the whole LED-buffer at once, or null if the LEDs are set one by one */
+	private final Ws281xBulkCopy bulkCopy;
+	/** the colors that were last set one by one on the LED-strip, compared with the LED-buffer by show() */
+	private final int[] shown;
+	
+	/**
+	 * @param ledstrip the LED-strip, which needs to be freshly initialized (i.e. all LEDs are dark)
+	 * @param ledCount the number of LEDs on the LED-strip
+	 */
+	public Ws281xLedOutput(Ws281xLedStrip ledstrip, int ledCount) {
+		super(ledCount);
+		if(ledstrip == null)
+			throw new IllegalArgumentException("The LED-strip must not be null.");
+		this.ledstrip = ledstrip;
+		this.bulkCopy = Ws281xBulkCopy.open(ledstrip);
+		this.shown = bulkCopy == null ? new int[ledCount] : null;
+	}
+	
+	/**
+	 * Copies the whole LED-buffer to the LED-strip, or sets every LED whose color changed since the last frame,
+	 * and renders the LED-strip.
+	 */
+	@Override
+	public void show() {
+		if(bulkCopy != null) {
+			showAll();
+			return;
+		}
+		for(int i = 0; i < ledCount; i++) {
+			int col = leds.get(i);
+			if(col != shown[i]) {
+				ledstrip.setPixel(i, (col >> 16) & 0xFF, (col >> 8) & 0xFF, col & 0xFF);
+				shown[i] = col;
+			}
+		}
+		ledstrip.render();
+	}
+	
+	/**
+	 * Copies the whole LED-buffer to the LED-strip, or sets only the passed LEDs, trusting that their colors changed,
+	 * and renders the LED-strip.
+	 */
+	@Override
+	public void showChanged(int[] changedLeds, int count) {
+		if(bulkCopy != null) {
+			// a single copy of all LEDs costs less than one native call per changed LED
+			showAll();
+			return;
+		}
+		for(int c = 0; c < count; c++) {
+			int i = changedLeds[c];
+			int col = leds.get(i);
+			ledstrip.setPixel(i, (col >> 16) & 0xFF, (col >> 8) & 0xFF, col & 0xFF);
+			// keep track of the colors, so a later call of show() only sets the LEDs that changed
+			shown[i] = col;
+		}
+		ledstrip.render();
+	}
+	
+	/**
+	 * Copies the whole LED-buffer into the library's LED-array and renders the LED-strip.
+	 */
+	private void showAll() {
+		// the wrapper synchronizes on the LED-strip, so the LED-array is not changed while it is rendered
+		synchronized(ledstrip) {
+			bulkCopy.copy(leds, ledCount);
+		}
+		ledstrip.render();
+	}
+
+}
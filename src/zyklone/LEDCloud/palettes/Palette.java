@@ -0,0 +1,149 @@
+package zyklone.LEDCloud.palettes;
+
+import java.util.Arrays;
+
+import zyklone.LEDCloud.rendering.FrameBuffer;
+
+/**
+ * A palette is a precomputed, cyclic gradient of packed colors (0xRRGGBB), that patterns pick their colors from by index.
+ * Palettes can not be changed once they are created, so one palette can be shared by any number of patterns and threads.
+ * Two palettes holding the same colors are equal (see PaletteRegistry, which keeps only one palette for every content).
+ *
+ * @author Zyklone
+ */
+public final class Palette {
+	
+	/** the number of colors in the rainbow, and in every gradient created from stops by default */
+	public static final int DEFAULT_SIZE = 1530;
+	/** the colors of a rainbow, running from red over yellow, green, cyan, blue and magenta back to red */
+	public static final Palette RAINBOW = new Palette(createRainbow());
+	
+	/** packed colors (0xRRGGBB) */
+	private final int[] colors;
+	/** hash of all colors, calculated once */
+	private final int hash;
+	
+	/**
+	 * @param colors the packed colors (0xRRGGBB) of the palette, which are copied
+	 * @throws IllegalArgumentException if no colors are passed
+	 */
+	public Palette(int[] colors) {
+		if(colors.length == 0)
+			throw new IllegalArgumentException("A palette needs at least one color.");
+		this.colors = colors.clone();
+		this.hash = Arrays.hashCode(this.colors);
+	}
+	
+	/**
+	 * Creates a cyclic gradient, that runs through the passed stops and from the last stop back to the first.
+	 * Every stop is placed at the passed position (0 is the beginning of the palette, 1 its end),
+	 * the colors between two stops are interpolated linearly.
+	 * @param size the number of colors of the palette
+	 * @param positions the position of every stop, within 0 and 1 and in ascending order
+	 * @param stopColors the packed color (0xRRGGBB) of every stop
+	 * @return the gradient
+	 * @throws IllegalArgumentException if the size is not positive, if there are no stops,
+	 * if the number of positions and colors differs, or if a position is out of range or out of order
+	 */
+	public static Palette gradient(int size, float[] positions, int[] stopColors) {
+		if(size < 1)
+			throw new IllegalArgumentException("A palette needs at least one color.");
+		if(positions.length == 0 || positions.length != stopColors.length)
+			throw new IllegalArgumentException("A gradient needs at least one stop and a color for every stop.");
+		for(int i = 0; i < positions.length; i++) {
+			if(!(positions[i] >= 0 && positions[i] <= 1) || (i > 0 && positions[i] < positions[i-1]))
+				throw new IllegalArgumentException("The positions of a gradient's stops need to be ascending and within 0 and 1.");
+		}
+		int[] colors = new int[size];
+		int next = 0;
+		for(int i = 0; i < size; i++) {
+			float position = (float) i / size;
+			while(next < positions.length && positions[next] <= position)
+				next++;
+			// the stops around the position, the first stop is repeated one cycle later after the last stop
+			int from = next == 0 ? positions.length - 1 : next - 1;
+			int to = next == positions.length ? 0 : next;
+			float start = next == 0 ? positions[from] - 1 : positions[from];
+			float end = next == positions.length ? positions[to] + 1 : positions[to];
+			float amount = end > start ? (position - start) / (end - start) : 0;
+			colors[i] = lerp(stopColors[from], stopColors[to], amount);
+		}
+		return new Palette(colors);
+	}
+	
+	/**
+	 * @param a the first packed color
+	 * @param b the second packed color
+	 * @param amount the share of the second color, within 0 and 1
+	 * @return the packed color between both colors
+	 */
+	private static int lerp(int a, int b, float amount) {
+		return FrameBuffer.rgb(Math.round(FrameBuffer.red(a) + (FrameBuffer.red(b) - FrameBuffer.red(a)) * amount),
+				Math.round(FrameBuffer.green(a) + (FrameBuffer.green(b) - FrameBuffer.green(a)) * amount),
+				Math.round(FrameBuffer.blue(a) + (FrameBuffer.blue(b) - FrameBuffer.blue(a)) * amount));
+	}
+	
+	/**
+	 * @return the gradually changing colors, that imitate the colors of a rainbow
+	 */
+	private static int[] createRainbow() {
+		int[] colors = new int[DEFAULT_SIZE];
+		int index = 0;
+		int red=255, green=0, blue=0;
+		for(green=0; green<255; green++) {
+			colors[index++] = FrameBuffer.rgb(red, green, blue);
+		}
+		for(red=255; red>0; red--) {
+			colors[index++] = FrameBuffer.rgb(red, green, blue);
+		}
+		for(blue=0; blue<255; blue++) {
+			colors[index++] = FrameBuffer.rgb(red, green, blue);
+		}
+		for(green=255; green>0; green--) {
+			colors[index++] = FrameBuffer.rgb(red, green, blue);
+		}
+		for(red=0; red<255; red++) {
+			colors[index++] = FrameBuffer.rgb(red, green, blue);
+		}
+		for(blue=255; blue>0; blue--) {
+			colors[index++] = FrameBuffer.rgb(red, green, blue);
+		}
+		return colors;
+	}
+	
+	/**
+	 * @param index the index of the color, which may exceed the palette's size, as the palette repeats itself
+	 * @return the packed color (0xRRGGBB) at the passed index
+	 */
+	public int get(int index) {
+		return colors[Math.floorMod(index, colors.length)];
+	}
+	
+	/**
+	 * @return the number of colors of the palette
+	 */
+	public int size() {
+		return colors.length;
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if(this == other)
+			return true;
+		if(!(other instanceof Palette))
+			return false;
+		Palette palette = (Palette) other;
+		return hash == palette.hash && Arrays.equals(colors, palette.colors);
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	@Override
+	public String toString() {
+		return "Palette of " + colors.length + " colors";
+	}
+
+}
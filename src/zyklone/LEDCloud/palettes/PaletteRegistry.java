@@ -0,0 +1,110 @@
+package zyklone.LEDCloud.palettes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import zyklone.LEDCloud.rendering.FrameBuffer;
+
+/**
+ * Keeps the palettes that can be selected by name: the built-in rainbow, sunrise and ocean palettes,
+ * as well as the palettes defined at runtime (e.g. uploaded over the network).
+ * Palettes are cached by their content, so a palette with the same colors as one that is already known
+ * is not kept twice, but the known palette is shared instead (see intern()).
+ * A palette that is no longer registered under any name is dropped from the cache,
+ * patterns that still use it keep their reference.
+ * As palettes can be defined by any client, the number of palettes defined at runtime is limited via the system property
+ * ledcloud.palettes.max (default 64); beyond that, only palettes that replace a palette of the same name are registered.
+ * All methods are thread-safe.
+ *
+ * @author Zyklone
+ */
+public class PaletteRegistry {
+	
+	/** the name of the palette every registry starts with */
+	public static final String RAINBOW = "rainbow";
+	
+	private final Map<String, Palette> names = new HashMap<>();
+	/** the maximum number of names registered in addition to the built-in palettes */
+	private final int maxDefined = Integer.getInteger("ledcloud.palettes.max", 64);
+	/** the number of names of the built-in palettes */
+	private final int builtIn;
+	/** every palette registered under at least one name, mapped to itself */
+	private final Map<Palette, Palette> cache = new HashMap<>();
+	
+	/**
+	 * Creates a registry holding the built-in palettes.
+	 */
+	public PaletteRegistry() {
+		register(RAINBOW, Palette.RAINBOW);
+		define("sunrise", new float[] {0f, 0.25f, 0.45f, 0.6f, 0.75f},
+				new int[] {FrameBuffer.rgb(16, 16, 74), FrameBuffer.rgb(106, 27, 106), FrameBuffer.rgb(255, 64, 32),
+						FrameBuffer.rgb(255, 154, 32), FrameBuffer.rgb(255, 224, 112)});
+		define("ocean", new float[] {0f, 0.3f, 0.55f, 0.7f, 0.85f},
+				new int[] {FrameBuffer.rgb(0, 16, 64), FrameBuffer.rgb(0, 80, 160), FrameBuffer.rgb(0, 160, 192),
+						FrameBuffer.rgb(64, 224, 208), FrameBuffer.rgb(0, 112, 160)});
+		builtIn = names.size();
+	}
+	
+	/**
+	 * @param palette a palette
+	 * @return the cached palette with the same colors as the passed palette, or the passed palette if there is none
+	 */
+	public synchronized Palette intern(Palette palette) {
+		Palette cached = cache.get(palette);
+		return cached == null ? palette : cached;
+	}
+	
+	/**
+	 * Registers a palette under the passed name, replacing the palette that was registered under that name before.
+	 * A new name is only registered while the number of palettes defined at runtime is below the maximum (see getMaxDefined()).
+	 * @param name the name of the palette
+	 * @param palette the palette
+	 * @return the palette that is registered now, which is an already cached palette with the same colors, if there is one,
+	 * or null if the name is new and the maximum number of palettes is reached
+	 */
+	public synchronized Palette register(String name, Palette palette) {
+		// builtIn is still 0 while the constructor registers the built-in palettes
+		if(builtIn > 0 && names.size() - builtIn >= maxDefined && !names.containsKey(name))
+			return null;
+		Palette shared = cache.computeIfAbsent(palette, p -> p);
+		Palette previous = names.put(name, shared);
+		if(previous != null && previous != shared && !names.containsValue(previous))
+			cache.remove(previous);
+		return shared;
+	}
+	
+	/**
+	 * Creates a gradient of the default size from the passed stops and registers it under the passed name.
+	 * @param name the name of the palette
+	 * @param positions the position of every stop, within 0 and 1 and in ascending order
+	 * @param stopColors the packed color (0xRRGGBB) of every stop
+	 * @return the palette that is registered now, or null if the name is new and the maximum number of palettes is reached
+	 * @throws IllegalArgumentException if the stops are invalid (see Palette.gradient())
+	 */
+	public Palette define(String name, float[] positions, int[] stopColors) {
+		return register(name, Palette.gradient(Palette.DEFAULT_SIZE, positions, stopColors));
+	}
+	
+	/**
+	 * @param name the name of the palette
+	 * @return the palette registered under the passed name, or null if there is none
+	 */
+	public synchronized Palette get(String name) {
+		return names.get(name);
+	}
+	
+	/**
+	 * @return the maximum number of palettes that can be defined at runtime, in addition to the built-in palettes
+	 */
+	public int getMaxDefined() {
+		return maxDefined;
+	}
+	
+	/**
+	 * @return the number of different palettes, palettes registered under several names are counted once
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+}
@@ -1,17 +1,21 @@
 package zyklone.LEDCloud.patterns;
 
-import java.awt.Color;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.Random;
 
+import zyklone.LEDCloud.rendering.BlendOp;
+import zyklone.LEDCloud.rendering.FrameBuffer;
+
 
 /**
  * The BackdroundPattern class represents a pattern across the cloud's whole led-matrix.
  * It is comprised of a base-color that is applied to the whole cloud as well as
  * a constantly changing list of LocalPatterns that use a low color-intensity color with a heavy blue tone.
- * Every picture of the BackgroundPattern is generated by adding up all of the BackgroundPattern's LocalPatterns
- * on top of the base-color that is applied to the complete picture first.
+ * Every picture of the BackgroundPattern is generated by drawing all of the BackgroundPattern's LocalPatterns
+ * on top of the base-color that is applied to the complete target picture first.
+ * The BackgroundPattern does not need a picture of its own, everything is drawn directly into the target.
+ * LocalPatterns that have reached their lifetime are kept in a PatternPool and reused for the following patterns.
+ * Seeding the BackgroundPattern (see setSeed()) also seeds the pool, so all background-patterns become reproducible.
  * 
  * @author Zyklone
  */
@@ -19,9 +23,10 @@ public class BackgroundPattern extends Pattern {
 	
 	/** the list of patterns this Pattern is comprised of */
 	private ArrayList<LocalPattern> patterns = new ArrayList<>();
-	/** the base-color that is applied to the whole cloud */
-	private Color baseColor = new Color(7, 7, 10);
+	/** the packed base-color (0xRRGGBB) that is applied to the whole cloud */
+	private int baseColor = FrameBuffer.rgb(7, 7, 10);
 	private Random rand = new Random();
+	private final PatternPool pool;
 
 	/**
 	 * Standard constructor.
@@ -30,114 +35,107 @@ public class BackgroundPattern extends Pattern {
 	 */
 	public BackgroundPattern(int pictureSizeX, int pictureSizeY) {
 		super(pictureSizeX, pictureSizeY);
+		this.pool = new PatternPool(pictureSizeX, pictureSizeY);
 	}
 	
 	/**
 	 * Standard constructor that initializes the BackGroundPattern's base-color.
 	 * @param pictureSizeX the length in the x-axis of the led-matrix
 	 * @param pictureSizeY the length in the y-axis of the led-matrix
-	 * @param baseColor the base-Color that should be applied to the whole picture
+	 * @param baseColor the packed base-color (0xRRGGBB) that should be applied to the whole picture
 	 */
-	public BackgroundPattern(int pictureSizeX, int pictureSizeY, Color baseColor) {
-		super(pictureSizeX, pictureSizeY);
+	public BackgroundPattern(int pictureSizeX, int pictureSizeY, int baseColor) {
+		this(pictureSizeX, pictureSizeY);
 		this.baseColor = baseColor;
 	}
 	
 	/**
-	 * Initializes the picture by creating the required lists
-	 * and setting all the picture's pixels to the base-color.
-	 */
-	@Override
-	protected void initializePicture() {
-		// initialize array
-		this.picture = new ArrayList<>(pictureSizeY);
-		for(int i = 0; i < this.pictureSizeY; i++) {
-			ArrayList<Color> row = new ArrayList<Color>(pictureSizeX);
-			picture.add(row);
-			for(int j = 0; j < pictureSizeX; j++) {
-				row.add(this.baseColor);
-			}
-		}
-	}
-	
-	/**
-	 * Sets all of the pictures pixels to the base-color.
+	 * Combines all of the target's pixels inside the rectangle with the base-color.
+	 * @param target the picture the base-color is drawn into
+	 * @param op the operation used to combine the base-color with the target's pixels
+	 * @param minX the smallest x-coordinate of the rectangle
+	 * @param minY the smallest y-coordinate of the rectangle
+	 * @param maxX the biggest x-coordinate of the rectangle
+	 * @param maxY the biggest y-coordinate of the rectangle
 	 */
-	protected void setBackGround() {
-		for(int i = 0; i < this.picture.size(); i++) {
-			for(int j = 0; j < this.picture.get(0).size(); j++) {
-				this.picture.get(i).set(j, this.baseColor);
-			}
-		}
+	protected void setBackGround(FrameBuffer target, BlendOp op, int minX, int minY, int maxX, int maxY) {
+		target.blendColor(this.baseColor, op, minX, minY, maxX, maxY);
 	}
 	
 	/**
-	 * Creates a new pattern and adds it to the list of background-patterns.
+	 * Takes a pattern from the pool (or creates a new one) and adds it to the list of background-patterns.
 	 * The type of pattern to be added is randomly chosen.
 	 */
 	private void addPatternToList() {
 		switch(rand.nextInt(3)) {
-		case 0: patterns.add(new DotPattern(pictureSizeX, pictureSizeY, true));
+		case 0: patterns.add(pool.acquireDot(true));
 			break;
-		case 1:	patterns.add(new WallPattern(pictureSizeX, pictureSizeY, true));
+		case 1:	patterns.add(pool.acquireWall(true));
 			break;
-		case 2:	patterns.add(new WavePattern(pictureSizeX, pictureSizeY, true));
+		case 2:	patterns.add(pool.acquireWave(true));
 			break;
 		}
 	}
 
 	/**
-	 * Calculates and returns the next background-picture.
-	 * @return the last calculated picture of this pattern.
+	 * Calculates the next picture of all background-patterns.
+	 * The BackgroundPattern never reaches the end of its lifetime.
 	 */
 	@Override
-	public ArrayList<ArrayList<Color>> getNextPicture() {
-		if(this.picture == null)
-			initializePicture();
-		else 
-			setBackGround();
-
+	public boolean advance(long frameTimeNanos) {
 		if(patterns.size() <= 2 || rand.nextInt(50) == 0)
 			addPatternToList();
 		
-		// add up all patterns
-		drawAllBackgroundPatterns();
+		for(int i = 0; i < patterns.size(); i++) {
+			LocalPattern current = patterns.get(i);
+			// if pattern has reached lifetime, remove it from list and keep it for later
+			if(!current.advance(frameTimeNanos)) {
+				patterns.remove(i--);
+				pool.release(current);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Draws the base-color and all background-patterns into the target picture.
+	 */
+	@Override
+	public void draw(FrameBuffer target, BlendOp op, int minX, int minY, int maxX, int maxY) {
+		setBackGround(target, op, minX, minY, maxX, maxY);
 		
-		return picture;
+		// add up all patterns
+		drawAllBackgroundPatterns(target, op, minX, minY, maxX, maxY);
 	}
 
 	/**
-	 * Calculates this class' picture by adding up all of the patterns
-	 * in the list of background-patterns.
+	 * Seeds the random numbers choosing the background-patterns, as well as the ones of the patterns themselves.
+	 * @param seed the seed
 	 */
-	protected void drawAllBackgroundPatterns() {
-		for(Iterator<LocalPattern> it = patterns.iterator(); it.hasNext();) {
-			LocalPattern current = it.next();
-			ArrayList<ArrayList<Color>> tempPic = current.getNextPicture();
-			// if pattern has reached lifetime, remove it from list
-			if(tempPic == null) {
-				it.remove();
-				continue;
-			}
-			for(int y = 0; y < picture.size(); y++) {
-				for(int x = 0; x < picture.get(0).size(); x++) {
-					Color tempColor = tempPic.get(y).get(x);
-					// only add pixel, if it is not dark
-					if(tempColor.getRed() != 0 || tempColor.getGreen() != 0 || tempColor.getBlue() != 0) {
-						Color comColor = picture.get(y).get(x);
-						int red = comColor.getRed() + tempColor.getRed();
-						if(red > 255)
-							red = 255;
-						int green = comColor.getGreen() + tempColor.getGreen();
-						if(green > 255)
-							green = 255;
-						int blue = comColor.getBlue() + tempColor.getBlue();
-						if(blue > 255)
-							blue = 255;
-						picture.get(y).set(x, new Color(red, green, blue));
-					}	
-				}
-			}
+	public void setSeed(long seed) {
+		rand.setSeed(seed);
+		pool.setSeed(rand.nextLong());
+	}
+	
+	/**
+	 * @return the pool keeping the background-patterns that have reached their lifetime
+	 */
+	public PatternPool getPool() {
+		return pool;
+	}
+	
+	/**
+	 * Draws all of the patterns in the list of background-patterns into a rectangle of the target picture.
+	 * @param target the picture the patterns are drawn into
+	 * @param op the operation used to combine the patterns' pixels with the target's pixels
+	 * @param minX the smallest x-coordinate of the rectangle
+	 * @param minY the smallest y-coordinate of the rectangle
+	 * @param maxX the biggest x-coordinate of the rectangle
+	 * @param maxY the biggest y-coordinate of the rectangle
+	 */
+	protected void drawAllBackgroundPatterns(FrameBuffer target, BlendOp op, int minX, int minY, int maxX, int maxY) {
+		for(int i = 0; i < patterns.size(); i++) {
+			patterns.get(i).draw(target, op, minX, minY, maxX, maxY);
 		}
 	}
 
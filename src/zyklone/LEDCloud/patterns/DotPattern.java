@@ -1,10 +1,20 @@
 package zyklone.LEDCloud.patterns;
 
+import zyklone.LEDCloud.patterns.StampCache.Stamp;
+
 /**
  * This specialization of LocalPattern represents a fully lit circle.
  * @author Zyklone
  */
 public class DotPattern extends LocalPattern {
+	
+	/** identifies the dots' stamps in the StampCache */
+	private static final int SHAPE = 1;
+	private static final Integer BACKGROUND_MAX_SIZE = 11;
+	private static final Float BACKGROUND_MAX_VELOCITY = 6.0f;
+	private static final Float BACKGROUND_MAX_ACCELERATION = 1.0f;
+	private static final Float BACKGROUND_GLOW = 0.7f;
+	private static final Float DEFAULT = -1f;
 
 	/**
 	 * This constructor initializes the Pattern with its default values.
@@ -24,10 +34,10 @@ public class DotPattern extends LocalPattern {
 	 */
 	public DotPattern(int pictureSizeX, int pictureSizeY, boolean backgroundPattern) {
 		super(pictureSizeX, pictureSizeY, 0, 
-				backgroundPattern ? Integer.valueOf(11) : null,				// maxSize
-				backgroundPattern ? Float.valueOf(6.0f) : Float.valueOf(-1), 	// maxVelocity
-				backgroundPattern ? Float.valueOf(1.0f) : Float.valueOf(-1), 	// maxAcceleration
-				backgroundPattern ? Float.valueOf(0.7f) : Float.valueOf(-1)); // glow
+				backgroundPattern ? BACKGROUND_MAX_SIZE : null,				// maxSize
+				backgroundPattern ? BACKGROUND_MAX_VELOCITY : DEFAULT, 		// maxVelocity
+				backgroundPattern ? BACKGROUND_MAX_ACCELERATION : DEFAULT, 	// maxAcceleration
+				backgroundPattern ? BACKGROUND_GLOW : DEFAULT); 			// glow
 		if(backgroundPattern) 
 			super.setBackgroundPatternColor();
 	}
@@ -53,21 +63,66 @@ public class DotPattern extends LocalPattern {
 			super.setBackgroundPatternColor();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * The attributes are initialized like the ones of a pattern created via DotPattern(int, int, boolean).
+	 */
+	@Override
+	public void reset(boolean backgroundPattern) {
+		if(backgroundPattern) {
+			resetAttributes(0, BACKGROUND_MAX_SIZE, BACKGROUND_MAX_VELOCITY, BACKGROUND_MAX_ACCELERATION, BACKGROUND_GLOW);
+			super.setBackgroundPatternColor();
+		} else {
+			resetAttributes();
+		}
+	}
+	
 	/**
 	 * Draws the pattern in the form of a dot / fully filled circle with the size-attribute as its diameter.
+	 * The dot is rasterized only if its stamp is not cached yet.
 	 */
 	@Override
 	protected void drawPattern() {
+		int subX = StampCache.quantizeSubPixel(currentX);
+		int subY = StampCache.quantizeSubPixel(currentY);
+		long key = StampCache.key(SHAPE, size, 0, 0, subX, subY);
+		Stamp stamp = stamps.get(key);
+		if(stamp == null) {
+			stamp = rasterize(size, StampCache.subPixelToFixed(subX), StampCache.subPixelToFixed(subY));
+			stamps.put(key, stamp);
+		}
+		drawStamp(stamp);
+	}
+	
+	/**
+	 * Collects all pixels within a dot.
+	 * Distances are compared squared, so no square root is needed.
+	 * @param size the diameter of the dot
+	 * @param centerX the x-coordinate of the dot's center within the pixel at (0, 0), in fixed point
+	 * @param centerY the y-coordinate of the dot's center within the pixel at (0, 0), in fixed point
+	 * @return the stamp of the dot
+	 */
+	private static Stamp rasterize(int size, int centerX, int centerY) {
+		int radius = FixedPoint.fromInt(size) / 2;
+		long radiusSquared = (long) radius * radius;
+		int reach = size / 2 + 1;
+		int[] offsetX = new int[(2*reach + 1) * (2*reach + 1)];
+		int[] offsetY = new int[offsetX.length];
+		int count = 0;
 		// y coordinates containing complete dot
-		for(int y = (int)(currentY - ((float)size/2)); y <= (currentY + ((float)size/2)); y++) {
+		for(int y = -reach; y <= reach; y++) {
+			long deltaY = FixedPoint.fromInt(y) - centerY;
 			// x coordinates containing complete dot
-			for(int x = (int)(currentX - ((float)size/2)); x <= (currentX + ((float)size/2)); x++) {
+			for(int x = -reach; x <= reach; x++) {
+				long deltaX = FixedPoint.fromInt(x) - centerX;
 				// check if coordinates are actually within the dot
-				if(Math.sqrt(Math.pow((x - currentX), 2) + Math.pow((y - currentY), 2)) < ((float)size)/2) {
-					drawPixel(x, y);
+				if(deltaX * deltaX + deltaY * deltaY < radiusSquared) {
+					offsetX[count] = x;
+					offsetY[count++] = y;
 				}
 			}
 		}
+		return new Stamp(offsetX, offsetY, count);
 	}
 	
 
@@ -0,0 +1,134 @@
+package zyklone.LEDCloud.patterns;
+
+/**
+ * Helpers for the fixed-point arithmetic used to move the LocalPatterns.
+ * Positions, velocities and accelerations are stored as ints with 16 fractional bits (i.e. 1.0 = 65536),
+ * angles are stored as fractions of a full turn, where a full turn equals 65536 (so angles wrap around by themselves when masked).
+ * Sine and cosine are read from a table of 4096 entries, which is filled once when the class is loaded,
+ * so moving a pattern or drawing its pixels does not need any trigonometric functions.
+ * The quantization error of the table is below 0.0008, i.e. far less than a single LED on the cloud's mesh.
+ * 
+ * @author Zyklone
+ */
+public final class FixedPoint {
+	
+	/** the number of fractional bits */
+	public static final int SHIFT = 16;
+	/** 1.0 in fixed point */
+	public static final int ONE = 1 << SHIFT;
+	/** a full turn (2 PI) as an angle */
+	public static final int TURN = 1 << 16;
+	/** half a turn (PI) as an angle */
+	public static final int HALF_TURN = TURN / 2;
+	/** a quarter of a turn (PI/2) as an angle */
+	public static final int QUARTER_TURN = TURN / 4;
+	
+	private static final int TABLE_BITS = 12;
+	private static final int TABLE_SHIFT = 16 - TABLE_BITS;
+	/** added before looking up an angle, so it is rounded to the nearest entry instead of being cut off */
+	private static final int TABLE_ROUND = 1 << (TABLE_SHIFT - 1);
+	/** sine of every 4096th part of a turn, in fixed point */
+	private static final int[] SIN = new int[1 << TABLE_BITS];
+	
+	static {
+		for(int i = 0; i < SIN.length; i++) {
+			SIN[i] = (int) Math.round(Math.sin(i * 2 * Math.PI / SIN.length) * ONE);
+		}
+	}
+	
+	private FixedPoint() {}
+	
+	/**
+	 * @param value a float value
+	 * @return the value in fixed point, rounded to the nearest representable value
+	 */
+	public static int toFixed(float value) {
+		return Math.round(value * ONE);
+	}
+	
+	/**
+	 * @param value an integer value
+	 * @return the value in fixed point
+	 */
+	public static int fromInt(int value) {
+		return value << SHIFT;
+	}
+	
+	/**
+	 * @param fixed a value in fixed point
+	 * @return the value as float
+	 */
+	public static float toFloat(int fixed) {
+		return fixed / (float) ONE;
+	}
+	
+	/**
+	 * Cuts off the fractional part, rounding towards zero like a cast from float to int does.
+	 * @param fixed a value in fixed point
+	 * @return the integral part of the value
+	 */
+	public static int truncate(int fixed) {
+		return fixed >= 0 ? fixed >> SHIFT : -(-fixed >> SHIFT);
+	}
+	
+	/**
+	 * @param a a value in fixed point
+	 * @param b a value in fixed point
+	 * @return the product of both values in fixed point
+	 */
+	public static int mul(int a, int b) {
+		return (int) (((long) a * b) >> SHIFT);
+	}
+	
+	/**
+	 * Integrates a rate over a period of time, e.g. to get the distance travelled at a velocity.
+	 * @param perSecond the rate per second, in fixed point (or an angle per second)
+	 * @param timeInMs the period of time in milliseconds
+	 * @return the change over the period, in fixed point (or as an angle)
+	 */
+	public static int integrate(int perSecond, long timeInMs) {
+		return (int) ((long) perSecond * timeInMs / 1000);
+	}
+	
+	/**
+	 * Converts radians into an angle. The result is not wrapped around, so it can also be used for changes of angles.
+	 * @param radians the angle in radians
+	 * @return the angle, where a full turn equals TURN
+	 */
+	public static int toAngle(double radians) {
+		return (int) Math.round(radians / (2 * Math.PI) * TURN);
+	}
+	
+	/**
+	 * @param angle an angle, which may lie outside of a single turn
+	 * @return the same angle within 0 (inclusive) and TURN (exclusive)
+	 */
+	public static int wrapAngle(int angle) {
+		return angle & (TURN - 1);
+	}
+	
+	/**
+	 * @param angle an angle
+	 * @return the angle in radians, within 0 and 2 PI
+	 */
+	public static float toRadians(int angle) {
+		return (float) (wrapAngle(angle) * 2 * Math.PI / TURN);
+	}
+	
+	/**
+	 * @param angle an angle, which may lie outside of a single turn
+	 * @return the sine of the angle in fixed point
+	 */
+	public static int sin(int angle) {
+		return SIN[wrapAngle(angle + TABLE_ROUND) >> TABLE_SHIFT];
+	}
+	
+	/**
+	 * @param angle an angle, which may lie outside of a single turn
+	 * @return the cosine of the angle in fixed point
+	 */
+	public static int cos(int angle) {
+		return SIN[wrapAngle(angle + QUARTER_TURN + TABLE_ROUND) >> TABLE_SHIFT];
+	}
+
+}
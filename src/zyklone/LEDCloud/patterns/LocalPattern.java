@@ -1,14 +1,27 @@
 package zyklone.LEDCloud.patterns;
 
-import java.awt.Color;
-import java.util.ArrayList;
 import java.util.Random;
 
+import zyklone.LEDCloud.rendering.BlendOp;
+import zyklone.LEDCloud.rendering.DirtyRegion;
+import zyklone.LEDCloud.rendering.FrameBuffer;
+import zyklone.LEDCloud.rendering.PixelKernels;
+
 /**
  * Represents a base class for variable patterns that only affect a part of whole picture.
  * This is done by incorporating attributes like position, size, velocity, direction.
  * The LocalPattern class provides all the base-functionality for calculating pictures depending on the set attributes,
  * a subclass simply has to implement the drawPattern()-method to define the form of the pattern.
+ * As the pattern leaves a glowing trail behind, every LocalPattern keeps its own picture,
+ * which is faded and drawn into every frame before it is combined with the shared target picture.
+ * A bounding box around the pattern's shape and its fading trail (dirty) is kept up to date,
+ * so that fading and combining the picture only visits the pixels that may actually be lit.
+ * Position, velocity, acceleration and direction are kept in fixed point (see FixedPoint),
+ * so moving the pattern and drawing its shape does not need any floating point or trigonometric functions.
+ * Subclasses may keep the pixels covered by their shape in the shared StampCache and draw them via drawStamp().
+ * The capacity of the cache can be set via the system property ledcloud.stamps.capacity (default 1024).
+ * Once a pattern has reached its lifetime, it can be prepared to be shown again via reset(),
+ * which pseudo-randomly initializes its attributes anew but keeps its picture, so that it can be reused (see PatternPool).
  * Subclasses can directly access all of the attributes,
  * but a constructor for initializing the most important attributes is provided nonetheless.
  * 
@@ -17,8 +30,10 @@ import java.util.Random;
 public abstract class LocalPattern extends Pattern{
 	
 	protected Random rand = new Random();
-	protected float currentX;
-	protected float currentY;
+	/** x-coordinate of the pattern's center, in fixed point */
+	protected int currentX;
+	/** y-coordinate of the pattern's center, in fixed point */
+	protected int currentY;
 	protected long lifespan;
 	protected long startTime;
 	protected long currentTime;
@@ -30,13 +45,24 @@ public abstract class LocalPattern extends Pattern{
 	 * This value is applied to the whole picture (which then represents the faded, old picture),
 	 * before the next picture is calculated and applied to the old one.*/
 	protected float glow;
-	protected float velocity;
+	/** in units/s, in fixed point */
+	protected int velocity;
 	protected float maxVelocity;
-	protected float acceleration;
+	/** in units/s, in fixed point */
+	protected int acceleration;
 	protected float maxAcceleration;
-	protected float direction; // in radian
-	protected float directionChange; // direction : directionChange = velocity : acceleration
-	protected Color color;
+	/** as a FixedPoint angle; like the radians it replaced, it is not wrapped around after a full turn */
+	protected int direction;
+	/** as a FixedPoint angle per second; direction : directionChange = velocity : acceleration */
+	protected int directionChange;
+	/** packed color (0xRRGGBB) */
+	protected int color;
+	/** the stamps of all LocalPatterns */
+	protected static final StampCache stamps = new StampCache(Integer.getInteger("ledcloud.stamps.capacity", 1024));
+	/** the relative speed of the y-axis compared to the x-axis, in fixed point */
+	private static final int Y_SPEED = FixedPoint.toFixed(0.8f);
+	/** encloses all lit pixels of the picture; pixels outside of it are dark */
+	protected DirtyRegion dirty = new DirtyRegion();
 
 	
 	/**
@@ -47,14 +73,7 @@ public abstract class LocalPattern extends Pattern{
 	 */
 	public LocalPattern(int pictureSizeX, int pictureSizeY) {
 		super(pictureSizeX, pictureSizeY);
-		initialize();
-		this.lifespan = rand.nextInt(7000) + 6000;			// lifespan of 6 - 13 seconds
-		this.size = rand.nextInt(4) + 3;					// default size of 3 to 6 units
-		this.velocity = rand.nextInt(50) / 10f + 3f;		// default velocity of 3 to 8 units/s
-		this.maxVelocity = 8.0f;	
-		this.acceleration = ((rand.nextFloat() * 5) - 2.5f); 	// default acceleration of -2.5 to 2.5 units/s
-		this.maxAcceleration = 2.5f;
-		this.glow = rand.nextFloat()/5 + 0.4f;	// default glow of 0.4 to 0.6; the perceived glow is automagically longer, the faster the pattern travels
+		resetAttributes();
 	}
 	
 	/**
@@ -73,7 +92,46 @@ public abstract class LocalPattern extends Pattern{
 	public LocalPattern(int pictureSizeX, int pictureSizeY, int maxLifetimeInMs,
 			Integer maxSize, Float maxVelocity, Float maxAcceleration, Float averageGlow) {
 		super(pictureSizeX, pictureSizeY);
-		initialize();
+		resetAttributes(maxLifetimeInMs, maxSize, maxVelocity, maxAcceleration, averageGlow);
+	}
+	
+	/**
+	 * Prepares the pattern to be shown again from the start, like a newly created pattern.
+	 * All attributes are pseudo-randomly initialized anew, the picture is darkened and reused.
+	 * @param backgroundPattern true, if this pattern is part of a BackgroundPattern, otherwise false
+	 */
+	public abstract void reset(boolean backgroundPattern);
+	
+	/**
+	 * Initializes all the attributes to default values which are configured for DotPattern,
+	 * but could be used for any other LocalPattern as well.
+	 * @see #LocalPattern(int, int)
+	 */
+	protected void resetAttributes() {
+		resetState();
+		this.lifespan = rand.nextInt(7000) + 6000;			// lifespan of 6 - 13 seconds
+		this.size = rand.nextInt(4) + 3;					// default size of 3 to 6 units
+		this.velocity = FixedPoint.toFixed(rand.nextInt(50) / 10f + 3f);		// default velocity of 3 to 8 units/s
+		this.maxVelocity = 8.0f;	
+		this.acceleration = FixedPoint.toFixed((rand.nextFloat() * 5) - 2.5f); 	// default acceleration of -2.5 to 2.5 units/s
+		this.maxAcceleration = 2.5f;
+		this.glow = rand.nextFloat()/5 + 0.4f;	// default glow of 0.4 to 0.6; the perceived glow is automagically longer, the faster the pattern travels
+	}
+	
+	/**
+	 * Sets most of the object's attributes according to the passed parameters.
+	 * If a null value is passed, the corresponding attributes are set to null
+	 * (except for the size, which would be initialized with a default value).
+	 * If an invalid value is passed, the corresponding attributes are initialized with default values.
+	 * @param maxLifetimeInMs the maximum lifetime the instance of this class should have
+	 * @param maxSize the maximum size this pattern should have
+	 * @param maxVelocity the the maximum velocity this pattern should have
+	 * @param maxAcceleration the the maximum acceleration this pattern should have
+	 * @param averageGlow a rough value of the amount of glow this pattern should have
+	 * @see #LocalPattern(int, int, int, Integer, Float, Float, Float)
+	 */
+	protected void resetAttributes(int maxLifetimeInMs, Integer maxSize, Float maxVelocity, Float maxAcceleration, Float averageGlow) {
+		resetState();
 		
 		if(maxLifetimeInMs >= 2000)
 			lifespan = rand.nextInt(maxLifetimeInMs*2/3) + maxLifetimeInMs/3;	// lifespan of at least a third of maxLifetimeInMs
@@ -87,25 +145,25 @@ public abstract class LocalPattern extends Pattern{
 		
 		if(maxVelocity == null) {
 			this.maxVelocity = 0.0f;
-			this.velocity =  0.0f;
+			this.velocity =  0;
 		}
 		else if(maxVelocity>=2.0f) {
 			this.maxVelocity = maxVelocity;
-			this.velocity =  rand.nextInt((int)(maxVelocity*70)) / 100f + maxVelocity*0.3f;	// max speed = lowest starting speed = 0.3*maxVelocity
+			this.velocity =  FixedPoint.toFixed(rand.nextInt((int)(maxVelocity*70)) / 100f + maxVelocity*0.3f);	// max speed = lowest starting speed = 0.3*maxVelocity
 		}
 		else {
-			this.velocity = rand.nextInt(50) / 10f + 3f;		// default velocity of 3 to 8 units/s
+			this.velocity = FixedPoint.toFixed(rand.nextInt(50) / 10f + 3f);		// default velocity of 3 to 8 units/s
 			this.maxVelocity = 8.0f;	
 		}
 		if(maxAcceleration == null) {
 			this.maxAcceleration = 0.0f;
-			this.acceleration = 0.0f;
+			this.acceleration = 0;
 		}
 		else if(maxAcceleration >=0.0f) {
 			this.maxAcceleration = maxAcceleration;
-			this.acceleration = ((rand.nextFloat() * 2*maxAcceleration) - maxAcceleration);
+			this.acceleration = FixedPoint.toFixed((rand.nextFloat() * 2*maxAcceleration) - maxAcceleration);
 		} else {
-			this.acceleration = ((rand.nextFloat() * 5) - 2.5f); 	// default acceleration of -2.5 to 2.5 units/s
+			this.acceleration = FixedPoint.toFixed((rand.nextFloat() * 5) - 2.5f); 	// default acceleration of -2.5 to 2.5 units/s
 			this.maxAcceleration = 2.5f;
 		}
 		if(averageGlow == null)
@@ -116,13 +174,30 @@ public abstract class LocalPattern extends Pattern{
 			this.glow = rand.nextFloat()/5 + 0.4f;	// default glow of 0.4 to 0.6; the perceived glow is automagically longer, the faster the pattern travels
 	}
 	
+	/**
+	 * Darkens the picture (or creates it, if there is none yet), forgets the times of the previous lifetime
+	 * and initializes the coordinates, direction and color.
+	 */
+	private void resetState() {
+		if(this.picture == null)
+			initializePicture();
+		else
+			this.picture.clear();
+		this.dirty.clear();
+		this.startTime = 0;
+		this.currentTime = 0;
+		this.newTime = 0;
+		this.directionChange = 0;
+		initialize();
+	}
+	
 	/**
 	 * Initializes the coordinates with random values inside the picture.
 	 */
 	private void initialize() {
-		this.currentX = rand.nextInt(pictureSizeX);
-		this.currentY = rand.nextInt(pictureSizeY);
-		this.direction = (float) (rand.nextFloat()*Math.PI*2);
+		this.currentX = FixedPoint.fromInt(rand.nextInt(pictureSizeX));
+		this.currentY = FixedPoint.fromInt(rand.nextInt(pictureSizeY));
+		this.direction = FixedPoint.toAngle(rand.nextFloat()*Math.PI*2);
 		setColor();
 		//updateDirectionChange();
 	}
@@ -140,7 +215,7 @@ public abstract class LocalPattern extends Pattern{
 			if(rand.nextBoolean())
 				blue = rand.nextInt(250);
 		}
-		this.color = new Color(red, green, blue);
+		this.color = FrameBuffer.rgb(red, green, blue);
 	}
 	
 	/**
@@ -151,7 +226,7 @@ public abstract class LocalPattern extends Pattern{
 		int red = rand.nextInt(6);
 		int green = rand.nextInt(6);
 		int blue = 3 + rand.nextInt(5) + (red+green)/2;	// BasePattern colors should always have a blue tone
-		this.color = new Color(red, green, blue);
+		this.color = FrameBuffer.rgb(red, green, blue);
 	}
 	
 	/**
@@ -159,21 +234,55 @@ public abstract class LocalPattern extends Pattern{
 	 */
 	protected abstract void drawPattern();
 	
+	/**
+	 * Calculates the next picture.
+	 * The new position of the pattern is dependent on the time passed since the last calculation.
+	 */
+	@Override
+	public boolean advance(long frameTimeNanos) {
+		return calculateNextPicture(frameTimeNanos / 1_000_000);
+	}
+	
+	/**
+	 * Combines the lit pixels of the last calculated picture inside the rectangle with the target picture.
+	 * Only the part of the rectangle that overlaps the dirty region is visited.
+	 */
+	@Override
+	public void draw(FrameBuffer target, BlendOp op, int minX, int minY, int maxX, int maxY) {
+		if(this.dirty.isEmpty())
+			return;
+		target.blend(this.picture, op, Math.max(minX, dirty.getMinX()), Math.max(minY, dirty.getMinY()),
+				Math.min(maxX, dirty.getMaxX()), Math.min(maxY, dirty.getMaxY()));
+	}
+	
 	/**
 	 * Calculates and returns the next picture.
 	 * The new position of the pattern is dependent on the time passed since the last calculation.
-	 * @return the last calculated picture of this pattern.
+	 * @return the last calculated picture of this pattern, or null if the pattern has reached its lifetime.
+	 */
+	@Override
+	public FrameBuffer getNextPicture(){
+		if(!calculateNextPicture(System.nanoTime() / 1_000_000))
+			return null;
+		return this.picture;
+	}
+	
+	/**
+	 * Calculates the next picture of this pattern, including the faded trail of the previous pictures.
+	 * The new position of the pattern is dependent on the time passed since the last calculation.
+	 * @param timeInMs the time of the frame that is being calculated in milliseconds
+	 * @return true if the picture was calculated, or false if the pattern has reached its lifetime
 	 */
-	public ArrayList<ArrayList<Color>> getNextPicture(){
+	protected boolean calculateNextPicture(long timeInMs){
 		if(this.startTime == 0) {
-			this.currentTime = System.currentTimeMillis();
+			this.currentTime = timeInMs;
 			this.startTime = currentTime;
 		}
 		
-		this.newTime = System.currentTimeMillis();
-		// if the pattern has reached its lifetime, return null
+		this.newTime = timeInMs;
+		// if the pattern has reached its lifetime, return false
 		if(newTime - this.startTime > this.lifespan)
-			return null;
+			return false;
 		
 		this.fadeOutPicture();
 		
@@ -185,8 +294,8 @@ public abstract class LocalPattern extends Pattern{
 			drawPattern();
 			
 			// update velocity and direction
-			this.velocity = velocity + (((float)(newTime - currentTime))/1000) * acceleration;
-			this.direction = direction + (((float)(newTime - currentTime))/1000) * directionChange;
+			this.velocity = velocity + FixedPoint.integrate(acceleration, newTime - currentTime);
+			this.direction = direction + FixedPoint.integrate(directionChange, newTime - currentTime);
 			
 			currentTime = newTime;
 			// update acceleration and directionChange with random values every 1.5 seconds
@@ -200,14 +309,14 @@ public abstract class LocalPattern extends Pattern{
 		if(newTime - startTime < 1000)
 			this.fadeInPicture();
 		
-		return this.picture;
+		return true;
 	}
 
 	/**
 	 * Randomly sets the value of the directionChange-attribute to a value between -0.3 and 0.3 PI
 	 */
 	protected void updateDirectionChange() {
-		this.directionChange = (float) (((rand.nextFloat() * 6) - 3) / 10 * Math.PI);
+		this.directionChange = FixedPoint.toAngle(((rand.nextFloat() * 6) - 3) / 10 * Math.PI);
 	}
 	
 	/**
@@ -216,15 +325,7 @@ public abstract class LocalPattern extends Pattern{
 	 */
 	protected void fadeInPicture() {
 		float fade = (newTime - startTime)/1000f;
-		for(int i = 0; i < this.picture.size(); i++) {
-			for(int j = 0; j < this.picture.get(i).size(); j++) {
-				Color oldCol = picture.get(i).get(j);
-				this.picture.get(i).set(j, 
-						new Color((int)(oldCol.getRed()*fade),
-								(int)(oldCol.getGreen()*fade),
-								(int)(oldCol.getBlue()*fade)));
-			}
-		}
+		this.picture.scale(fade, this.dirty);
 	}
 	
 	/**
@@ -233,6 +334,8 @@ public abstract class LocalPattern extends Pattern{
 	 * the standard glow-setting will be applied.
 	 * If the remaining lifetime is shorter than 1 second,
 	 * the picture is set to gradually fade out to zero over the remaining lifetime.
+	 * Only the pixels inside the dirty region are faded, after which the region is shrunk
+	 * to the pixels that are still lit.
 	 */
 	protected void fadeOutPicture() {
 		// fade old colors
@@ -241,20 +344,33 @@ public abstract class LocalPattern extends Pattern{
 			fade = glow;
 		else
 			fade = (startTime + this.lifespan - newTime)/1000f;
-		for(int i = 0; i < this.picture.size(); i++) {
-			for(int j = 0; j < this.picture.get(0).size(); j++) {
-				Color oldCol = picture.get(i).get(j);
-				if(oldCol.getRed() < 6 && oldCol.getGreen() < 6 && oldCol.getBlue() < 6)
-					this.picture.get(i).set(j, new Color(0, 0, 0));
-				else {
-					//System.out.println("Fading: " + oldCol.getRed()*glow + ", " + oldCol.getGreen()*glow + ", " + oldCol.getBlue()*glow);
-					this.picture.get(i).set(j,
-							new Color((int)(oldCol.getRed()*fade),
-									(int)(oldCol.getGreen()*fade),
-									(int)(oldCol.getBlue()*fade)));
-				}
-			}
+		if(this.dirty.isEmpty())
+			return;
+		int[] pixels = this.picture.getPixels();
+		PixelKernels kernels = PixelKernels.get();
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for(int y = dirty.getMinY(); y <= dirty.getMaxY(); y++) {
+			int row = picture.offset(0, y);
+			// pixels whose channels are all below 6 are turned off, all others are faded
+			kernels.fade(pixels, row + dirty.getMinX(), dirty.getMaxX() - dirty.getMinX() + 1, fade, 6);
+			// find the pixels of the row that are still lit
+			int first = dirty.getMinX();
+			while(first <= dirty.getMaxX() && pixels[row + first] == FrameBuffer.BLACK)
+				first++;
+			if(first > dirty.getMaxX())
+				continue;
+			int last = dirty.getMaxX();
+			while(pixels[row + last] == FrameBuffer.BLACK)
+				last--;
+			if(first < minX)
+				minX = first;
+			if(last > maxX)
+				maxX = last;
+			if(y < minY)
+				minY = y;
+			maxY = y;
 		}
+		this.dirty.set(minX, minY, maxX, maxY);
 	}
 	
 	/**
@@ -262,6 +378,7 @@ public abstract class LocalPattern extends Pattern{
 	 * Checks if the passed coordinates are within the picture-size and corrects the values if not.
 	 * Coordinates crossing the y-boundary, reappear on the opposite side
 	 * Coordinates crossing the x-boundary, reappear on the same side, mirrored on the line y=pictureSizeY/2
+	 * The dirty region is grown to include the pixel that was actually set.
 	 * @param x the x-coordinate of the pixel
 	 * @param y the y-coordinate of the pixel
 	 */
@@ -272,14 +389,40 @@ public abstract class LocalPattern extends Pattern{
 			yCoordinate = pictureSizeY + y%pictureSizeY;
 //		else
 //			yCoordinate = y%pictureSizeY;
+		int pixelX, pixelY;
 		if(x >= pictureSizeX) {
-			this.picture.get((yCoordinate+8)%pictureSizeY).set(pictureSizeX-((x+1)%pictureSizeX), this.color);
+			pixelX = pictureSizeX-((x+1)%pictureSizeX);
+			pixelY = (yCoordinate+8)%pictureSizeY;
 		}
 		else if(x < 0) {
-			this.picture.get((yCoordinate+8)%pictureSizeY).set((x%pictureSizeX)*-1, this.color);
+			pixelX = (x%pictureSizeX)*-1;
+			pixelY = (yCoordinate+8)%pictureSizeY;
 		}
-		else
-			this.picture.get(yCoordinate%pictureSizeY).set(x, this.color);
+		else {
+			pixelX = x;
+			pixelY = yCoordinate%pictureSizeY;
+		}
+		this.picture.setPixel(pixelX, pixelY, this.color);
+		this.dirty.include(pixelX, pixelY);
+	}
+	
+	/**
+	 * Sets all pixels covered by the stamp, whose offsets are relative to the pixel containing the pattern's center.
+	 * @param stamp the stamp of the pattern's shape at its current sub-pixel offset
+	 */
+	protected void drawStamp(StampCache.Stamp stamp) {
+		int baseX = currentX >> FixedPoint.SHIFT;
+		int baseY = currentY >> FixedPoint.SHIFT;
+		for(int i = 0; i < stamp.getCount(); i++) {
+			drawPixel(baseX + stamp.getOffsetX(i), baseY + stamp.getOffsetY(i));
+		}
+	}
+	
+	/**
+	 * @return the cache holding the stamps of all LocalPatterns
+	 */
+	public static StampCache getStampCache() {
+		return stamps;
 	}
 	
 	/**
@@ -289,20 +432,23 @@ public abstract class LocalPattern extends Pattern{
 	 * in which case the generated acceleration value may exceed the maxAccleration value by up to 50%.
 	 */
 	protected void updateAcceleration() {
+		float velocity = FixedPoint.toFloat(this.velocity);
+		float acceleration;
 		if(Math.abs(velocity) < maxVelocity*0.3) {	// velocity should not get below 0.3 times the abs(maxVelocity) -> do something if it does
 			if(velocity > 0)
-				this.acceleration = (rand.nextFloat() * maxAcceleration) + 0.5f*maxAcceleration;	// maxAcceleration value can be exceeded to speed up faster
+				acceleration = (rand.nextFloat() * maxAcceleration) + 0.5f*maxAcceleration;	// maxAcceleration value can be exceeded to speed up faster
 			else
-				this.acceleration = (rand.nextFloat() * maxAcceleration) - 1.5f*maxAcceleration;	// maxAcceleration value can be exceeded to speed up faster
+				acceleration = (rand.nextFloat() * maxAcceleration) - 1.5f*maxAcceleration;	// maxAcceleration value can be exceeded to speed up faster
 		}
 		else if(Math.abs(velocity) > maxVelocity) {	// velocity should not get above abs(maxVelocity) -> do something if it does
 			if(velocity > 0)
-				this.acceleration = (rand.nextFloat() * maxAcceleration) - 1.5f*maxAcceleration;	// maxAcceleration value can be exceeded to slow down faster
+				acceleration = (rand.nextFloat() * maxAcceleration) - 1.5f*maxAcceleration;	// maxAcceleration value can be exceeded to slow down faster
 			else
-				this.acceleration = (rand.nextFloat() * maxAcceleration) + 0.5f*maxAcceleration;	// maxAcceleration value can be exceeded to slow down faster
+				acceleration = (rand.nextFloat() * maxAcceleration) + 0.5f*maxAcceleration;	// maxAcceleration value can be exceeded to slow down faster
 		}
 		else	// velocity is within the expected range -> apply random acceleration value
-			this.acceleration = ((rand.nextFloat() * 2*maxAcceleration) - maxAcceleration);
+			acceleration = ((rand.nextFloat() * 2*maxAcceleration) - maxAcceleration);
+		this.acceleration = FixedPoint.toFixed(acceleration);
 	}
 	
 	/**
@@ -312,38 +458,42 @@ public abstract class LocalPattern extends Pattern{
 	protected void advancePatternCoordinates() {
 		// move dot coordinates
 		// y coordinates advance at a relative speed of 0.8
-		float tempX = (float) (currentX + (((float)(newTime - currentTime))/1000) * velocity * Math.cos(this.direction));
-		if(tempX > pictureSizeX-1) {
-			float tt = ((tempX) % (pictureSizeX-1));
+		int distance = FixedPoint.integrate(velocity, newTime - currentTime);
+		int tempX = currentX + FixedPoint.mul(distance, FixedPoint.cos(this.direction));
+		int deltaY = FixedPoint.mul(FixedPoint.mul(distance, FixedPoint.sin(this.direction)), Y_SPEED);
+		int maxX = FixedPoint.fromInt(pictureSizeX-1);
+		int sizeY = FixedPoint.fromInt(pictureSizeY);
+		if(tempX > maxX) {
+			int tt = tempX % maxX;
 			//position traveling around outer edges, direction needs to be corrected
-			this.currentX = pictureSizeX - tt - 1;
-			this.currentY = (float) ((currentY + (((float)(newTime - currentTime))/1000) * velocity * Math.sin(this.direction) * 0.8f) + 8) % pictureSizeY;
+			this.currentX = maxX - tt;
+			this.currentY = (currentY + deltaY + FixedPoint.fromInt(8)) % sizeY;
 			if(currentY < 0)
-				currentY = pictureSizeY - currentY;
+				currentY = sizeY - currentY;
 			// mirror angle on y axis
-			if(this.direction <= Math.PI)
-				this.direction = (float) (Math.PI - direction);
+			if(this.direction <= FixedPoint.HALF_TURN)
+				this.direction = FixedPoint.HALF_TURN - direction;
 			else
-				this.direction = (float) (Math.PI*3 - direction);
+				this.direction = FixedPoint.HALF_TURN*3 - direction;
 		}
 		else if(tempX < 0) {
 			//position traveling around outer edges, direction needs to be corrected
-			this.currentX = (tempX%pictureSizeX) * -1;
-			this.currentY = (float) ((currentY + 8 + (((float)(newTime - currentTime))/1000) * velocity * Math.sin(this.direction) * 0.8f) + 8) % pictureSizeY;
+			this.currentX = (tempX % FixedPoint.fromInt(pictureSizeX)) * -1;
+			this.currentY = (currentY + FixedPoint.fromInt(8) + deltaY + FixedPoint.fromInt(8)) % sizeY;
 			if(currentY < 0)
-				currentY = pictureSizeY - currentY;
+				currentY = sizeY - currentY;
 			// mirror angle on y axis
-			if(this.direction <= Math.PI)
-				this.direction = (float) (Math.PI - direction);
+			if(this.direction <= FixedPoint.HALF_TURN)
+				this.direction = FixedPoint.HALF_TURN - direction;
 			else
-				this.direction = (float) (Math.PI*3 - direction);
+				this.direction = FixedPoint.HALF_TURN*3 - direction;
 		}
 		else {
 			// x-movement within boundaries
 			this.currentX = tempX;
-			this.currentY = (float) (currentY + (((float)(newTime - currentTime))/1000) * velocity * Math.sin(this.direction) * 0.8f) % pictureSizeY;
+			this.currentY = (currentY + deltaY) % sizeY;
 			if(currentY < 0)
-				currentY = pictureSizeY - currentY;
+				currentY = sizeY - currentY;
 		}
 	}
 		
@@ -1,46 +1,90 @@
 package zyklone.LEDCloud.patterns;
 
-import java.awt.Color;
-import java.util.ArrayList;
+import zyklone.LEDCloud.rendering.BlendOp;
+import zyklone.LEDCloud.rendering.FrameBuffer;
 
 /**
  * This class represents the interface between the LEDCloud and all possible patterns,
- * for the LEDCloud to have a way of accessing the patterns' current pictures and sending them to the led-strip.
+ * for the LEDCloud to have a way of drawing the patterns' current pictures and sending them to the led-strip.
+ * Patterns draw themselves directly into a shared target picture via render(),
+ * only touching the pixels they actually light up.
+ * Calculating a new picture (advance) and drawing it (draw) are two separate steps,
+ * so that the drawing of one picture can be split up into several rectangles (tiles),
+ * which may be drawn by different threads at the same time.
  * 
  * @author Zyklone
  */
 public abstract class Pattern{
 	
-	protected ArrayList<ArrayList<Color>> picture;
+	protected FrameBuffer picture;
 	protected int pictureSizeX;
 	protected int pictureSizeY;
-	protected static Color black = new Color(0, 0, 0);
 	
 	public Pattern(int pictureSizeX, int pictureSizeY) {
 		this.pictureSizeX = pictureSizeX;
 		this.pictureSizeY = pictureSizeY;
-		initializePicture();
 	}
-
+	
 	/**
+	 * Advances the pattern to the passed frame time and draws it into the target picture.
+	 * Only the pixels lit by the pattern are combined with the target, all other pixels are left untouched.
+	 * @param target the picture the pattern is drawn into
+	 * @param frameTimeNanos the time of the frame that is being calculated, as returned by the cloud's FrameClock
+	 * @param op the operation used to combine the pattern's pixels with the target's pixels
+	 * @return true if the pattern was drawn, or false if the pattern is unable to produce any more pictures
+	 * (e.g. if pattern-lifetime is reached)
+	 */
+	public boolean render(FrameBuffer target, long frameTimeNanos, BlendOp op) {
+		if(!advance(frameTimeNanos))
+			return false;
+		draw(target, op, 0, 0, target.getWidth()-1, target.getHeight()-1);
+		return true;
+	}
+	
+	/**
+	 * Advances the pattern to the passed frame time, without drawing it into any target picture.
+	 * @param frameTimeNanos the time of the frame that is being calculated, as returned by the cloud's FrameClock
+	 * @return true if the pattern can be drawn, or false if the pattern is unable to produce any more pictures
+	 * (e.g. if pattern-lifetime is reached)
+	 */
+	public abstract boolean advance(long frameTimeNanos);
+	
+	/**
+	 * Draws the pattern's last calculated picture into a rectangle of the target picture.
+	 * Pixels outside of the rectangle must not be touched.
+	 * As long as the pattern is not advanced at the same time, several rectangles may be drawn concurrently.
+	 * The bounds are inclusive.
+	 * @param target the picture the pattern is drawn into
+	 * @param op the operation used to combine the pattern's pixels with the target's pixels
+	 * @param minX the smallest x-coordinate of the rectangle
+	 * @param minY the smallest y-coordinate of the rectangle
+	 * @param maxX the biggest x-coordinate of the rectangle
+	 * @param maxY the biggest y-coordinate of the rectangle
+	 */
+	public abstract void draw(FrameBuffer target, BlendOp op, int minX, int minY, int maxX, int maxY);
+	
+	/**
+	 * Draws the pattern into a dark picture of its own.
+	 * This is an adapter around render() for callers that need a complete picture of a single pattern.
 	 * @return the patterns latest picture, or null if the picture is unable to produce any more pictures
 	 * (e.g. if pattern-lifetime is reached)
 	 */
-	public abstract ArrayList<ArrayList<Color>> getNextPicture();
+	public FrameBuffer getNextPicture() {
+		if(this.picture == null)
+			initializePicture();
+		else
+			this.picture.clear();
+		if(!render(this.picture, System.nanoTime(), BlendOp.ADD))
+			return null;
+		return this.picture;
+	}
 	
 	/**
-	 * Initializes the picture by creating the required lists
-	 * and setting all the picture's pixels to black (i.e. dark).
+	 * Initializes the picture by creating the required frame buffer,
+	 * whose pixels are all black (i.e. dark).
 	 */
 	protected void initializePicture() {
-		this.picture = new ArrayList<>(pictureSizeY);
-		for(int i = 0; i < this.pictureSizeY; i++) {
-			ArrayList<Color> row = new ArrayList<Color>(pictureSizeX);
-			picture.add(row);
-			for(int j = 0; j < pictureSizeX; j++) {
-				row.add(black);
-			}
-		}
+		this.picture = new FrameBuffer(pictureSizeX, pictureSizeY);
 	}
-	
+
 }
@@ -0,0 +1,153 @@
+package zyklone.LEDCloud.patterns;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import zyklone.LEDCloud.rendering.BlendOp;
+import zyklone.LEDCloud.rendering.FrameBuffer;
+
+/**
+ * Adds up a list of patterns in one target picture.
+ * First every pattern is advanced to the frame time, one after another, in the order of the list.
+ * Then the patterns are drawn into the target picture.
+ * Small pictures are drawn by the calling thread alone.
+ * If the target picture has at least as many pixels as the configured threshold,
+ * it is split up into rectangular tiles, which are drawn on a fork-join pool.
+ * Every tile draws all patterns in the order of the list, so the result does not depend on
+ * the number of threads or the order in which the tiles are processed.
+ * Patterns that have reached their lifetime may be handed back to a PatternPool, to be reused later on.
+ *
+ * @author Zyklone
+ */
+public class PatternCompositor {
+	
+	private final int parallelThreshold;
+	private final int tileSize;
+	private ForkJoinPool pool;
+	
+	/**
+	 * @param parallelThreshold the minimum number of pixels a target picture needs to have to be drawn in tiles
+	 * @param tileSize the length of a tile's sides
+	 */
+	public PatternCompositor(int parallelThreshold, int tileSize) {
+		if(tileSize < 1)
+			throw new IllegalArgumentException("The size of a tile must be at least 1.");
+		this.parallelThreshold = parallelThreshold;
+		this.tileSize = tileSize;
+	}
+	
+	/**
+	 * Advances all patterns to the passed frame time and draws them into the target picture.
+	 * Patterns that have reached their lifetime are removed from the list.
+	 * @param patterns the patterns to draw
+	 * @param target the picture the patterns are drawn into
+	 * @param frameTimeNanos the time of the frame that is being calculated, as returned by the cloud's FrameClock
+	 * @param op the operation used to combine the patterns' pixels with the target's pixels
+	 * @return the number of patterns that reached their lifetime and were removed
+	 */
+	public int compose(List<? extends Pattern> patterns, FrameBuffer target, long frameTimeNanos, BlendOp op) {
+		return compose(patterns, target, frameTimeNanos, op, null);
+	}
+	
+	/**
+	 * Advances all patterns to the passed frame time and draws them into the target picture.
+	 * Patterns that have reached their lifetime are removed from the list and released to the pool.
+	 * @param patterns the patterns to draw
+	 * @param target the picture the patterns are drawn into
+	 * @param frameTimeNanos the time of the frame that is being calculated, as returned by the cloud's FrameClock
+	 * @param op the operation used to combine the patterns' pixels with the target's pixels
+	 * @param pool the pool the removed patterns are released to, or null if they should just be dropped
+	 * @return the number of patterns that reached their lifetime and were removed
+	 */
+	public int compose(List<? extends Pattern> patterns, FrameBuffer target, long frameTimeNanos, BlendOp op, PatternPool pool) {
+		int removed = 0;
+		for(int i = 0; i < patterns.size(); i++) {
+			Pattern current = patterns.get(i);
+			// if pattern has reached lifetime, remove it from list
+			if(!current.advance(frameTimeNanos)) {
+				patterns.remove(i--);
+				removed++;
+				if(pool != null)
+					pool.release(current);
+			}
+		}
+	
+		if(isTiled(target)) {
+			int tilesX = (target.getWidth() + tileSize - 1) / tileSize;
+			int tilesY = (target.getHeight() + tileSize - 1) / tileSize;
+			getPool().invoke(new TileTask(patterns, target, op, tilesX, 0, tilesX * tilesY));
+		} else {
+			for(int i = 0; i < patterns.size(); i++) {
+				patterns.get(i).draw(target, op, 0, 0, target.getWidth()-1, target.getHeight()-1);
+			}
+		}
+		return removed;
+	}
+	
+	/**
+	 * @param target the picture the patterns would be drawn into
+	 * @return true if the picture is big enough to be drawn in tiles
+	 */
+	public boolean isTiled(FrameBuffer target) {
+		return (long) target.getWidth() * target.getHeight() >= parallelThreshold;
+	}
+	
+	/**
+	 * Shuts down the threads drawing the tiles, if there are any.
+	 */
+	public void shutdown() {
+		if(pool != null)
+			pool.shutdown();
+	}
+	
+	/**
+	 * @return the pool drawing the tiles, which is created upon first use
+	 */
+	private ForkJoinPool getPool() {
+		if(pool == null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return pool;
+	}
+	
+	/**
+	 * Draws a range of tiles, splitting the range in half until only one tile is left.
+	 */
+	private class TileTask extends RecursiveAction {
+	
+		private static final long serialVersionUID = 1L;
+		private final List<? extends Pattern> patterns;
+		private final FrameBuffer target;
+		private final BlendOp op;
+		private final int tilesX;
+		private final int firstTile;
+		private final int endTile;
+	
+		TileTask(List<? extends Pattern> patterns, FrameBuffer target, BlendOp op, int tilesX, int firstTile, int endTile) {
+			this.patterns = patterns;
+			this.target = target;
+			this.op = op;
+			this.tilesX = tilesX;
+			this.firstTile = firstTile;
+			this.endTile = endTile;
+		}
+	
+		@Override
+		protected void compute() {
+			if(endTile - firstTile > 1) {
+				int middle = (firstTile + endTile) >>> 1;
+				invokeAll(new TileTask(patterns, target, op, tilesX, firstTile, middle),
+						new TileTask(patterns, target, op, tilesX, middle, endTile));
+				return;
+			}
+			int minX = (firstTile % tilesX) * tileSize;
+			int minY = (firstTile / tilesX) * tileSize;
+			int maxX = Math.min(minX + tileSize, target.getWidth()) - 1;
+			int maxY = Math.min(minY + tileSize, target.getHeight()) - 1;
+			for(int i = 0; i < patterns.size(); i++) {
+				patterns.get(i).draw(target, op, minX, minY, maxX, maxY);
+			}
+		}
+	}
+
+}
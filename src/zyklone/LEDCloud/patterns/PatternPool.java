@@ -0,0 +1,140 @@
+package zyklone.LEDCloud.patterns;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Keeps the LocalPatterns that have reached their lifetime, so they can be reset and shown again
+ * instead of creating new patterns (and their pictures) all the time.
+ * There is one pool for each type of pattern. A pattern is only created, if the pool of its type is empty,
+ * so once as many patterns as are shown at the same time have been created, no more patterns (or pictures) are allocated.
+ * Every acquired pattern's random numbers are seeded from the pool's own random numbers,
+ * so seeding the pool (see setSeed()) makes all of its patterns reproducible.
+ * The pools are not thread-safe, patterns have to be acquired and released by the same thread.
+ *
+ * @author Zyklone
+ */
+public class PatternPool {
+	
+	private final int pictureSizeX;
+	private final int pictureSizeY;
+	private final ArrayDeque<DotPattern> dots = new ArrayDeque<>();
+	private final ArrayDeque<WallPattern> walls = new ArrayDeque<>();
+	private final ArrayDeque<WavePattern> waves = new ArrayDeque<>();
+	private final Random seeds = new Random();
+	private long created;
+	private long reused;
+	
+	/**
+	 * @param pictureSizeX the length in the x-axis of the led-matrix
+	 * @param pictureSizeY the length in the y-axis of the led-matrix
+	 */
+	public PatternPool(int pictureSizeX, int pictureSizeY) {
+		this.pictureSizeX = pictureSizeX;
+		this.pictureSizeY = pictureSizeY;
+	}
+	
+	/**
+	 * @param backgroundPattern true, if the pattern is part of a BackgroundPattern, otherwise false
+	 * @return a DotPattern that is shown from the start
+	 */
+	public DotPattern acquireDot(boolean backgroundPattern) {
+		DotPattern dot = dots.poll();
+		if(dot == null) {
+			created++;
+			dot = new DotPattern(pictureSizeX, pictureSizeY, backgroundPattern);
+		} else {
+			reused++;
+		}
+		return prepare(dot, backgroundPattern);
+	}
+	
+	/**
+	 * @param backgroundPattern true, if the pattern is part of a BackgroundPattern, otherwise false
+	 * @return a WallPattern that is shown from the start
+	 */
+	public WallPattern acquireWall(boolean backgroundPattern) {
+		WallPattern wall = walls.poll();
+		if(wall == null) {
+			created++;
+			wall = backgroundPattern ? new WallPattern(pictureSizeX, pictureSizeY, true) : new WallPattern(pictureSizeX, pictureSizeY);
+		} else {
+			reused++;
+		}
+		return prepare(wall, backgroundPattern);
+	}
+	
+	/**
+	 * @param backgroundPattern true, if the pattern is part of a BackgroundPattern, otherwise false
+	 * @return a WavePattern that is shown from the start
+	 */
+	public WavePattern acquireWave(boolean backgroundPattern) {
+		WavePattern wave = waves.poll();
+		if(wave == null) {
+			created++;
+			wave = new WavePattern(pictureSizeX, pictureSizeY, backgroundPattern);
+		} else {
+			reused++;
+		}
+		return prepare(wave, backgroundPattern);
+	}
+	
+	/**
+	 * Seeds the pattern's random numbers and resets it, so that it only depends on the pool's random numbers.
+	 * @param pattern the pattern to prepare
+	 * @param backgroundPattern true, if the pattern is part of a BackgroundPattern, otherwise false
+	 * @return the passed pattern
+	 */
+	private <T extends LocalPattern> T prepare(T pattern, boolean backgroundPattern) {
+		pattern.rand.setSeed(seeds.nextLong());
+		pattern.reset(backgroundPattern);
+		return pattern;
+	}
+	
+	/**
+	 * Seeds the random numbers all following patterns are seeded with.
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		seeds.setSeed(seed);
+	}
+	
+	/**
+	 * Returns a pattern that has reached its lifetime to the pool of its type.
+	 * Patterns of other types (and patterns drawing into pictures of another size) are ignored.
+	 * The pattern must not be used anymore, until it is acquired again.
+	 * @param pattern the pattern that has reached its lifetime
+	 */
+	public void release(Pattern pattern) {
+		if(pattern.pictureSizeX != pictureSizeX || pattern.pictureSizeY != pictureSizeY)
+			return;
+		if(pattern instanceof DotPattern)
+			dots.push((DotPattern) pattern);
+		else if(pattern instanceof WallPattern)
+			walls.push((WallPattern) pattern);
+		else if(pattern instanceof WavePattern)
+			waves.push((WavePattern) pattern);
+	}
+	
+	/**
+	 * @return the number of patterns that had to be created, because the pool of their type was empty
+	 */
+	public long getCreated() {
+		return created;
+	}
+	
+	/**
+	 * @return the number of patterns that were taken from the pools and reset
+	 */
+	public long getReused() {
+		return reused;
+	}
+	
+	/**
+	 * @return the number of patterns currently waiting in the pools
+	 */
+	public int size() {
+		return dots.size() + walls.size() + waves.size();
+	}
+
+}
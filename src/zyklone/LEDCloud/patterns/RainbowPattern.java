@@ -1,25 +1,29 @@
 package zyklone.LEDCloud.patterns;
 
-import java.awt.Color;
-import java.util.ArrayList;
-import java.util.List;
+import zyklone.LEDCloud.palettes.Palette;
+import zyklone.LEDCloud.rendering.BlendOp;
+import zyklone.LEDCloud.rendering.FrameBuffer;
 
 /**
  * The RainbowPattern class represents a pattern across the cloud's whole led-matrix.
- * It uses a static list with gradually changing colors, that imitates the colors of a rainbow,
- * to display a portion of this list across the cloud, parallel to the x-axis.
+ * It uses a palette with gradually changing colors (by default a palette imitating the colors of a rainbow),
+ * to display a portion of this palette across the cloud, parallel to the x-axis.
  * The density of the colors and the velocity the pattern travels across the x-axis,
- * can be set upon instantiation.
+ * can be set upon instantiation, the palette can be replaced at any time.
+ * As every column has one color, only one row is calculated whenever the pattern advances,
+ * which is then copied into every row of the target picture.
  * 
  * @author Zyklone
  */
 public class RainbowPattern extends Pattern {
 	
-	private static List<Color> rainbowList = new ArrayList<>(1540);
+	private volatile Palette palette = Palette.RAINBOW;
 	private float velocity = 400;
 	private int density = 20;
 	private float progress = 0;
 	private long lastUpdate;
+	/** packed color (0xRRGGBB) of every column, as calculated by the last call to advance() */
+	private final int[] row;
 
 	/**
 	 * This constructor initializes the Pattern with its default values.
@@ -28,8 +32,7 @@ public class RainbowPattern extends Pattern {
 	 */
 	public RainbowPattern(int pictureSizeX, int pictureSizeY) {
 		super(pictureSizeX, pictureSizeY);
-		if(rainbowList.isEmpty())
-			initialize();
+		this.row = new int[pictureSizeX];
 	}
 	
 	/**
@@ -39,10 +42,8 @@ public class RainbowPattern extends Pattern {
 	 * @param velocity the velocity the pattern travels across the cloud's x-axis
 	 */
 	public RainbowPattern(int pictureSizeX, int pictureSizeY, float velocity) {
-		super(pictureSizeX, pictureSizeY);
+		this(pictureSizeX, pictureSizeY);
 		this.velocity = velocity;
-		if(rainbowList.isEmpty())
-			initialize();
 	}
 	
 	/**
@@ -53,65 +54,71 @@ public class RainbowPattern extends Pattern {
 	 * @param density the density of the rainbow-colors that are displayed on the cloud.
 	 */
 	public RainbowPattern(int pictureSizeX, int pictureSizeY, float velocity, int density) {
-		super(pictureSizeX, pictureSizeY);
-		this.velocity = velocity;
+		this(pictureSizeX, pictureSizeY, velocity);
 		this.density = density;
-		if(rainbowList.isEmpty())
-			initialize();
 	}
 	
 	/**
-	 * Initializes the classes static list with gradually changing colors,
-	 * that imitates the colors of a rainbow.
+	 * This constructor initializes the Pattern with the passed velocity, density and palette.
+	 * @param pictureSizeX the length in the x-axis of the led-matrix
+	 * @param pictureSizeY the length in the y-axis of the led-matrix
+	 * @param velocity the velocity the pattern travels across the cloud's x-axis, in colors of the palette per second
+	 * @param density the density of the colors that are displayed on the cloud
+	 * @param palette the colors to display
 	 */
-	public void initialize() {
-		// fill the rainbow-list
-		int red=255, green=0, blue=0;
-		for(green=0; green<255; green++) {
-			rainbowList.add(new Color(red, green, blue));
-		}
-		for(red=255; red>0; red--) {
-			rainbowList.add(new Color(red, green, blue));
-		}
-		for(blue=0; blue<255; blue++) {
-			rainbowList.add(new Color(red, green, blue));
-		}
-		for(green=255; green>0; green--) {
-			rainbowList.add(new Color(red, green, blue));
-		}
-		for(red=0; red<255; red++) {
-			rainbowList.add(new Color(red, green, blue));
-		}
-		for(blue=255; blue>0; blue--) {
-			rainbowList.add(new Color(red, green, blue));
-		}
-		System.out.println("Rainbowlist has " + rainbowList.size() + " elements.");
+	public RainbowPattern(int pictureSizeX, int pictureSizeY, float velocity, int density, Palette palette) {
+		this(pictureSizeX, pictureSizeY, velocity, density);
+		setPalette(palette);
+	}
+	
+	/**
+	 * @return the colors that are displayed
+	 */
+	public Palette getPalette() {
+		return palette;
 	}
 	
 	/**
-	 * Calculates and returns the next picture.
+	 * Replaces the displayed colors, starting with the next picture. May be called from any thread.
+	 * @param palette the colors to display
+	 * @throws IllegalArgumentException if the palette is null
+	 */
+	public void setPalette(Palette palette) {
+		if(palette == null)
+			throw new IllegalArgumentException("The palette of a rainbow must not be null.");
+		this.palette = palette;
+	}
+	
+	/**
+	 * Advances the position of the rainbow and calculates the color of every column.
 	 * The new position of the pattern is dependent on the time passed since the last calculation.
-	 * @return the last calculated picture of this pattern.
 	 */
 	@Override
-	public ArrayList<ArrayList<Color>> getNextPicture() {
+	public boolean advance(long frameTimeNanos) {
+		Palette current = this.palette;
+		long timeInMs = frameTimeNanos / 1_000_000;
 		if(this.lastUpdate == 0)
-			this.lastUpdate = System.currentTimeMillis();
+			this.lastUpdate = timeInMs;
 		
 		//advance progress depending on passed time since last update
-		progress = (progress + ((float)(System.currentTimeMillis() - lastUpdate))/1000 * velocity) % rainbowList.size();
-		//System.out.println("Progress " + progress);
+		progress = (progress + ((float)(timeInMs - lastUpdate))/1000 * velocity) % current.size();
+		lastUpdate = timeInMs;
 		
-		// draw picture
-		for(int x = 0; x < this.pictureSizeX; x++) {
-			Color col = rainbowList.get(((int)progress+x*density) % rainbowList.size());
-			for(int y = 0; y < this.pictureSizeY; y++) {
-				this.picture.get(y).set(x, col);
-			}
+		for(int x = 0; x < row.length; x++) {
+			row[x] = current.get((int)progress + x*density);
+		}
+		return true;
+	}
+	
+	/**
+	 * Draws the rainbow into the target picture, by copying the calculated row into every row of the rectangle.
+	 * As the rainbow covers the whole led-matrix, every pixel of the rectangle is touched.
+	 */
+	@Override
+	public void draw(FrameBuffer target, BlendOp op, int minX, int minY, int maxX, int maxY) {
+		for(int y = minY; y <= maxY; y++) {
+			target.blendRow(row, minX, op, minX, y, maxX - minX + 1);
 		}
-		lastUpdate = System.currentTimeMillis();
-		
-		return picture;
 	}
 
 }
@@ -0,0 +1,274 @@
+package zyklone.LEDCloud.patterns;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the pixels covered by the shapes of LocalPatterns (stamps), so they do not have to be rasterized again every frame.
+ * A stamp only depends on the shape's parameters (e.g. size, thickness and angle) and on the position of the shape's center
+ * within a single pixel (sub-pixel offset). Both the angle and the sub-pixel offset are quantized,
+ * so that a moving pattern keeps hitting the same stamps.
+ * The cache holds a limited number of stamps; once that number is reached, a stamp that has not been used recently is evicted
+ * (clock algorithm: a hand sweeps over the stamps, sparing every stamp used since it last passed).
+ * The stamps are kept in an open-addressing table keyed by primitive longs, so looking up a stamp does not allocate any memory.
+ * All methods are synchronized, so the cache may be shared by all patterns.
+ * 
+ * @author Zyklone
+ */
+public class StampCache {
+	
+	/** the number of bits of the sub-pixel offset that are used, i.e. the center is quantized to an eighth of a pixel */
+	public static final int SUBPIXEL_BITS = 3;
+	/** the number of bits of an angle that are used, i.e. angles are quantized to a 256th of a turn */
+	public static final int ANGLE_BITS = 8;
+	
+	/** the keys of the stamps, the table's length is a power of two and at least twice the capacity */
+	private final long[] keys;
+	/** the stamps, null marks an empty slot */
+	private final Stamp[] values;
+	/** whether the stamp in a slot was used since the clock hand last passed it */
+	private final boolean[] referenced;
+	private final int mask;
+	private final int capacity;
+	private int size = 0;
+	/** the slot the clock hand last looked at */
+	private int hand = 0;
+	private long hits = 0;
+	private long misses = 0;
+	
+	/**
+	 * @param capacity the maximum number of stamps kept in the cache
+	 */
+	public StampCache(final int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("The capacity of the stamp cache must be at least 1.");
+		if(capacity > 1 << 28)
+			throw new IllegalArgumentException("The capacity of the stamp cache must be at most " + (1 << 28) + ".");
+		this.capacity = capacity;
+		int length = Integer.highestOneBit(capacity) << 2;
+		this.keys = new long[length];
+		this.values = new Stamp[length];
+		this.referenced = new boolean[length];
+		this.mask = length - 1;
+	}
+	
+	/**
+	 * Combines the parameters of a shape into a key.
+	 * @param shape an identifier of the type of shape (0-255)
+	 * @param size the size of the shape (0-65535)
+	 * @param thickness the thickness of the shape (0-65535)
+	 * @param angle the quantized angle (see quantizeAngle())
+	 * @param subX the quantized sub-pixel offset in the x-axis (see quantizeSubPixel())
+	 * @param subY the quantized sub-pixel offset in the y-axis (see quantizeSubPixel())
+	 * @return the key
+	 */
+	public static long key(int shape, int size, int thickness, int angle, int subX, int subY) {
+		return ((long) (shape & 0xFF) << 48) | ((long) (size & 0xFFFF) << 32) | ((long) (thickness & 0xFFFF) << 16)
+				| ((angle & 0xFF) << 8) | ((subX & 0xF) << 4) | (subY & 0xF);
+	}
+	
+	/**
+	 * @param fixed a coordinate in fixed point (see FixedPoint)
+	 * @return the offset of the coordinate within its pixel, quantized to SUBPIXEL_BITS
+	 */
+	public static int quantizeSubPixel(int fixed) {
+		return (fixed & (FixedPoint.ONE - 1)) >> (FixedPoint.SHIFT - SUBPIXEL_BITS);
+	}
+	
+	/**
+	 * @param subPixel a quantized sub-pixel offset
+	 * @return the offset in fixed point, in the middle of the quantization step
+	 */
+	public static int subPixelToFixed(int subPixel) {
+		return (subPixel << (FixedPoint.SHIFT - SUBPIXEL_BITS)) + (1 << (FixedPoint.SHIFT - SUBPIXEL_BITS - 1));
+	}
+	
+	/**
+	 * @param angle an angle (see FixedPoint)
+	 * @return the angle, rounded to ANGLE_BITS
+	 */
+	public static int quantizeAngle(int angle) {
+		return FixedPoint.wrapAngle(angle + (FixedPoint.TURN >> (ANGLE_BITS + 1))) >> (16 - ANGLE_BITS);
+	}
+	
+	/**
+	 * @param quantizedAngle a quantized angle
+	 * @return the angle (see FixedPoint)
+	 */
+	public static int angleFromQuantized(int quantizedAngle) {
+		return quantizedAngle << (16 - ANGLE_BITS);
+	}
+	
+	/**
+	 * Looks up a stamp and marks it as recently used.
+	 * @param key the key of the stamp (see key())
+	 * @return the stamp, or null if it is not cached and has to be rasterized
+	 */
+	public synchronized Stamp get(long key) {
+		int slot = find(key);
+		if(values[slot] == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		referenced[slot] = true;
+		return values[slot];
+	}
+	
+	/**
+	 * Adds a stamp, evicting a stamp that has not been used recently if the cache is full.
+	 * @param key the key of the stamp (see key())
+	 * @param stamp the rasterized stamp
+	 */
+	public synchronized void put(long key, Stamp stamp) {
+		if(stamp == null)
+			throw new IllegalArgumentException("The stamp must not be null.");
+		int slot = find(key);
+		if(values[slot] == null) {
+			if(size == capacity) {
+				evict();
+				// the eviction may have moved the stamps following the evicted one
+				slot = find(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = stamp;
+		referenced[slot] = true;
+	}
+	
+	/**
+	 * @return the number of stamps currently cached
+	 */
+	public synchronized int size() {
+		return size;
+	}
+	
+	/**
+	 * @param key the key of a stamp
+	 * @return the slot holding the stamp, or the empty slot it would be put into
+	 */
+	private int find(long key) {
+		int slot = home(key);
+		while(values[slot] != null && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	/**
+	 * @param key the key of a stamp
+	 * @return the slot the stamp is put into, unless it is taken
+	 */
+	private int home(long key) {
+		// the low bits of the keys are the sub-pixel offsets, so the key is mixed before it is reduced to a slot
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+	
+	/**
+	 * Moves the clock hand to the next stamp that was not used since the hand last passed it and removes that stamp.
+	 * The hand clears the marks of the stamps it passes, so it stops within one sweep.
+	 */
+	private void evict() {
+		while(true) {
+			hand = (hand + 1) & mask;
+			if(values[hand] == null)
+				continue;
+			if(referenced[hand]) {
+				referenced[hand] = false;
+				continue;
+			}
+			remove(hand);
+			return;
+		}
+	}
+	
+	/**
+	 * Removes the stamp in the passed slot and moves the stamps following it back,
+	 * so every stamp can still be reached from its home slot without passing an empty slot.
+	 * @param slot the slot of the removed stamp
+	 */
+	private void remove(int slot) {
+		values[slot] = null;
+		size--;
+		int empty = slot;
+		int next = slot;
+		while(true) {
+			next = (next + 1) & mask;
+			if(values[next] == null)
+				return;
+			// a stamp whose home slot lies after the empty slot (up to its own slot) has to stay
+			if(((next - home(keys[next])) & mask) < ((next - empty) & mask))
+				continue;
+			keys[empty] = keys[next];
+			values[empty] = values[next];
+			referenced[empty] = referenced[next];
+			values[next] = null;
+			empty = next;
+		}
+	}
+	
+	/**
+	 * @return the number of lookups that found a stamp
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return the number of lookups that did not find a stamp
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * @return the share of lookups that found a stamp, within 0 and 1 (0 if there was no lookup yet)
+	 */
+	public synchronized float getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0f : (float) hits / lookups;
+	}
+	
+	/**
+	 * The pixels covered by a shape, relative to the pixel containing the shape's center.
+	 */
+	public static final class Stamp {
+		
+		private final int[] offsetX;
+		private final int[] offsetY;
+		
+		/**
+		 * @param offsetX the x-offsets of the covered pixels
+		 * @param offsetY the y-offsets of the covered pixels
+		 * @param count the number of covered pixels, i.e. the number of valid offsets
+		 */
+		public Stamp(int[] offsetX, int[] offsetY, int count) {
+			this.offsetX = Arrays.copyOf(offsetX, count);
+			this.offsetY = Arrays.copyOf(offsetY, count);
+		}
+		
+		/**
+		 * @return the number of covered pixels
+		 */
+		public int getCount() {
+			return offsetX.length;
+		}
+		
+		/**
+		 * @param i the index of the covered pixel
+		 * @return the x-offset of the covered pixel
+		 */
+		public int getOffsetX(int i) {
+			return offsetX[i];
+		}
+		
+		/**
+		 * @param i the index of the covered pixel
+		 * @return the y-offset of the covered pixel
+		 */
+		public int getOffsetY(int i) {
+			return offsetY[i];
+		}
+	}
+
+}
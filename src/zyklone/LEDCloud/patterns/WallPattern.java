@@ -1,5 +1,6 @@
 package zyklone.LEDCloud.patterns;
 
+import zyklone.LEDCloud.patterns.StampCache.Stamp;
 
 /**
  * This specialization of LocalPattern represents a wall that travels perpendicular to its length
@@ -9,13 +10,28 @@ package zyklone.LEDCloud.patterns;
  */
 public class WallPattern extends LocalPattern {
 	
+	/** identifies the walls' stamps in the StampCache */
+	private static final int SHAPE = 2;
+	private static final Integer MAX_SIZE = 12;
+	private static final Float MAX_VELOCITY = 7.0f;
+	private static final Float MAX_ACCELERATION = 2.0f;
+	private static final Float GLOW = 0.3f;
+	private static final Integer BACKGROUND_MAX_SIZE = 17;
+	private static final Float BACKGROUND_MAX_VELOCITY = 6.0f;
+	private static final Float BACKGROUND_MAX_ACCELERATION = 1.5f;
+	private static final Float BACKGROUND_GLOW = 0.6f;
+	private static final int ANGLE_3_24 = FixedPoint.toAngle(Math.PI*3/24);
+	private static final int ANGLE_21_24 = FixedPoint.toAngle(Math.PI*21/24);
+	private static final int ANGLE_27_24 = FixedPoint.toAngle(Math.PI*27/24);
+	private static final int ANGLE_45_24 = FixedPoint.toAngle(Math.PI*45/24);
+	
 	/**
 	 * This constructor initializes the Pattern with its default values.
 	 * @param pictureSizeX the length in the x-axis of the led-matrix
 	 * @param pictureSizeY the length in the y-axis of the led-matrix
 	 */
 	public WallPattern(int pictureSizeX, int pictureSizeY) {
-		super(pictureSizeX, pictureSizeY, 13000, 12, 7.0f, 2.0f, 0.3f);
+		super(pictureSizeX, pictureSizeY, 13000, MAX_SIZE, MAX_VELOCITY, MAX_ACCELERATION, GLOW);
 		initialize();
 	}
 	
@@ -28,10 +44,10 @@ public class WallPattern extends LocalPattern {
 	 */
 	public WallPattern(int pictureSizeX, int pictureSizeY, boolean backgroundPattern) {
 		super(pictureSizeX, pictureSizeY, 0, 
-				backgroundPattern ? Integer.valueOf(17) : Integer.valueOf(12),// maxSize
-				backgroundPattern ? Float.valueOf(6.0f) : Float.valueOf(7.0f), 	// maxVelocity
-				backgroundPattern ? Float.valueOf(1.5f) : Float.valueOf(2.0f), 	// maxAcceleration
-				backgroundPattern ? Float.valueOf(0.6f) : Float.valueOf(0.3f)); // glow
+				backgroundPattern ? BACKGROUND_MAX_SIZE : MAX_SIZE,					// maxSize
+				backgroundPattern ? BACKGROUND_MAX_VELOCITY : MAX_VELOCITY, 			// maxVelocity
+				backgroundPattern ? BACKGROUND_MAX_ACCELERATION : MAX_ACCELERATION, 	// maxAcceleration
+				backgroundPattern ? BACKGROUND_GLOW : GLOW); 							// glow
 		initialize();
 		if(backgroundPattern) 
 			super.setBackgroundPatternColor();
@@ -59,6 +75,22 @@ public class WallPattern extends LocalPattern {
 			super.setBackgroundPatternColor();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * The attributes are initialized like the ones of a pattern created via WallPattern(int, int, boolean),
+	 * or via WallPattern(int, int) if it is not part of a BackgroundPattern.
+	 */
+	@Override
+	public void reset(boolean backgroundPattern) {
+		if(backgroundPattern)
+			resetAttributes(0, BACKGROUND_MAX_SIZE, BACKGROUND_MAX_VELOCITY, BACKGROUND_MAX_ACCELERATION, BACKGROUND_GLOW);
+		else
+			resetAttributes(13000, MAX_SIZE, MAX_VELOCITY, MAX_ACCELERATION, GLOW);
+		initialize();
+		if(backgroundPattern) 
+			super.setBackgroundPatternColor();
+	}
+	
 	/**
 	 * Initializes the WallPattern's thickness and also its direction,
 	 * because a wall should not travel parallel to the x-axis
@@ -71,9 +103,9 @@ public class WallPattern extends LocalPattern {
 			this.thickness = rand.nextInt(2) + 2;
 		// direction must not be in y axis alone (cos > 0). cases correspond to first and second half of the unit circle
 		switch(rand.nextInt(2)) {	
-			case 0: this.direction = (float) Math.PI*(rand.nextFloat()*10/12 + (float)1/12);
+			case 0: this.direction = FixedPoint.toAngle(Math.PI*(rand.nextFloat()*10/12 + (float)1/12));
 			break;
-			case 1: this.direction = (float) Math.PI*(rand.nextFloat()*10/12 + (float)13/12);
+			case 1: this.direction = FixedPoint.toAngle(Math.PI*(rand.nextFloat()*10/12 + (float)13/12));
 			break;
 		}
 	}
@@ -85,45 +117,77 @@ public class WallPattern extends LocalPattern {
 	 */
 	@Override
 	protected void updateDirectionChange() {
-		if((this.direction > 0 && this.direction < Math.PI*3/24) || (this.direction > Math.PI && this.direction < Math.PI*27/24))
-			this.directionChange = (float) (0.2f*Math.PI);
-		else if((this.direction > Math.PI*21/24 && this.direction < Math.PI) || (this.direction > Math.PI*45/24 && this.direction < 2*Math.PI))
-			this.directionChange = (float) (-0.2f*Math.PI);
+		if((this.direction > 0 && this.direction < ANGLE_3_24) || (this.direction > FixedPoint.HALF_TURN && this.direction < ANGLE_27_24))
+			this.directionChange = FixedPoint.toAngle(0.2f*Math.PI);
+		else if((this.direction > ANGLE_21_24 && this.direction < FixedPoint.HALF_TURN) || (this.direction > ANGLE_45_24 && this.direction < FixedPoint.TURN))
+			this.directionChange = FixedPoint.toAngle(-0.2f*Math.PI);
 		else
-			this.directionChange = (float) (((rand.nextFloat() * 6) - 3) / 10 * Math.PI); // max directionChange = 0.3*PI*rad/s^2
+			this.directionChange = FixedPoint.toAngle(((rand.nextFloat() * 6) - 3) / 10 * Math.PI); // max directionChange = 0.3*PI*rad/s^2
 	}
 
 	/**
 	 * Draws the pattern in the form of a rectangle,
 	 * with the size-attribute as its length and the thickness as its width.
 	 * The length is oriented perpendicular to the Pattern's direction.
+	 * The wall is rasterized only if its stamp is not cached yet.
 	 */
 	@Override
 	protected void drawPattern() {
-		float halfXdist = (float) (Math.abs((float)size/2 * Math.sin(direction)) + Math.abs((float)thickness/2 * Math.cos(direction)));
-		float halfYdist = (float) (Math.abs((float)size/2 * Math.cos(direction)) + Math.abs((float)thickness/2 * Math.sin(direction)));
-		float wallY = currentY - halfYdist;
+		int subX = StampCache.quantizeSubPixel(currentX);
+		int subY = StampCache.quantizeSubPixel(currentY);
+		int angle = StampCache.quantizeAngle(direction);
+		long key = StampCache.key(SHAPE, size, thickness, angle, subX, subY);
+		Stamp stamp = stamps.get(key);
+		if(stamp == null) {
+			stamp = rasterize(size, thickness, StampCache.angleFromQuantized(angle),
+					StampCache.subPixelToFixed(subX), StampCache.subPixelToFixed(subY));
+			stamps.put(key, stamp);
+		}
+		drawStamp(stamp);
+	}
+	
+	/**
+	 * Collects all pixels within a wall.
+	 * Sine and cosine are looked up once, the pixels are checked in fixed point.
+	 * @param size the length of the wall
+	 * @param thickness the width of the wall
+	 * @param direction the direction the wall travels in, as a FixedPoint angle
+	 * @param centerX the x-coordinate of the wall's center within the pixel at (0, 0), in fixed point
+	 * @param centerY the y-coordinate of the wall's center within the pixel at (0, 0), in fixed point
+	 * @return the stamp of the wall
+	 */
+	private static Stamp rasterize(int size, int thickness, int direction, int centerX, int centerY) {
+		int sin = FixedPoint.sin(direction);
+		int cos = FixedPoint.cos(direction);
+		int xReq = FixedPoint.fromInt(size) / 2;
+		int yReq = FixedPoint.fromInt(thickness) / 2;
+		int reachX = FixedPoint.truncate(Math.abs(FixedPoint.mul(xReq, sin)) + Math.abs(FixedPoint.mul(yReq, cos))) + 1;
+		int reachY = FixedPoint.truncate(Math.abs(FixedPoint.mul(xReq, cos)) + Math.abs(FixedPoint.mul(yReq, sin))) + 1;
+		// the wall is oriented perpendicular to the direction: sin(direction - PI/2) = -cos(direction), cos(direction - PI/2) = sin(direction)
+		long sinPhi = -cos;
+		long cosPhi = sin;
+		// the products of two fixed point values have twice the fractional bits
+		long xReqWide = (long) xReq << FixedPoint.SHIFT;
+		long yReqWide = (long) yReq << FixedPoint.SHIFT;
+		int[] offsetX = new int[(2*reachX + 1) * (2*reachY + 1)];
+		int[] offsetY = new int[offsetX.length];
+		int count = 0;
 		// y coordinates containing complete wall
-		for(int y = (int)(wallY < 0 ? wallY-1 : wallY); y <= (currentY + halfYdist); y++) {
-			float wallX = currentX - halfXdist;
+		for(int y = -reachY; y <= reachY; y++) {
+			long deltaY = FixedPoint.fromInt(y) - centerY;
 			// x coordinates containing complete wall
-			for(int x = (int)(wallX < 0 ? wallX-1 : wallX); x <= (currentX + halfXdist); x++) {
-				float deltaX = x - currentX;
-				float deltaY = y - currentY;
-				float sinPhi = (float) Math.sin(direction-Math.PI/2);
-				float cosPhi = (float) Math.cos(direction-Math.PI/2);
-				float cxDist = Math.abs(deltaX * cosPhi + deltaY * sinPhi);
-				float cyDist = Math.abs(deltaY * cosPhi - deltaX * sinPhi);
-				float xReq = (float)size/2;
-				float yReq = (float)thickness/2;
+			for(int x = -reachX; x <= reachX; x++) {
+				long deltaX = FixedPoint.fromInt(x) - centerX;
+				long cxDist = Math.abs(deltaX * cosPhi + deltaY * sinPhi);
+				long cyDist = Math.abs(deltaY * cosPhi - deltaX * sinPhi);
 				// check if coordinates are actually within the wall
-				if(cxDist <= xReq && cyDist <= yReq) {
-					drawPixel(x, y);
+				if(cxDist <= xReqWide && cyDist <= yReqWide) {
+					offsetX[count] = x;
+					offsetY[count++] = y;
 				}
 			}
 		}
+		return new Stamp(offsetX, offsetY, count);
 	}
 
 }
-
-
@@ -1,8 +1,5 @@
 package zyklone.LEDCloud.patterns;
 
-import java.awt.Color;
-import java.util.ArrayList;
-
 
 /**
  * This specialization of LocalPattern represents a circular wave like it would be created
@@ -13,7 +10,10 @@ import java.util.ArrayList;
  */
 public class WavePattern extends LocalPattern {
 	
-	private float radius = 2;	// starting (outer) radius of the circular wave
+	int radius = FixedPoint.fromInt(2);	// starting (outer) radius of the circular wave, in fixed point
+	/** the y-axis has to travel slower, in fixed point */
+	private static final int Y_STRETCH = FixedPoint.toFixed(1.2f);
+	private static final Float GLOW = 0.6f;
 
 	/**
 	 * This constructor initializes the Pattern with its default values.
@@ -21,7 +21,7 @@ public class WavePattern extends LocalPattern {
 	 * @param pictureSizeY the length in the y-axis of the led-matrix
 	 */
 	public WavePattern(int pictureSizeX, int pictureSizeY) {
-		super(pictureSizeX, pictureSizeY, 8000, null, null, null, Float.valueOf(0.6f));
+		super(pictureSizeX, pictureSizeY, 8000, null, null, null, GLOW);
 		initialize();
 	}
 
@@ -34,11 +34,30 @@ public class WavePattern extends LocalPattern {
 	 */
 	public WavePattern(int pictureSizeX, int pictureSizeY, boolean backgroundPattern) {
 		this(pictureSizeX, pictureSizeY);
-		if(backgroundPattern) {
-			super.setBackgroundPatternColor();
-			this.glow += 0.15f;
-			this.velocity -= 0.6f;
-		}
+		if(backgroundPattern)
+			initializeBackgroundPattern();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * The attributes are initialized like the ones of a pattern created via WavePattern(int, int, boolean).
+	 */
+	@Override
+	public void reset(boolean backgroundPattern) {
+		resetAttributes(8000, null, null, null, GLOW);
+		this.radius = FixedPoint.fromInt(2);
+		initialize();
+		if(backgroundPattern)
+			initializeBackgroundPattern();
+	}
+	
+	/**
+	 * Adjusts the color, glow and velocity of a WavePattern that is part of a BackgroundPattern.
+	 */
+	private void initializeBackgroundPattern() {
+		super.setBackgroundPatternColor();
+		this.glow += 0.15f;
+		this.velocity -= FixedPoint.toFixed(0.6f);
 	}
 	
 	/**
@@ -48,9 +67,9 @@ public class WavePattern extends LocalPattern {
 	 * The longer the lifetime, the lower the velocity.
 	 */
 	private void initialize() {
-		this.currentX = rand.nextInt(pictureSizeX-20) + 10;
+		this.currentX = FixedPoint.fromInt(rand.nextInt(pictureSizeX-20) + 10);
 		this.thickness = (rand.nextInt(3) + 2);								// default thickness of 2 to 4 units
-		this.velocity = ((float) rand.nextInt(30) * 350/lifespan) + 1.5f;	// max velocity = 4.125 units / s
+		this.velocity = FixedPoint.toFixed(((float) rand.nextInt(30) * 350/lifespan) + 1.5f);	// max velocity = 4.125 units / s
 	}
 	
 
@@ -59,44 +78,134 @@ public class WavePattern extends LocalPattern {
 	 * by a spherical object, dropping into a pool of liquid.
 	 * The thickness attribute is used to represent
 	 * the thickness of the outwards (from the origin) traveling wave.
+	 * Every row is drawn as up to two spans between the outer and the inner edge of the wave.
+	 * The edges are carried over from row to row and only moved until they are in place again,
+	 * like in a midpoint circle algorithm, so only the pixels of the wave itself and its edges are visited.
+	 * Distances are compared squared, so no square root is needed.
 	 */
 	@Override
 	protected void drawPattern() {
-		// y coordinates containing complete dot
-		int yBorderLow = (int) (currentY - radius);
-		int yBorderHigh = (int) (currentY + radius);
+		long outerSquared = (long) radius * radius;
+		int inner = radius - FixedPoint.fromInt(thickness);
+		long innerSquared = (long) inner * inner;
+		// the products of two fixed point values have twice the fractional bits
+		long maxYDistance = (long) pictureSizeY << (2 * FixedPoint.SHIFT);
+		// the column closest to the origin, every span of a row contains it, unless the span is empty
+		int centerColumn = (currentX + FixedPoint.ONE/2) >> FixedPoint.SHIFT;
+		int outerLeft = centerColumn + 1, outerRight = centerColumn - 1;
+		int innerLeft = centerColumn + 1, innerRight = centerColumn - 1;
+		// y coordinates containing complete wave
+		int yBorderLow = FixedPoint.truncate(currentY - radius);
+		int yBorderHigh = FixedPoint.truncate(currentY + radius);
 		for(int y = yBorderLow; y <= yBorderHigh; y++) {
-			// x coordinates containing complete dot
-			for(int x = (int)(currentX - radius); x <= (currentX + radius); x++) {
-				// check if coordinates are actually within the dot
-				float yDistance = (float)Math.pow((y*1.2f - currentY), 2);
-				float centerDistance = (float)Math.sqrt(Math.pow((x - currentX), 2) + yDistance); // y-axis has to travel slower
-				if(centerDistance < radius && centerDistance > radius - thickness && yDistance <= pictureSizeY) {
-					drawPixel(x, y);
-				}
+			long deltaY = (long) y * Y_STRETCH - currentY;	// y-axis has to travel slower
+			long yDistance = deltaY * deltaY;
+			if(yDistance > maxYDistance)
+				continue;
+			// the squared x-distances left for the outer edge and the inner edge in this row
+			long outerRest = outerSquared - yDistance;
+			long innerRest = innerSquared - yDistance;
+			outerRight = moveRightEdge(outerRight, centerColumn, outerRest, 0);
+			outerLeft = moveLeftEdge(outerLeft, centerColumn, outerRest, 0);
+			if(outerLeft > outerRight)
+				continue;
+			// an inner radius below 0 means the wave is still a disc
+			if(inner < 0 || innerRest < 0) {
+				drawSpan(outerLeft, outerRight, y);
+				continue;
+			}
+			innerRight = moveRightEdge(innerRight, centerColumn, innerRest, 1);
+			innerLeft = moveLeftEdge(innerLeft, centerColumn, innerRest, 1);
+			if(innerLeft > innerRight) {
+				drawSpan(outerLeft, outerRight, y);
+			} else {
+				drawSpan(outerLeft, innerLeft - 1, y);
+				drawSpan(innerRight + 1, outerRight, y);
 			}
 		}
 	}
 	
+	/**
+	 * Moves the right edge of a span until it is the last column right of the center column within the span.
+	 * A column is within the span, if its squared x-distance to the origin is smaller than (or equal to,
+	 * if inclusive is 1) the rest.
+	 * @param edge the edge of the span in the previous row
+	 * @param centerColumn the column closest to the origin
+	 * @param rest the biggest squared x-distance (in fixed point with twice the fractional bits) within the span
+	 * @param inclusive 1 if columns at exactly the distance belong to the span, otherwise 0
+	 * @return the right edge of the span in this row, or centerColumn-1 if the span is empty
+	 */
+	private int moveRightEdge(int edge, int centerColumn, long rest, int inclusive) {
+		if(edge < centerColumn - 1)
+			edge = centerColumn - 1;
+		while(isWithin(edge + 1, rest, inclusive))
+			edge++;
+		while(edge >= centerColumn && !isWithin(edge, rest, inclusive))
+			edge--;
+		return edge;
+	}
+	
+	/**
+	 * Moves the left edge of a span until it is the last column left of the center column within the span.
+	 * @param edge the edge of the span in the previous row
+	 * @param centerColumn the column closest to the origin
+	 * @param rest the biggest squared x-distance (in fixed point with twice the fractional bits) within the span
+	 * @param inclusive 1 if columns at exactly the distance belong to the span, otherwise 0
+	 * @return the left edge of the span in this row, or centerColumn+1 if the span is empty
+	 * @see #moveRightEdge(int, int, long, int)
+	 */
+	private int moveLeftEdge(int edge, int centerColumn, long rest, int inclusive) {
+		if(edge > centerColumn + 1)
+			edge = centerColumn + 1;
+		while(isWithin(edge - 1, rest, inclusive))
+			edge--;
+		while(edge <= centerColumn && !isWithin(edge, rest, inclusive))
+			edge++;
+		return edge;
+	}
+	
+	/**
+	 * @param x the x-coordinate of the column
+	 * @param rest the biggest squared x-distance (in fixed point with twice the fractional bits)
+	 * @param inclusive 1 if columns at exactly the distance are within, otherwise 0
+	 * @return true if the column's squared x-distance to the origin is within the rest
+	 */
+	private boolean isWithin(int x, long rest, int inclusive) {
+		long deltaX = FixedPoint.fromInt(x) - currentX;
+		return deltaX * deltaX < rest + inclusive;
+	}
+	
+	/**
+	 * Draws all pixels of a row between two x-coordinates (inclusive).
+	 * @param fromX the first x-coordinate
+	 * @param toX the last x-coordinate
+	 * @param y the y-coordinate of the row
+	 */
+	private void drawSpan(int fromX, int toX, int y) {
+		for(int x = fromX; x <= toX; x++) {
+			drawPixel(x, y);
+		}
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public ArrayList<ArrayList<Color>> getNextPicture(){
+	protected boolean calculateNextPicture(long timeInMs){
 		if(this.startTime == 0) {
-			this.currentTime = System.currentTimeMillis();
+			this.currentTime = timeInMs;
 			this.startTime = currentTime;
 		}
 		
-		newTime = System.currentTimeMillis();
-		// if the pattern has reached its lifetime, return null
+		newTime = timeInMs;
+		// if the pattern has reached its lifetime, return false
 		if(newTime - this.startTime > this.lifespan)
-			return null;
+			return false;
 	
 		super.fadeOutPicture();
 		
 		if(newTime - this.startTime < this.lifespan - 1000) {
-			radius += (((float)(newTime - currentTime))/1000) * velocity;
+			radius += FixedPoint.integrate(velocity, newTime - currentTime);
 			
 			// draw the wave
 			drawPattern();
@@ -107,7 +216,7 @@ public class WavePattern extends LocalPattern {
 		if(newTime - startTime < 1000)
 			super.fadeInPicture();
 		
-		return this.picture;
+		return true;
 	}
 
 	
@@ -0,0 +1,41 @@
+package zyklone.LEDCloud.rendering;
+
+/**
+ * Defines how a pixel drawn by a pattern is combined with the pixel that is already present in the target picture.
+ *
+ * @author Zyklone
+ */
+public enum BlendOp {
+	
+	/** Adds up both colors channel by channel, capping every channel at 255. */
+	ADD {
+		@Override
+		public int apply(int target, int source) {
+			return FrameBuffer.addSaturated(target, source);
+		}
+	},
+	/** Keeps the brighter value of every channel. */
+	MAX {
+		@Override
+		public int apply(int target, int source) {
+			return FrameBuffer.rgb(Math.max(FrameBuffer.red(target), FrameBuffer.red(source)),
+					Math.max(FrameBuffer.green(target), FrameBuffer.green(source)),
+					Math.max(FrameBuffer.blue(target), FrameBuffer.blue(source)));
+		}
+	},
+	/** Overwrites the target's color with the source's color. */
+	REPLACE {
+		@Override
+		public int apply(int target, int source) {
+			return source;
+		}
+	};
+	
+	/**
+	 * Combines two packed colors (0xRRGGBB).
+	 * @param target the color already present in the target picture
+	 * @param source the color drawn by the pattern
+	 * @return the resulting packed color
+	 */
+	public abstract int apply(int target, int source);
+}
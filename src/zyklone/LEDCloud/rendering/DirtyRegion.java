@@ -0,0 +1,101 @@
+package zyklone.LEDCloud.rendering;
+
+/**
+ * An axis-aligned rectangle of pixels that encloses everything a pattern has drawn into its picture.
+ * Pixels outside of the region are known to be dark, so fading and combining pictures
+ * only has to visit the pixels inside of the region.
+ * The bounds are inclusive. A freshly created region is empty.
+ * 
+ * @author Zyklone
+ */
+public class DirtyRegion {
+	
+	private int minX;
+	private int minY;
+	private int maxX;
+	private int maxY;
+	
+	public DirtyRegion() {
+		clear();
+	}
+	
+	/**
+	 * Empties the region.
+	 */
+	public void clear() {
+		this.minX = Integer.MAX_VALUE;
+		this.minY = Integer.MAX_VALUE;
+		this.maxX = Integer.MIN_VALUE;
+		this.maxY = Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * Sets the bounds of the region. If a minimum is bigger than its maximum, the region is empty.
+	 * @param minX the smallest x-coordinate inside the region
+	 * @param minY the smallest y-coordinate inside the region
+	 * @param maxX the biggest x-coordinate inside the region
+	 * @param maxY the biggest y-coordinate inside the region
+	 */
+	public void set(int minX, int minY, int maxX, int maxY) {
+		if(minX > maxX || minY > maxY) {
+			clear();
+			return;
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+	
+	/**
+	 * Grows the region, so that it includes the passed pixel.
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 */
+	public void include(int x, int y) {
+		if(x < minX)
+			minX = x;
+		if(x > maxX)
+			maxX = x;
+		if(y < minY)
+			minY = y;
+		if(y > maxY)
+			maxY = y;
+	}
+	
+	/**
+	 * @return true if the region does not contain any pixels
+	 */
+	public boolean isEmpty() {
+		return minX > maxX;
+	}
+	
+	/**
+	 * @return the smallest x-coordinate inside the region
+	 */
+	public int getMinX() {
+		return minX;
+	}
+	
+	/**
+	 * @return the smallest y-coordinate inside the region
+	 */
+	public int getMinY() {
+		return minY;
+	}
+	
+	/**
+	 * @return the biggest x-coordinate inside the region
+	 */
+	public int getMaxX() {
+		return maxX;
+	}
+	
+	/**
+	 * @return the biggest y-coordinate inside the region
+	 */
+	public int getMaxY() {
+		return maxY;
+	}
+	
+}
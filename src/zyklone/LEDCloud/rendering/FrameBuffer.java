@@ -0,0 +1,366 @@
+package zyklone.LEDCloud.rendering;
+
+import java.util.Arrays;
+
+/**
+ * A picture of the cloud's led-matrix, stored as one packed int per pixel (0xRRGGBB).
+ * The pixels are laid out row by row in a single int-array, where every row starts
+ * at a multiple of the buffer's stride. Working on the packed values directly
+ * avoids allocating a Color-object for every pixel that is written.
+ * Operations on whole rows (adding, scaling, ...) are carried out by the PixelKernels picked at startup.
+ *
+ * @author Zyklone
+ */
+public class FrameBuffer {
+	
+	/** packed value of a dark pixel */
+	public static final int BLACK = 0x000000;
+	
+	private final int width;
+	private final int height;
+	private final int stride;
+	private final int[] pixels;
+	private static final PixelKernels KERNELS = PixelKernels.get();
+	
+	/**
+	 * Creates a new, dark frame buffer whose stride equals its width.
+	 * @param width the length in the x-axis of the led-matrix
+	 * @param height the length in the y-axis of the led-matrix
+	 */
+	public FrameBuffer(int width, int height) {
+		this(width, height, width);
+	}
+	
+	/**
+	 * Creates a new, dark frame buffer.
+	 * @param width the length in the x-axis of the led-matrix
+	 * @param height the length in the y-axis of the led-matrix
+	 * @param stride the distance between the first pixels of two consecutive rows, must not be smaller than the width
+	 */
+	public FrameBuffer(int width, int height, int stride) {
+		if(width < 0 || height < 0 || stride < width)
+			throw new IllegalArgumentException("Invalid frame buffer dimensions " + width + "x" + height + " (stride " + stride + ").");
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+		this.pixels = new int[height * stride];
+	}
+	
+	/**
+	 * Packs the passed color-channels into one int. The channels are expected to be within 0 and 255.
+	 * @param red the red channel
+	 * @param green the green channel
+	 * @param blue the blue channel
+	 * @return the packed color (0xRRGGBB)
+	 */
+	public static int rgb(int red, int green, int blue) {
+		return (red << 16) | (green << 8) | blue;
+	}
+	
+	/**
+	 * @param rgb a packed color
+	 * @return the red channel of the packed color
+	 */
+	public static int red(int rgb) {
+		return (rgb >> 16) & 0xFF;
+	}
+	
+	/**
+	 * @param rgb a packed color
+	 * @return the green channel of the packed color
+	 */
+	public static int green(int rgb) {
+		return (rgb >> 8) & 0xFF;
+	}
+	
+	/**
+	 * @param rgb a packed color
+	 * @return the blue channel of the packed color
+	 */
+	public static int blue(int rgb) {
+		return rgb & 0xFF;
+	}
+	
+	/**
+	 * Adds up two packed colors channel by channel. Every channel is capped at 255.
+	 * @param a the first packed color
+	 * @param b the second packed color
+	 * @return the packed sum of both colors
+	 */
+	public static int addSaturated(int a, int b) {
+		int red = red(a) + red(b);
+		if(red > 255)
+			red = 255;
+		int green = green(a) + green(b);
+		if(green > 255)
+			green = 255;
+		int blue = blue(a) + blue(b);
+		if(blue > 255)
+			blue = 255;
+		return rgb(red, green, blue);
+	}
+	
+	/**
+	 * Multiplies every channel of a packed color with the passed factor.
+	 * @param rgb the packed color
+	 * @param factor the factor, expected to be within 0 and 1
+	 * @return the scaled packed color
+	 */
+	public static int scale(int rgb, float factor) {
+		return rgb((int)(red(rgb)*factor), (int)(green(rgb)*factor), (int)(blue(rgb)*factor));
+	}
+	
+	/**
+	 * @return the length in the x-axis of the led-matrix
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * @return the length in the y-axis of the led-matrix
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * @return the distance between the first pixels of two consecutive rows inside the pixel-array
+	 */
+	public int getStride() {
+		return stride;
+	}
+	
+	/**
+	 * @return the backing pixel-array. Changes to the array are directly reflected in this buffer.
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+	
+	/**
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @return the index of the pixel inside the pixel-array
+	 */
+	public int offset(int x, int y) {
+		return y * stride + x;
+	}
+	
+	/**
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @return the packed color of the pixel
+	 */
+	public int getPixel(int x, int y) {
+		return pixels[y * stride + x];
+	}
+	
+	/**
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @param rgb the packed color the pixel should be set to
+	 */
+	public void setPixel(int x, int y, int rgb) {
+		pixels[y * stride + x] = rgb;
+	}
+	
+	/**
+	 * Sets all pixels of this buffer to the passed color.
+	 * @param rgb the packed color
+	 */
+	public void fill(int rgb) {
+		Arrays.fill(pixels, rgb);
+	}
+	
+	/**
+	 * Sets all pixels of this buffer to black.
+	 */
+	public void clear() {
+		Arrays.fill(pixels, BLACK);
+	}
+	
+	/**
+	 * Copies the content of another buffer with the same dimensions into this buffer.
+	 * @param source the buffer to copy
+	 */
+	public void copyFrom(FrameBuffer source) {
+		checkDimensions(source);
+		System.arraycopy(source.pixels, 0, pixels, 0, pixels.length);
+	}
+	
+	/**
+	 * Adds another buffer with the same dimensions on top of this buffer.
+	 * Every channel of every pixel is capped at 255.
+	 * @param source the buffer to add
+	 */
+	public void addSaturated(FrameBuffer source) {
+		blend(source, BlendOp.ADD);
+	}
+	
+	/**
+	 * Combines one pixel of this buffer with the passed color.
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @param rgb the packed color to combine the pixel with
+	 * @param op the operation used to combine both colors
+	 */
+	public void blend(int x, int y, int rgb, BlendOp op) {
+		int i = y * stride + x;
+		pixels[i] = op.apply(pixels[i], rgb);
+	}
+	
+	/**
+	 * Combines another buffer with the same dimensions with this buffer.
+	 * Dark pixels of the source are treated as not drawn and leave this buffer untouched.
+	 * @param source the buffer to combine this buffer with
+	 * @param op the operation used to combine the colors of both buffers
+	 */
+	public void blend(FrameBuffer source, BlendOp op) {
+		blend(source, op, 0, 0, width-1, height-1);
+	}
+	
+	/**
+	 * Combines the pixels inside a region of another buffer with the same dimensions with this buffer.
+	 * Dark pixels of the source are treated as not drawn and leave this buffer untouched.
+	 * @param source the buffer to combine this buffer with
+	 * @param op the operation used to combine the colors of both buffers
+	 * @param region the region of the source that contains all of its lit pixels
+	 */
+	public void blend(FrameBuffer source, BlendOp op, DirtyRegion region) {
+		if(region.isEmpty())
+			return;
+		blend(source, op, region.getMinX(), region.getMinY(), region.getMaxX(), region.getMaxY());
+	}
+	
+	/**
+	 * Combines the pixels inside a rectangle of another buffer with the same dimensions with this buffer.
+	 * Dark pixels of the source are treated as not drawn and leave this buffer untouched.
+	 * The bounds are inclusive, nothing is combined if a minimum is bigger than its maximum.
+	 * @param source the buffer to combine this buffer with
+	 * @param op the operation used to combine the colors of both buffers
+	 * @param minX the smallest x-coordinate of the rectangle
+	 * @param minY the smallest y-coordinate of the rectangle
+	 * @param maxX the biggest x-coordinate of the rectangle
+	 * @param maxY the biggest y-coordinate of the rectangle
+	 */
+	public void blend(FrameBuffer source, BlendOp op, int minX, int minY, int maxX, int maxY) {
+		checkDimensions(source);
+		int[] src = source.pixels;
+		int length = maxX - minX + 1;
+		for(int y = minY; y <= maxY; y++) {
+			int row = y * stride;
+			// adding or keeping the maximum of a dark pixel does not change anything, so the whole row can be processed
+			if(op == BlendOp.ADD) {
+				KERNELS.addSaturated(pixels, row + minX, src, row + minX, length);
+				continue;
+			}
+			if(op == BlendOp.MAX) {
+				KERNELS.max(pixels, row + minX, src, row + minX, length);
+				continue;
+			}
+			for(int i = row + minX; i <= row + maxX; i++) {
+				// only combine pixel, if it is not dark
+				if(src[i] != BLACK)
+					pixels[i] = op.apply(pixels[i], src[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Combines a run of pixels inside one row of this buffer with the passed colors.
+	 * Unlike blending whole buffers, dark colors are combined as well, so replacing writes them into the buffer.
+	 * @param colors the packed colors to combine the pixels with
+	 * @param colorsOffset the index of the first color to combine
+	 * @param op the operation used to combine the colors
+	 * @param x the x-coordinate of the first pixel
+	 * @param y the y-coordinate of the row
+	 * @param length the number of pixels to combine
+	 */
+	public void blendRow(int[] colors, int colorsOffset, BlendOp op, int x, int y, int length) {
+		int start = y * stride + x;
+		if(op == BlendOp.REPLACE) {
+			System.arraycopy(colors, colorsOffset, pixels, start, length);
+			return;
+		}
+		// adding or keeping the maximum of a dark color does not change the pixel, so the kernels can be used
+		if(op == BlendOp.ADD) {
+			KERNELS.addSaturated(pixels, start, colors, colorsOffset, length);
+			return;
+		}
+		if(op == BlendOp.MAX) {
+			KERNELS.max(pixels, start, colors, colorsOffset, length);
+			return;
+		}
+		for(int i = 0; i < length; i++) {
+			pixels[start + i] = op.apply(pixels[start + i], colors[colorsOffset + i]);
+		}
+	}
+
+	/**
+	 * Combines all pixels inside a rectangle of this buffer with the passed color.
+	 * The bounds are inclusive.
+	 * @param rgb the packed color to combine the pixels with
+	 * @param op the operation used to combine the colors
+	 * @param minX the smallest x-coordinate of the rectangle
+	 * @param minY the smallest y-coordinate of the rectangle
+	 * @param maxX the biggest x-coordinate of the rectangle
+	 * @param maxY the biggest y-coordinate of the rectangle
+	 */
+	public void blendColor(int rgb, BlendOp op, int minX, int minY, int maxX, int maxY) {
+		int length = maxX - minX + 1;
+		for(int y = minY; y <= maxY; y++) {
+			int row = y * stride;
+			if(op == BlendOp.ADD) {
+				KERNELS.addSaturated(pixels, row + minX, length, rgb);
+				continue;
+			}
+			for(int i = row + minX; i <= row + maxX; i++) {
+				pixels[i] = op.apply(pixels[i], rgb);
+			}
+		}
+	}
+	
+	/**
+	 * Multiplies every channel of every pixel with the passed factor.
+	 * The factor is applied in fixed point (factor*256), channels are rounded down.
+	 * @param factor the factor, expected to be within 0 and 1
+	 */
+	public void scale(float factor) {
+		for(int y = 0; y < height; y++) {
+			KERNELS.scale(pixels, y * stride, width, factor);
+		}
+	}
+	
+	/**
+	 * Multiplies every channel of every pixel inside the passed region with the passed factor.
+	 * @param factor the factor, expected to be within 0 and 1
+	 * @param region the region whose pixels should be scaled
+	 */
+	public void scale(float factor, DirtyRegion region) {
+		if(region.isEmpty())
+			return;
+		int length = region.getMaxX() - region.getMinX() + 1;
+		for(int y = region.getMinY(); y <= region.getMaxY(); y++) {
+			KERNELS.scale(pixels, y * stride + region.getMinX(), length, factor);
+		}
+	}
+	
+	/**
+	 * Moves every pixel of this buffer towards the pixel of another buffer with the same dimensions.
+	 * @param target the buffer to move towards
+	 * @param amount the share of the other buffer in the result, 0 keeps this buffer, 1 copies the other buffer
+	 */
+	public void lerp(FrameBuffer target, float amount) {
+		checkDimensions(target);
+		for(int y = 0; y < height; y++) {
+			KERNELS.lerp(pixels, y * stride, target.pixels, y * stride, width, amount);
+		}
+	}
+	
+	private void checkDimensions(FrameBuffer other) {
+		if(other.width != width || other.height != height || other.stride != stride)
+			throw new IllegalArgumentException("Frame buffers of different dimensions can not be combined.");
+	}
+
+}
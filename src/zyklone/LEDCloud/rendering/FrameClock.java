@@ -0,0 +1,42 @@
+package zyklone.LEDCloud.rendering;
+
+/**
+ * The source of time for the cloud's animations.
+ * Every frame reads the time once (see FrameScheduler) and passes it down to all patterns,
+ * so replacing the clock changes the time of everything that is drawn.
+ * SystemFrameClock follows the system's monotonic clock, VirtualFrameClock only advances when told to,
+ * which allows animations to be rendered reproducibly and as fast as possible.
+ *
+ * @author Zyklone
+ */
+public interface FrameClock {
+	
+	/**
+	 * @return the current time in nanoseconds, only meaningful compared to other times of the same clock
+	 */
+	long nanoTime();
+	
+	/**
+	 * Waits until the clock has reached the passed time. Returns immediately if the time has already passed.
+	 * @param deadlineNanos the time to wait for, as returned by nanoTime()
+	 */
+	void waitUntil(long deadlineNanos);
+	
+	/**
+	 * Creates the clock configured by the system property ledcloud.clock:
+	 * system (default) for the system's clock, or virtual for a clock that jumps to every deadline right away.
+	 * @return the clock
+	 * @throws IllegalArgumentException if the configured type of clock is unknown
+	 */
+	static FrameClock create() {
+		String type = System.getProperty("ledcloud.clock", "system");
+		switch(type.toLowerCase()) {
+			case "system":
+				return new SystemFrameClock(FrameScheduler.DEFAULT_SPIN_NANOS);
+			case "virtual":
+				return new VirtualFrameClock(VirtualFrameClock.DEFAULT_START_NANOS);
+			default:
+				throw new IllegalArgumentException("Unknown type of clock: " + type);
+		}
+	}
+}
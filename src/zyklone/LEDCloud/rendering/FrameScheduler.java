@@ -0,0 +1,154 @@
+package zyklone.LEDCloud.rendering;
+
+/**
+ * Paces the frames of the cloud at a fixed rate.
+ * Every frame has an absolute deadline, which lies exactly one period after the deadline of the previous frame,
+ * so the time needed to calculate a frame and the inaccuracy of the sleeps do not add up over time.
+ * The time is read from a FrameClock: with a SystemFrameClock the waiting thread is parked until shortly before
+ * the deadline and spins for the remaining time, with a VirtualFrameClock the frames follow each other without any pause.
+ * Frames that start after their deadline are counted as late. If a frame starts so late that whole periods
+ * have passed without a frame, these periods are counted as skipped and the deadlines continue from the current period.
+ * The scheduler is meant to be used by one thread only, the counters may be read from any thread.
+ *
+ * @author Zyklone
+ */
+public class FrameScheduler {
+	
+	/** default time before the deadline, after which the scheduler stops parking the thread and spins instead */
+	public static final long DEFAULT_SPIN_NANOS = 500_000;
+	
+	private final long periodNanos;
+	private final FrameClock clock;
+	private long nextDeadline;
+	private long frameTime;
+	private volatile long frames = 0;
+	private volatile long lateFrames = 0;
+	private volatile long skippedFrames = 0;
+	
+	/**
+	 * Creates a scheduler with the default spin time.
+	 * @param framesPerSecond the number of frames per second, must be at least 1
+	 */
+	public FrameScheduler(int framesPerSecond) {
+		this(framesPerSecond < 1 ? 0 : 1_000_000_000L / framesPerSecond, DEFAULT_SPIN_NANOS);
+	}
+	
+	/**
+	 * Creates a scheduler following the system's clock.
+	 * @param periodNanos the time between two frames in nanoseconds, must be positive
+	 * @param spinNanos the time before a deadline, in which the scheduler spins instead of parking the thread
+	 */
+	public FrameScheduler(long periodNanos, long spinNanos) {
+		this(periodNanos, new SystemFrameClock(spinNanos));
+	}
+	
+	/**
+	 * @param framesPerSecond the number of frames per second, must be at least 1
+	 * @param clock the clock the frames' times are read from
+	 */
+	public FrameScheduler(int framesPerSecond, FrameClock clock) {
+		this(framesPerSecond < 1 ? 0 : 1_000_000_000L / framesPerSecond, clock);
+	}
+	
+	/**
+	 * @param periodNanos the time between two frames in nanoseconds, must be positive
+	 * @param clock the clock the frames' times are read from
+	 */
+	public FrameScheduler(long periodNanos, FrameClock clock) {
+		if(periodNanos <= 0)
+			throw new IllegalArgumentException("The frame period has to be positive.");
+		this.periodNanos = periodNanos;
+		this.clock = clock;
+		resync();
+	}
+	
+	/**
+	 * Starts a new sequence of deadlines at the current time, without counting any late or skipped frames.
+	 * Should be called after the thread did something else than drawing frames for a while (e.g. waiting in an idle state).
+	 * @return the current time, as returned by the clock, which is also the time of the current frame
+	 */
+	public long resync() {
+		this.frameTime = clock.nanoTime();
+		this.nextDeadline = frameTime + periodNanos;
+		return frameTime;
+	}
+	
+	/**
+	 * Waits until the deadline of the next frame is reached.
+	 * If the deadline has already passed, the method returns immediately and the frame is counted as late.
+	 * @return the deadline of the frame, as returned by the clock, which should be used as the frame's time
+	 */
+	public long awaitNextFrame() {
+		long deadline = nextDeadline;
+		long now = clock.nanoTime();
+		if(now - deadline > 0) {
+			lateFrames++;
+			// drop the deadlines of all periods that have passed completely
+			long missed = (now - deadline) / periodNanos;
+			if(missed > 0) {
+				skippedFrames += missed;
+				deadline += missed * periodNanos;
+			}
+		} else {
+			clock.waitUntil(deadline);
+		}
+		this.frameTime = deadline;
+		this.nextDeadline = deadline + periodNanos;
+		frames++;
+		return deadline;
+	}
+	
+	/**
+	 * Pauses for the passed time and starts a new sequence of deadlines afterwards.
+	 * Meant for waiting while there is nothing to animate, as the pause is not counted as late or skipped frames.
+	 * @param nanos the time to pause in nanoseconds
+	 * @return the time after the pause, which is also the time of the current frame
+	 */
+	public long pause(long nanos) {
+		clock.waitUntil(clock.nanoTime() + nanos);
+		return resync();
+	}
+	
+	/**
+	 * @return the time of the current frame, as returned by the clock
+	 */
+	public long getFrameTime() {
+		return frameTime;
+	}
+	
+	/**
+	 * @return the clock the frames' times are read from
+	 */
+	public FrameClock getClock() {
+		return clock;
+	}
+	
+	/**
+	 * @return the time between two frames in nanoseconds
+	 */
+	public long getPeriodNanos() {
+		return periodNanos;
+	}
+	
+	/**
+	 * @return the number of frames that were started via awaitNextFrame()
+	 */
+	public long getFrames() {
+		return frames;
+	}
+	
+	/**
+	 * @return the number of frames that were started after their deadline
+	 */
+	public long getLateFrames() {
+		return lateFrames;
+	}
+	
+	/**
+	 * @return the number of periods that passed completely without a frame being started
+	 */
+	public long getSkippedFrames() {
+		return skippedFrames;
+	}
+
+}
@@ -0,0 +1,155 @@
+package zyklone.LEDCloud.rendering;
+
+/**
+ * The inner loops of the rendering, working on ranges of packed pixels (0xRRGGBB) inside an int-array.
+ * All kernels treat the three channels of a pixel separately and never let one channel overflow into the next.
+ * Scaling factors are converted to fixed point (factor*256), so every implementation produces exactly the same pixels.
+ * There are two implementations: one using the vector API of the JDK (jdk.incubator.vector),
+ * which processes several pixels with a single instruction, and a scalar one, which is used
+ * if the vector module is not available (the JVM has to be started with --add-modules jdk.incubator.vector).
+ * The scalar implementation can be forced by setting the system property ledcloud.kernels to "scalar".
+ *
+ * @author Zyklone
+ */
+public abstract class PixelKernels {
+	
+	private static final PixelKernels INSTANCE = createInstance();
+	
+	/**
+	 * @return the implementation picked at startup
+	 */
+	public static PixelKernels get() {
+		return INSTANCE;
+	}
+	
+	private static PixelKernels createInstance() {
+		if(!"scalar".equalsIgnoreCase(System.getProperty("ledcloud.kernels"))) {
+			try {
+				// loaded by name, so this class can be loaded even if the vector module is missing
+				PixelKernels vector = (PixelKernels) Class.forName("zyklone.LEDCloud.rendering.VectorPixelKernels")
+						.getDeclaredConstructor().newInstance();
+				System.out.println("Using vectorized pixel kernels.");
+				return vector;
+			} catch (Exception | LinkageError e) {
+				System.out.println("Vector API not available, using scalar pixel kernels.");
+			}
+		}
+		return new ScalarPixelKernels();
+	}
+	
+	/**
+	 * @return a short name of the implementation
+	 */
+	public abstract String getName();
+	
+	/**
+	 * Adds the source pixels onto the target pixels. Every channel is capped at 255.
+	 * @param dst the target pixels
+	 * @param dstOffset the index of the first target pixel
+	 * @param src the source pixels
+	 * @param srcOffset the index of the first source pixel
+	 * @param length the number of pixels
+	 */
+	public abstract void addSaturated(int[] dst, int dstOffset, int[] src, int srcOffset, int length);
+	
+	/**
+	 * Adds one color onto the target pixels. Every channel is capped at 255.
+	 * @param dst the target pixels
+	 * @param offset the index of the first target pixel
+	 * @param length the number of pixels
+	 * @param rgb the packed color to add
+	 */
+	public abstract void addSaturated(int[] dst, int offset, int length, int rgb);
+	
+	/**
+	 * Keeps the brighter value of every channel of the target and source pixels.
+	 * @param dst the target pixels
+	 * @param dstOffset the index of the first target pixel
+	 * @param src the source pixels
+	 * @param srcOffset the index of the first source pixel
+	 * @param length the number of pixels
+	 */
+	public abstract void max(int[] dst, int dstOffset, int[] src, int srcOffset, int length);
+	
+	/**
+	 * Multiplies every channel of the pixels with the passed factor.
+	 * @param pixels the pixels to scale
+	 * @param offset the index of the first pixel
+	 * @param length the number of pixels
+	 * @param factor the factor, expected to be within 0 and 1
+	 */
+	public abstract void scale(int[] pixels, int offset, int length, float factor);
+	
+	/**
+	 * Sets pixels whose channels are all below the cutoff to black and multiplies the channels of all other pixels with the passed factor.
+	 * @param pixels the pixels to fade
+	 * @param offset the index of the first pixel
+	 * @param length the number of pixels
+	 * @param factor the factor, expected to be within 0 and 1
+	 * @param cutoff pixels whose channels are all smaller than this value are turned off
+	 */
+	public abstract void fade(int[] pixels, int offset, int length, float factor, int cutoff);
+	
+	/**
+	 * Moves the target pixels towards the source pixels: dst = dst + (src - dst) * amount.
+	 * @param dst the target pixels
+	 * @param dstOffset the index of the first target pixel
+	 * @param src the source pixels
+	 * @param srcOffset the index of the first source pixel
+	 * @param length the number of pixels
+	 * @param amount the share of the source in the result, expected to be within 0 and 1
+	 */
+	public abstract void lerp(int[] dst, int dstOffset, int[] src, int srcOffset, int length, float amount);
+	
+	/**
+	 * @param factor a factor within 0 and 1
+	 * @return the factor in fixed point, within 0 and 256
+	 */
+	static int toFixed(float factor) {
+		int fixed = Math.round(factor * 256);
+		if(fixed < 0)
+			return 0;
+		if(fixed > 256)
+			return 256;
+		return fixed;
+	}
+	
+	/*
+	 * The scalar versions of the kernels, also used by the vectorized implementation for the pixels at the end of a range.
+	 * Red and blue are processed together (mask 0xFF00FF), green on its own (mask 0x00FF00),
+	 * which leaves 8 free bits above every channel for carries and products.
+	 */
+	
+	static int addSaturated(int a, int b) {
+		int rb = (a & 0xFF00FF) + (b & 0xFF00FF);
+		int g = (a & 0x00FF00) + (b & 0x00FF00);
+		// turn every carry into a full channel
+		int rbCarry = rb & 0x1000100;
+		int gCarry = g & 0x10000;
+		rb = (rb | (rbCarry - (rbCarry >>> 8))) & 0xFF00FF;
+		g = (g | (gCarry - (gCarry >>> 8))) & 0x00FF00;
+		return rb | g;
+	}
+	
+	static int max(int a, int b) {
+		return Math.max(a & 0xFF0000, b & 0xFF0000) | Math.max(a & 0x00FF00, b & 0x00FF00) | Math.max(a & 0x0000FF, b & 0x0000FF);
+	}
+	
+	static int scale(int rgb, int fixed) {
+		return ((((rgb & 0xFF00FF) * fixed) >>> 8) & 0xFF00FF) | ((((rgb & 0x00FF00) * fixed) >>> 8) & 0x00FF00);
+	}
+	
+	static int fade(int rgb, int fixed, int cutoff) {
+		if(((rgb >> 16) & 0xFF) < cutoff && ((rgb >> 8) & 0xFF) < cutoff && (rgb & 0xFF) < cutoff)
+			return FrameBuffer.BLACK;
+		return scale(rgb, fixed);
+	}
+	
+	static int lerp(int a, int b, int fixed) {
+		int inverse = 256 - fixed;
+		int rb = (((a & 0xFF00FF) * inverse + (b & 0xFF00FF) * fixed) >>> 8) & 0xFF00FF;
+		int g = (((a & 0x00FF00) * inverse + (b & 0x00FF00) * fixed) >>> 8) & 0x00FF00;
+		return rb | g;
+	}
+
+}
@@ -0,0 +1,60 @@
+package zyklone.LEDCloud.rendering;
+
+/**
+ * Processes the pixels one by one. Used if the vector API of the JDK is not available.
+ *
+ * @author Zyklone
+ */
+class ScalarPixelKernels extends PixelKernels {
+	
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+	
+	@Override
+	public void addSaturated(int[] dst, int dstOffset, int[] src, int srcOffset, int length) {
+		for(int i = 0; i < length; i++) {
+			dst[dstOffset + i] = addSaturated(dst[dstOffset + i], src[srcOffset + i]);
+		}
+	}
+	
+	@Override
+	public void addSaturated(int[] dst, int offset, int length, int rgb) {
+		for(int i = offset; i < offset + length; i++) {
+			dst[i] = addSaturated(dst[i], rgb);
+		}
+	}
+	
+	@Override
+	public void max(int[] dst, int dstOffset, int[] src, int srcOffset, int length) {
+		for(int i = 0; i < length; i++) {
+			dst[dstOffset + i] = max(dst[dstOffset + i], src[srcOffset + i]);
+		}
+	}
+	
+	@Override
+	public void scale(int[] pixels, int offset, int length, float factor) {
+		int fixed = toFixed(factor);
+		for(int i = offset; i < offset + length; i++) {
+			pixels[i] = scale(pixels[i], fixed);
+		}
+	}
+	
+	@Override
+	public void fade(int[] pixels, int offset, int length, float factor, int cutoff) {
+		int fixed = toFixed(factor);
+		for(int i = offset; i < offset + length; i++) {
+			pixels[i] = fade(pixels[i], fixed, cutoff);
+		}
+	}
+	
+	@Override
+	public void lerp(int[] dst, int dstOffset, int[] src, int srcOffset, int length, float amount) {
+		int fixed = toFixed(amount);
+		for(int i = 0; i < length; i++) {
+			dst[dstOffset + i] = lerp(dst[dstOffset + i], src[srcOffset + i], fixed);
+		}
+	}
+
+}
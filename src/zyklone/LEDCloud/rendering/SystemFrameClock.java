@@ -0,0 +1,43 @@
+package zyklone.LEDCloud.rendering;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A FrameClock following System.nanoTime().
+ * The waiting thread is parked until shortly before the deadline and spins for the remaining time,
+ * as parking a thread often overshoots by a fraction of a millisecond.
+ *
+ * @author Zyklone
+ */
+public class SystemFrameClock implements FrameClock {
+	
+	private final long spinNanos;
+	
+	/**
+	 * @param spinNanos the time before a deadline, in which the clock spins instead of parking the thread
+	 */
+	public SystemFrameClock(long spinNanos) {
+		if(spinNanos < 0)
+			throw new IllegalArgumentException("The spin time must not be negative.");
+		this.spinNanos = spinNanos;
+	}
+	
+	@Override
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+	
+	@Override
+	public void waitUntil(long deadlineNanos) {
+		long remaining;
+		while((remaining = deadlineNanos - System.nanoTime()) > spinNanos) {
+			LockSupport.parkNanos(remaining - spinNanos);
+			// an interrupt would end every following park immediately
+			Thread.interrupted();
+		}
+		while(deadlineNanos - System.nanoTime() > 0) {
+			Thread.onSpinWait();
+		}
+	}
+	
+}
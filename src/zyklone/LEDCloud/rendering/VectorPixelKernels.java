@@ -0,0 +1,128 @@
+package zyklone.LEDCloud.rendering;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Processes as many pixels at once as the preferred vector size of the CPU allows,
+ * using the same channel masks as the scalar kernels. The remaining pixels at the end of a range are processed one by one.
+ * This class is only loaded by name (see PixelKernels), since it requires the module jdk.incubator.vector.
+ *
+ * @author Zyklone
+ */
+class VectorPixelKernels extends PixelKernels {
+	
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	
+	@Override
+	public String getName() {
+		return "vector (" + SPECIES.length() + " pixels)";
+	}
+	
+	@Override
+	public void addSaturated(int[] dst, int dstOffset, int[] src, int srcOffset, int length) {
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			IntVector a = IntVector.fromArray(SPECIES, dst, dstOffset + i);
+			IntVector b = IntVector.fromArray(SPECIES, src, srcOffset + i);
+			addSaturated(a, b).intoArray(dst, dstOffset + i);
+		}
+		for(; i < length; i++) {
+			dst[dstOffset + i] = addSaturated(dst[dstOffset + i], src[srcOffset + i]);
+		}
+	}
+	
+	@Override
+	public void addSaturated(int[] dst, int offset, int length, int rgb) {
+		IntVector b = IntVector.broadcast(SPECIES, rgb);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			addSaturated(IntVector.fromArray(SPECIES, dst, offset + i), b).intoArray(dst, offset + i);
+		}
+		for(; i < length; i++) {
+			dst[offset + i] = addSaturated(dst[offset + i], rgb);
+		}
+	}
+	
+	@Override
+	public void max(int[] dst, int dstOffset, int[] src, int srcOffset, int length) {
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			IntVector a = IntVector.fromArray(SPECIES, dst, dstOffset + i);
+			IntVector b = IntVector.fromArray(SPECIES, src, srcOffset + i);
+			a.and(0xFF0000).max(b.and(0xFF0000))
+					.or(a.and(0x00FF00).max(b.and(0x00FF00)))
+					.or(a.and(0x0000FF).max(b.and(0x0000FF)))
+					.intoArray(dst, dstOffset + i);
+		}
+		for(; i < length; i++) {
+			dst[dstOffset + i] = max(dst[dstOffset + i], src[srcOffset + i]);
+		}
+	}
+	
+	@Override
+	public void scale(int[] pixels, int offset, int length, float factor) {
+		int fixed = toFixed(factor);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			scale(IntVector.fromArray(SPECIES, pixels, offset + i), fixed).intoArray(pixels, offset + i);
+		}
+		for(; i < length; i++) {
+			pixels[offset + i] = scale(pixels[offset + i], fixed);
+		}
+	}
+	
+	@Override
+	public void fade(int[] pixels, int offset, int length, float factor, int cutoff) {
+		int fixed = toFixed(factor);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			IntVector v = IntVector.fromArray(SPECIES, pixels, offset + i);
+			VectorMask<Integer> dark = v.lanewise(VectorOperators.LSHR, 16).and(0xFF).compare(VectorOperators.LT, cutoff)
+					.and(v.lanewise(VectorOperators.LSHR, 8).and(0xFF).compare(VectorOperators.LT, cutoff))
+					.and(v.and(0xFF).compare(VectorOperators.LT, cutoff));
+			scale(v, fixed).blend(FrameBuffer.BLACK, dark).intoArray(pixels, offset + i);
+		}
+		for(; i < length; i++) {
+			pixels[offset + i] = fade(pixels[offset + i], fixed, cutoff);
+		}
+	}
+	
+	@Override
+	public void lerp(int[] dst, int dstOffset, int[] src, int srcOffset, int length, float amount) {
+		int fixed = toFixed(amount);
+		int inverse = 256 - fixed;
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			IntVector a = IntVector.fromArray(SPECIES, dst, dstOffset + i);
+			IntVector b = IntVector.fromArray(SPECIES, src, srcOffset + i);
+			IntVector rb = a.and(0xFF00FF).mul(inverse).add(b.and(0xFF00FF).mul(fixed))
+					.lanewise(VectorOperators.LSHR, 8).and(0xFF00FF);
+			IntVector g = a.and(0x00FF00).mul(inverse).add(b.and(0x00FF00).mul(fixed))
+					.lanewise(VectorOperators.LSHR, 8).and(0x00FF00);
+			rb.or(g).intoArray(dst, dstOffset + i);
+		}
+		for(; i < length; i++) {
+			dst[dstOffset + i] = lerp(dst[dstOffset + i], src[srcOffset + i], fixed);
+		}
+	}
+	
+	private static IntVector addSaturated(IntVector a, IntVector b) {
+		IntVector rb = a.and(0xFF00FF).add(b.and(0xFF00FF));
+		IntVector g = a.and(0x00FF00).add(b.and(0x00FF00));
+		// turn every carry into a full channel
+		IntVector rbCarry = rb.and(0x1000100);
+		IntVector gCarry = g.and(0x10000);
+		rb = rb.or(rbCarry.sub(rbCarry.lanewise(VectorOperators.LSHR, 8))).and(0xFF00FF);
+		g = g.or(gCarry.sub(gCarry.lanewise(VectorOperators.LSHR, 8))).and(0x00FF00);
+		return rb.or(g);
+	}
+	
+	private static IntVector scale(IntVector v, int fixed) {
+		return v.and(0xFF00FF).mul(fixed).lanewise(VectorOperators.LSHR, 8).and(0xFF00FF)
+				.or(v.and(0x00FF00).mul(fixed).lanewise(VectorOperators.LSHR, 8).and(0x00FF00));
+	}
+
+}
@@ -0,0 +1,50 @@
+package zyklone.LEDCloud.rendering;
+
+/**
+ * A FrameClock that only advances when it is waited upon or advanced explicitly.
+ * Waiting for a deadline does not take any real time, the clock simply jumps to the deadline.
+ * Together with seeded random numbers, this renders exactly the same frames every time,
+ * no matter how long it takes to calculate them.
+ * The time may be read from any thread, but only one thread should advance it.
+ *
+ * @author Zyklone
+ */
+public class VirtualFrameClock implements FrameClock {
+	
+	/** default start time, which is not 0, as several patterns treat a time of 0 as not started yet */
+	public static final long DEFAULT_START_NANOS = 1_000_000_000L;
+	
+	private volatile long now;
+	
+	/**
+	 * @param startNanos the time the clock starts at
+	 */
+	public VirtualFrameClock(long startNanos) {
+		this.now = startNanos;
+	}
+	
+	@Override
+	public long nanoTime() {
+		return now;
+	}
+	
+	/**
+	 * Jumps to the deadline, if it lies in the future.
+	 */
+	@Override
+	public void waitUntil(long deadlineNanos) {
+		if(deadlineNanos - now > 0)
+			now = deadlineNanos;
+	}
+	
+	/**
+	 * Advances the clock.
+	 * @param nanos the time to advance the clock by, must not be negative
+	 */
+	public void advance(long nanos) {
+		if(nanos < 0)
+			throw new IllegalArgumentException("The clock can not go back in time.");
+		now += nanos;
+	}
+	
+}
@@ -0,0 +1,284 @@
+package zyklone.LEDCloud.stream;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Receives the pixels an external renderer (e.g. a lighting desk or a music visualizer) sends via the
+ * Distributed Display Protocol (DDP, UDP port 4048 by default).
+ * Every packet carries the color channels of a run of LEDs in the order of the LED-strip (red, green, blue of every LED),
+ * which are written into the colors of the LEDs in the same order, so they can be handed to the LedMeshCoordinator
+ * without being mapped into a picture (see LedMeshCoordinator.updateLedStrip()).
+ * A frame is complete, once a packet has the push-flag set or reaches the last LED,
+ * so it can be displayed right after its last packet arrived.
+ * Only RGB data with 8 bits per channel for the default display (or all displays) is accepted,
+ * queries, replies and packets for other destinations are ignored.
+ * The 4-bit sequence numbers of the packets are checked: packets that arrive after a newer packet are dropped,
+ * gaps are counted as lost packets. After a pause of a second, the sequence starts over.
+ * The packets are read from a non-blocking channel into a reused buffer, so no memory is allocated per packet
+ * (as long as the packets come from the same sender).
+ * A receiver is not thread-safe, it is meant to be used by the thread calculating the frames.
+ *
+ * @author Zyklone
+ */
+public class DdpReceiver implements AutoCloseable {
+	
+	/** the port DDP is sent to, unless configured otherwise */
+	public static final int DEFAULT_PORT = 4048;
+	
+	private static final int FLAG_VERSION_MASK = 0xC0;
+	private static final int FLAG_VERSION_1 = 0x40;
+	private static final int FLAG_TIMECODE = 0x10;
+	private static final int FLAG_REPLY = 0x04;
+	private static final int FLAG_QUERY = 0x02;
+	private static final int FLAG_PUSH = 0x01;
+	private static final int DESTINATION_DISPLAY = 1;
+	private static final int DESTINATION_ALL = 255;
+	private static final int HEADER_LENGTH = 10;
+	/** the length of the header, if it contains a timecode */
+	private static final int TIMECODE_HEADER_LENGTH = 14;
+	/** the time after which the sequence numbers start over, in nanoseconds */
+	private static final long SEQUENCE_RESET_NANOS = 1_000_000_000L;
+	
+	private final DatagramChannel channel;
+	private final Selector selector;
+	private final ByteBuffer packet = ByteBuffer.allocateDirect(65536);
+	private int lastSequence = 0;
+	/** the time the last packet was received, as returned by System.nanoTime() */
+	private long lastPacketNanos;
+	/** the time the first packet of the current frame was received, or -1 if no packet of the frame was received yet */
+	private long frameStartNanos = -1;
+	private long completedFrameStartNanos;
+	private long packets = 0;
+	private long frames = 0;
+	private long lostPackets = 0;
+	private long latePackets = 0;
+	private long invalidPackets = 0;
+	
+	/**
+	 * Starts listening for packets on all interfaces.
+	 * @param port the UDP-port to listen on
+	 * @throws IOException if the port can not be bound
+	 */
+	public DdpReceiver(int port) throws IOException {
+		this.channel = DatagramChannel.open();
+		try {
+			// a big receive buffer, so a whole frame can arrive while the last one is being displayed
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+			channel.bind(new InetSocketAddress(port));
+			channel.configureBlocking(false);
+			this.selector = Selector.open();
+			channel.register(selector, SelectionKey.OP_READ);
+		} catch(IOException ioe) {
+			channel.close();
+			throw ioe;
+		}
+		this.lastPacketNanos = System.nanoTime();
+	}
+	
+	/**
+	 * Receives packets and writes their channels into the passed colors, until a frame is complete or the time is up.
+	 * @param leds the packed colors (0xRRGGBB) of the LEDs in the order of the LED-strip, the LEDs that were not sent keep their color
+	 * @param timeoutNanos the maximum time to wait for the frame to be completed
+	 * @return true, if a frame was completed and the colors should be displayed
+	 * @throws IOException if the channel could not be read
+	 */
+	public boolean receive(int[] leds, long timeoutNanos) throws IOException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while(true) {
+			while(true) {
+				packet.clear();
+				if(channel.receive(packet) == null)
+					break;
+				packet.flip();
+				if(process(leds))
+					return true;
+			}
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+				return false;
+			selector.select(Math.max(1, remaining / 1_000_000));
+			selector.selectedKeys().clear();
+		}
+	}
+	
+	/**
+	 * Checks the received packet and writes its channels into the colors of the LEDs.
+	 * @param leds the packed colors of the LEDs in the order of the LED-strip
+	 * @return true, if the packet completed a frame
+	 */
+	private boolean process(int[] leds) {
+		long now = System.nanoTime();
+		if(packet.limit() < HEADER_LENGTH) {
+			invalidPackets++;
+			return false;
+		}
+		int flags = packet.get(0) & 0xFF;
+		int dataType = packet.get(2) & 0xFF;
+		int destination = packet.get(3) & 0xFF;
+		if((flags & FLAG_VERSION_MASK) != FLAG_VERSION_1 || !isRgb(dataType)) {
+			invalidPackets++;
+			return false;
+		}
+		if((flags & (FLAG_QUERY | FLAG_REPLY)) != 0 || (destination != DESTINATION_DISPLAY && destination != DESTINATION_ALL))
+			return false;
+		int headerLength = (flags & FLAG_TIMECODE) != 0 ? TIMECODE_HEADER_LENGTH : HEADER_LENGTH;
+		long offset = packet.getInt(4) & 0xFFFFFFFFL;
+		int length = packet.getShort(8) & 0xFFFF;
+		if(headerLength + length > packet.limit()) {
+			invalidPackets++;
+			return false;
+		}
+		if(!checkSequence(packet.get(1) & 0x0F, now))
+			return false;
+		lastPacketNanos = now;
+		packets++;
+		if(frameStartNanos < 0)
+			frameStartNanos = now;
+		writeChannels(headerLength, length, offset, leds);
+		if((flags & FLAG_PUSH) == 0 && offset + length < (long) leds.length * 3)
+			return false;
+		frames++;
+		completedFrameStartNanos = frameStartNanos;
+		frameStartNanos = -1;
+		return true;
+	}
+	
+	/**
+	 * Writes the color channels of the received packet (red, green and blue of the first LED, then of the second LED, ...)
+	 * into the colors of the LEDs. The channels may start and end in the middle of an LED, the other channels of such an LED
+	 * keep their value. Channels behind the last LED are ignored.
+	 * @param from the index of the first channel inside the packet
+	 * @param length the number of channels
+	 * @param firstChannel the number of the first channel on the LED-strip (the LED times 3, plus the color)
+	 * @param leds the packed colors of the LEDs in the order of the LED-strip
+	 */
+	private void writeChannels(int from, int length, long firstChannel, int[] leds) {
+		if(firstChannel >= (long) leds.length * 3)
+			return;
+		int led = (int) (firstChannel / 3);
+		int shift = 16 - (int) (firstChannel % 3) * 8;
+		int end = from + (int) Math.min(length, (long) leds.length * 3 - firstChannel);
+		int i = from;
+		// a run starting in the middle of an LED is written channel by channel up to the LED's end
+		while(i < end && shift != 16) {
+			leds[led] = (leds[led] & ~(0xFF << shift)) | ((packet.get(i++) & 0xFF) << shift);
+			shift -= 8;
+			if(shift < 0) {
+				shift = 16;
+				led++;
+			}
+		}
+		// complete LEDs
+		for(; i + 3 <= end; i += 3) {
+			leds[led++] = ((packet.get(i) & 0xFF) << 16) | ((packet.get(i + 1) & 0xFF) << 8) | (packet.get(i + 2) & 0xFF);
+		}
+		// a run ending in the middle of an LED
+		for(shift = 16; i < end; i++, shift -= 8) {
+			leds[led] = (leds[led] & ~(0xFF << shift)) | ((packet.get(i) & 0xFF) << shift);
+		}
+	}
+	
+	/**
+	 * @param dataType the data type of a packet
+	 * @return true, if the packet carries RGB data with 8 bits per channel (or an undefined type, which is treated as such)
+	 */
+	private static boolean isRgb(int dataType) {
+		// older senders use 1 for RGB
+		if(dataType == 0x01)
+			return true;
+		int type = (dataType >> 3) & 0x7;
+		int size = dataType & 0x7;
+		return (type == 0 || type == 1) && (size == 0 || size == 3);
+	}
+	
+	/**
+	 * @param sequence the sequence number of the received packet, 0 if the sender does not number its packets
+	 * @param now the time the packet was received, as returned by System.nanoTime()
+	 * @return true, if the packet is not older than the packets received before
+	 */
+	private boolean checkSequence(int sequence, long now) {
+		if(sequence == 0)
+			return true;
+		if(lastSequence != 0 && now - lastPacketNanos < SEQUENCE_RESET_NANOS) {
+			// the numbers run from 1 to 15, then start over with 1
+			// some senders number their frames instead of their packets, so a repeated number is accepted
+			int expected = lastSequence % 15 + 1;
+			if(sequence != expected && sequence != lastSequence) {
+				if((lastSequence - sequence + 15) % 15 < 8) {
+					latePackets++;
+					return false;
+				}
+				lostPackets += (sequence - expected + 15) % 15;
+			}
+		}
+		lastSequence = sequence;
+		return true;
+	}
+	
+	/**
+	 * @param now the current time, as returned by System.nanoTime()
+	 * @return the time passed since the last packet was received (or since the receiver was started), in nanoseconds
+	 */
+	public long getIdleNanos(long now) {
+		return now - lastPacketNanos;
+	}
+	
+	/**
+	 * @return the time the first packet of the last completed frame was received, as returned by System.nanoTime()
+	 */
+	public long getFrameStartNanos() {
+		return completedFrameStartNanos;
+	}
+	
+	/**
+	 * @return the number of packets whose pixels were used
+	 */
+	public long getPackets() {
+		return packets;
+	}
+	
+	/**
+	 * @return the number of completed frames
+	 */
+	public long getFrames() {
+		return frames;
+	}
+	
+	/**
+	 * @return the number of packets that never arrived, as told by the gaps in the sequence numbers
+	 */
+	public long getLostPackets() {
+		return lostPackets;
+	}
+	
+	/**
+	 * @return the number of packets that were dropped, as they arrived after a newer packet
+	 */
+	public long getLatePackets() {
+		return latePackets;
+	}
+	
+	/**
+	 * @return the number of packets that were dropped, as they were too short or carried data other than RGB
+	 */
+	public long getInvalidPackets() {
+		return invalidPackets;
+	}
+	
+	/**
+	 * Stops listening for packets and frees the port.
+	 * @throws IOException if the channel could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		selector.close();
+		channel.close();
+	}
+
+}
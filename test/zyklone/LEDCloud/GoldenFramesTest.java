@@ -0,0 +1,206 @@
+package zyklone.LEDCloud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import zyklone.LEDCloud.output.ChecksumLedOutput;
+import zyklone.LEDCloud.rendering.FrameBuffer;
+import zyklone.LEDCloud.rendering.VirtualFrameClock;
+
+/**
+ * Checks that the cloud still renders exactly the same frames as before, e.g. after optimizing the rendering.
+ * For every mode, a cloud with a virtual clock and seeded random numbers renders its first frames
+ * and the checksum of every frame sent to the LEDs is compared with the golden checksums in golden-frames.txt
+ * (a test resource). Frames that do not differ from the frame before are not sent to the LEDs, so they have no checksum.
+ * The music mode does not render anything yet and the stream mode displays pixels it receives instead of rendering them,
+ * so neither is checked.
+ * The cloud reads the LEDs' order from ./order.json, so the test runs in the project's directory (as done by mvn test).
+ * With the system property ledcloud.golden.record=true, the golden checksums are written anew to test-resources/golden-frames.txt
+ * instead of being compared, which is only necessary if the frames were changed on purpose.
+ *
+ * @author Zyklone
+ */
+public class GoldenFramesTest {
+	
+	/** the seed of all random numbers */
+	private static final long SEED = 1;
+	/** the number of frames whose checksums are compared for every mode */
+	private static final int FRAMES = 200;
+	/** the number of calls to renderFrame(), after which modes that show fewer frames are stopped */
+	private static final int MAX_STEPS = 20 * FRAMES;
+	private static final String GOLDEN_RESOURCE = "/golden-frames.txt";
+	private static final String GOLDEN_SOURCE = "test-resources/golden-frames.txt";
+	/** packed color (0xRRGGBB) used for the fixed color and the notification */
+	private static final int COLOR = FrameBuffer.rgb(200, 80, 20);
+	/** the system properties the cloud is configured with while rendering, they are restored afterwards */
+	private static final String[][] PROPERTIES = {{"ledcloud.output", "checksum"}, {"ledcloud.output.capacity", Integer.toString(FRAMES)},
+			{"ledcloud.pipeline", "false"}, {"ledcloud.fps", "20"}, {"ledcloud.gamma", "1.0"}, {"ledcloud.brightness", "1.0"}};
+	
+	private static boolean record;
+	private static Map<ModeType, String> golden;
+	/** the checksums rendered while recording */
+	private static final Map<ModeType, String> rendered = new EnumMap<>(ModeType.class);
+	private final Map<String, String> previousProperties = new HashMap<>();
+	
+	@BeforeClass
+	public static void readGolden() throws IOException {
+		record = Boolean.getBoolean("ledcloud.golden.record");
+		golden = new EnumMap<>(ModeType.class);
+		if(record)
+			return;
+		InputStream in = GoldenFramesTest.class.getResourceAsStream(GOLDEN_RESOURCE);
+		assertNotNull("The golden checksums " + GOLDEN_RESOURCE + " are not on the classpath.", in);
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+				int separator = line.indexOf(' ');
+				String name = separator < 0 ? line : line.substring(0, separator);
+				golden.put(ModeType.valueOf(name), separator < 0 ? "" : line.substring(separator));
+			}
+		}
+	}
+	
+	@AfterClass
+	public static void writeGolden() throws IOException {
+		if(!record)
+			return;
+		List<String> lines = new ArrayList<>();
+		lines.add("# CRC32 checksums of the frames rendered by GoldenFramesTest (seed " + SEED + ", up to " + FRAMES + " frames per mode)");
+		for(Map.Entry<ModeType, String> entry : rendered.entrySet()) {
+			lines.add(entry.getKey() + entry.getValue());
+		}
+		Files.write(Paths.get(GOLDEN_SOURCE), lines, StandardCharsets.US_ASCII);
+		System.out.println("Golden checksums written to " + GOLDEN_SOURCE + ".");
+	}
+	
+	@Before
+	public void configure() {
+		for(String[] property : PROPERTIES) {
+			previousProperties.put(property[0], System.setProperty(property[0], property[1]));
+		}
+	}
+	
+	@After
+	public void restore() {
+		for(Map.Entry<String, String> property : previousProperties.entrySet()) {
+			if(property.getValue() == null)
+				System.clearProperty(property.getKey());
+			else
+				System.setProperty(property.getKey(), property.getValue());
+		}
+	}
+	
+	@Test
+	public void fixedColor() {
+		check(ModeType.FIXEDCOLOR);
+	}
+	
+	@Test
+	public void rainbow() {
+		check(ModeType.RAINBOW);
+	}
+	
+	@Test
+	public void patterns() {
+		check(ModeType.PATTERNS);
+	}
+	
+	@Test
+	public void notification() {
+		check(ModeType.NOTIFICATION);
+	}
+	
+	@Test
+	public void alarm() {
+		check(ModeType.ALARM);
+	}
+	
+	/**
+	 * Renders the first frames of the passed mode and compares their checksums with the golden checksums,
+	 * or keeps them to be recorded.
+	 * @param mode the mode to check
+	 */
+	private void check(ModeType mode) {
+		String actual = format(render(mode));
+		if(record) {
+			rendered.put(mode, actual);
+			return;
+		}
+		String expected = golden.get(mode);
+		assertNotNull(mode + ": no golden checksums.", expected);
+		// every checksum takes 9 characters (a space and 8 digits)
+		int frame = 0;
+		while(frame * 9 < Math.min(expected.length(), actual.length())
+				&& expected.regionMatches(frame * 9, actual, frame * 9, 9))
+			frame++;
+		assertEquals(mode + ": frame " + frame + " differs (" + (expected.length() / 9) + " golden frames, "
+				+ (actual.length() / 9) + " rendered frames).", expected, actual);
+	}
+	
+	/**
+	 * Renders the first frames of the passed mode.
+	 * @param mode the mode to render
+	 * @return the checksums of the rendered frames
+	 */
+	private static long[] render(ModeType mode) {
+		LEDCloud cloud = new LEDCloud(new VirtualFrameClock(VirtualFrameClock.DEFAULT_START_NANOS), SEED);
+		ChecksumLedOutput output = (ChecksumLedOutput) cloud.getOutput();
+		// the alarm plays until the mode is changed
+		output.setLimitListener(() -> cloud.setFixedColorMode(FrameBuffer.BLACK));
+		switch(mode) {
+			case FIXEDCOLOR: cloud.setFixedColorMode(COLOR);
+				break;
+			case RAINBOW: cloud.setRainbowMode();
+				break;
+			case PATTERNS: cloud.setPatternsMode();
+				break;
+			case NOTIFICATION:
+				cloud.setFixedColorMode(COLOR);
+				cloud.renderFrame();
+				cloud.playNotification(FrameBuffer.rgb(0, 120, 255));
+				break;
+			case ALARM: cloud.setAlarm(LocalTime.now());
+				break;
+			default: throw new IllegalArgumentException("The mode " + mode + " is not rendered by the cloud itself.");
+		}
+		for(int step = 0; step < MAX_STEPS && output.getFrameCount() < FRAMES; step++) {
+			cloud.renderFrame();
+		}
+		return output.getChecksums();
+	}
+	
+	/**
+	 * @param checksums the checksums of the frames of one mode
+	 * @return the checksums as hexadecimal numbers, separated by spaces
+	 */
+	private static String format(long[] checksums) {
+		StringBuilder builder = new StringBuilder();
+		for(long checksum : checksums) {
+			builder.append(' ').append(String.format("%08x", checksum));
+		}
+		return builder.toString();
+	}
+
+}